@@ -29,6 +29,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        // 单元测试中 android.util.Log 等返回默认值，而不是抛出 "not mocked"
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -9,40 +9,95 @@ import android.content.Context;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.StreamCorruptedException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
-
-public class BluetoothCommunicationService {
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RFCOMM 的 {@link Transport} 实现，链路池：同时监听与主动连接，保持最多 maxLinks 条并发链路，
+ * 每条链路有自己的读线程与出站合并写线程，转发可以真正并行地扇出到多个邻居。
+ * 链路池满时按 {@link EvictionPolicy} 处理新链路。
+ */
+public class BluetoothCommunicationService implements Transport {
     private static final String TAG = "BluetoothCommService";
     private static final String APP_NAME = "NearLink";
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
 
+    /**
+     * 链路池满时如何处理新链路
+     */
+    public enum EvictionPolicy {
+        /** 淘汰质量最低的既有链路（建立未满 MIN_LINK_AGE_MS 的链路不参与） */
+        LOWEST_QUALITY,
+        /** 拒绝新链路 */
+        REJECT_NEW
+    }
+
     private final BluetoothAdapter bluetoothAdapter;
-    private final Handler handler;
+    private volatile Handler handler;
     private AcceptThread acceptThread;
-    private ConnectThread connectThread;
-    private ConnectedThread connectedThread;
+    private final ConcurrentHashMap<String, ConnectThread> connectThreads = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConnectedThread> links = new ConcurrentHashMap<>();
     private int state;
     private final Context context;
-
+    private volatile InboundFrameListener inboundFrameListener;
+    private volatile LinkListener linkListener;
+    private volatile long coalescingMinWindowMs = WriteCoalescer.DEFAULT_MIN_WINDOW_MS;
+    private volatile long coalescingMaxWindowMs = WriteCoalescer.DEFAULT_MAX_WINDOW_MS;
+    private volatile int coalescingByteBudget = LINK_MTU;
+    private volatile int maxLinks = DEFAULT_MAX_LINKS;
+    private volatile EvictionPolicy evictionPolicy = EvictionPolicy.LOWEST_QUALITY;
+    private final AtomicLong evictedLinks = new AtomicLong();
+    private final AtomicLong rejectedLinks = new AtomicLong();
+    // 同时进行的连接尝试数上限，多出的尝试按发起顺序排队
+    private final Semaphore dialSlots = new Semaphore(MAX_PARALLEL_DIALS, true);
+    private final RfcommChannelCache channelCache =
+            new RfcommChannelCache(TimingWheel.getDefault(), CHANNEL_CACHE_TIMEOUT);
+    private final ConnectionTimings connectionTimings = new ConnectionTimings();
+    // 发起连接时在握手中发给对方的本节点标识。新版 Android 读不到本机 MAC 地址，
+    // 互相连接时按发起方标识而不是地址决定保留哪条链路
+    private final long linkToken = ThreadLocalRandom.current().nextLong();
 
     public static final int STATE_NONE = 0;       // 未连接
     public static final int STATE_LISTEN = 1;     // 监听连接
     public static final int STATE_CONNECTING = 2; // 正在连接
-    public static final int STATE_CONNECTED = 3;  // 已连接
+    public static final int STATE_CONNECTED = 3;  // 已连接（至少一条链路）
 
     private static final int MAX_BUFFER_SIZE = 1024 * 1024; // 1MB
+    static final int LINK_MTU = 1024;
+    // 经典蓝牙一个 piconet 最多 7 个活动从设备，留一个给新链路
+    static final int DEFAULT_MAX_LINKS = 6;
+    static final long MIN_LINK_AGE_MS = 10000;
+    // 寻呼与 SDP 会占用控制器，同时连接太多设备反而都变慢
+    static final int MAX_PARALLEL_DIALS = 3;
+    static final long CHANNEL_CACHE_TIMEOUT = 30 * 60 * 1000; // 30分钟
+    static final long HANDSHAKE_TIMEOUT_MS = 5000;
+
+    // 所有连接共享的读写缓冲区
+    static final BufferPool BUFFER_POOL = new BufferPool(LINK_MTU, 32);
+
+    public BluetoothCommunicationService(Context context) {
+        this(context, null);
+    }
 
-    public BluetoothCommunicationService(Context context, Handler handler) {
+    public BluetoothCommunicationService(Context context, @Nullable Handler handler) {
         this.bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         this.state = STATE_NONE;
         this.handler = handler;
@@ -50,39 +105,116 @@ public class BluetoothCommunicationService {
     }
 
     private synchronized void setState(int state) {
+        if (this.state == state) {
+            return;
+        }
         Log.d(TAG, "setState() " + this.state + " -> " + state);
         this.state = state;
-        handler.obtainMessage(MainActivity.MESSAGE_STATE_CHANGE, state, -1).sendToTarget();
+        notifyHandler(MainActivity.MESSAGE_STATE_CHANGE, state, -1, null);
+    }
+
+    /**
+     * 接收状态变化、连接失败等界面通知的 Handler；为 null 时不发送通知
+     */
+    public void setHandler(@Nullable Handler handler) {
+        this.handler = handler;
+    }
+
+    private void notifyHandler(int what, int arg1, int arg2, @Nullable Object obj) {
+        Handler current = handler;
+        if (current != null) {
+            current.obtainMessage(what, arg1, arg2, obj).sendToTarget();
+        }
+    }
+
+    /**
+     * 按链路池与连接中的线程重新计算整体状态
+     */
+    private synchronized void updateState() {
+        if (!links.isEmpty()) {
+            setState(STATE_CONNECTED);
+        } else if (!connectThreads.isEmpty()) {
+            setState(STATE_CONNECTING);
+        } else {
+            setState(acceptThread != null ? STATE_LISTEN : STATE_NONE);
+        }
     }
 
     public synchronized int getState() {
         return state;
     }
 
+    /**
+     * 在连接的读线程上回调收到的完整帧，不经过主线程 Handler
+     */
+    @Override
+    public void setInboundFrameListener(InboundFrameListener listener) {
+        this.inboundFrameListener = listener;
+    }
+
+    @Override
+    public void setLinkListener(LinkListener listener) {
+        this.linkListener = listener;
+    }
+
+    private void notifyLinkDown(String address) {
+        LinkListener listener = linkListener;
+        if (listener != null) {
+            listener.onLinkDown(address);
+        }
+    }
+
+    /**
+     * 出站合并参数，对之后建立的连接生效
+     */
+    public void setWriteCoalescing(long minWindowMs, long maxWindowMs, int byteBudget) {
+        this.coalescingMinWindowMs = minWindowMs;
+        this.coalescingMaxWindowMs = maxWindowMs;
+        this.coalescingByteBudget = byteBudget;
+    }
+
+    /**
+     * 并发链路上限与满员时的处理方式；已超出上限的既有链路不会被立即断开
+     */
+    public void setLinkPolicy(int maxLinks, @NonNull EvictionPolicy evictionPolicy) {
+        this.maxLinks = Math.max(1, maxLinks);
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * 到 address 的链路的出站合并器，未连接时返回 null
+     */
+    public WriteCoalescer getWriteCoalescer(String address) {
+        ConnectedThread link = links.get(address);
+        return link != null ? link.writeCoalescer : null;
+    }
+
+    @Override
     public synchronized void start() {
         Log.d(TAG, "Starting Bluetooth Communication Service");
 
         // Cancel any thread attempting to make a connection
-        if (connectThread != null) {
-            connectThread.cancel();
-            connectThread = null;
-        }
+        cancelConnectThreads();
 
         // Cancel any thread currently running a connection
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
-        }
-
-        setState(STATE_LISTEN);
+        cancelLinks();
 
         // Start the thread to listen on a BluetoothServerSocket
         if (acceptThread == null) {
             acceptThread = new AcceptThread();
             acceptThread.start();
         }
+        updateState();
+    }
+
+    @Override
+    public void connect(@NonNull String address) {
+        connect(bluetoothAdapter.getRemoteDevice(address));
     }
 
+    /**
+     * 向 device 建立一条新链路，不影响其他链路与监听；已连接或正在连接时忽略
+     */
     public synchronized void connect(BluetoothDevice device) {
         String deviceName = "Unknown Device";
         try {
@@ -94,27 +226,28 @@ public class BluetoothCommunicationService {
             Log.e(TAG, "Security Exception while getting device name", e);
         }
 
-        // Cancel any thread attempting to make a connection
-        if (state == STATE_CONNECTING) {
-            if (connectThread != null) {
-                connectThread.cancel();
-                connectThread = null;
-            }
+        String address = device.getAddress();
+        if (links.containsKey(address) || connectThreads.containsKey(address)) {
+            return;
         }
-
-        // Cancel any thread currently running a connection
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
+        if (links.size() >= maxLinks && evictionPolicy == EvictionPolicy.REJECT_NEW) {
+            Log.d(TAG, "Link pool full, not connecting to " + address);
+            return;
         }
 
         // Start the thread to connect with the given device
-        connectThread = new ConnectThread(device);
+        ConnectThread connectThread = new ConnectThread(device);
+        connectThreads.put(address, connectThread);
         connectThread.start();
-        setState(STATE_CONNECTING);
+        updateState();
     }
 
-    public synchronized void connected(BluetoothSocket socket, BluetoothDevice device) {
+    /**
+     * 登记新连接，initiatorToken 是发起方在握手中发来的标识（本节点发起时为 linkToken）。
+     * 已有到同一地址的链路时，两端都保留发起方标识较小的那条，双方同时互相连接时留下的是同一个套接字
+     */
+    private synchronized void connected(BluetoothSocket socket, BluetoothDevice device,
+                                        long initiatorToken) {
         String deviceName = "Unknown Device";
         try {
             if (checkBluetoothPermissions()) {
@@ -125,27 +258,38 @@ public class BluetoothCommunicationService {
             Log.e(TAG, "Security Exception while getting device name", e);
         }
 
-        // Cancel the thread that completed the connection
-        if (connectThread != null) {
-            connectThread.cancel();
-            connectThread = null;
+        String address = device.getAddress();
+        if (initiatorToken < linkToken) {
+            // 对方先连了进来，本节点向它的连接在两端都会落选，放弃它
+            ConnectThread dialing = connectThreads.remove(address);
+            if (dialing != null) {
+                dialing.cancel();
+            }
         }
 
-        // Cancel any thread currently running a connection
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
+        ConnectedThread replaced = links.get(address);
+        if (replaced != null && replaced.initiatorToken < initiatorToken) {
+            Log.d(TAG, "Closing duplicate link to " + address);
+            closeQuietly(socket);
+            return;
         }
-
-        // Cancel the accept thread because we only want to connect to one device
-        if (acceptThread != null) {
-            acceptThread.cancel();
-            acceptThread = null;
+        if (replaced == null && links.size() >= maxLinks && !evictForNewLink()) {
+            Log.d(TAG, "Closing surplus link to " + address);
+            rejectedLinks.incrementAndGet();
+            closeQuietly(socket);
+            updateState();
+            notifyLinkDown(address);
+            return;
         }
 
         // Start the thread to manage the connection and perform transmissions
-        connectedThread = new ConnectedThread(socket);
-        connectedThread.start();
+        ConnectedThread link = new ConnectedThread(socket, address, initiatorToken);
+        links.put(address, link);
+        if (replaced != null) {
+            // 被替换的链路从链路池移除后关闭，不会通知链路断开
+            replaced.cancel();
+        }
+        link.start();
 
         // Send the name of the connected device back to the UI Activity
         Bundle bundle = new Bundle();
@@ -158,23 +302,52 @@ public class BluetoothCommunicationService {
             Log.e(TAG, "Security Exception while getting device name for UI", e);
             bundle.putString("device_name", "Unknown Device");
         }
-        handler.obtainMessage(MainActivity.MESSAGE_DEVICE_NAME, bundle).sendToTarget();
+        notifyHandler(MainActivity.MESSAGE_DEVICE_NAME, 0, 0, bundle);
+
+        updateState();
+        LinkListener listener = linkListener;
+        if (replaced == null && listener != null) {
+            listener.onLinkUp(address);
+        }
+    }
 
-        setState(STATE_CONNECTED);
+    /**
+     * 淘汰质量最低的、已建立足够久的链路；没有可淘汰的链路时返回 false
+     */
+    private boolean evictForNewLink() {
+        if (evictionPolicy == EvictionPolicy.REJECT_NEW) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        ConnectedThread worst = null;
+        double worstScore = Double.MAX_VALUE;
+        for (ConnectedThread link : links.values()) {
+            if (link.quality.getAge(now) < MIN_LINK_AGE_MS) {
+                continue;
+            }
+            double score = link.quality.score(now, link.getBacklog());
+            if (score < worstScore) {
+                worst = link;
+                worstScore = score;
+            }
+        }
+        if (worst == null) {
+            return false;
+        }
+        Log.i(TAG, "Evicting link " + worst.remoteAddress + " (score " + worstScore + ")");
+        links.remove(worst.remoteAddress, worst);
+        worst.cancel();
+        evictedLinks.incrementAndGet();
+        notifyLinkDown(worst.remoteAddress);
+        return true;
     }
 
+    @Override
     public synchronized void stop() {
         Log.d(TAG, "Stopping Bluetooth Communication Service");
 
-        if (connectThread != null) {
-            connectThread.cancel();
-            connectThread = null;
-        }
-
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
-        }
+        cancelConnectThreads();
+        cancelLinks();
 
         if (acceptThread != null) {
             acceptThread.cancel();
@@ -184,33 +357,116 @@ public class BluetoothCommunicationService {
         setState(STATE_NONE);
     }
 
+    private void cancelConnectThreads() {
+        for (ConnectThread connectThread : connectThreads.values()) {
+            connectThread.cancel();
+        }
+        connectThreads.clear();
+    }
+
+    private void cancelLinks() {
+        for (ConnectedThread link : links.values()) {
+            link.cancel();
+        }
+        links.clear();
+    }
+
     public void write(byte[] out) {
-        ConnectedThread r;
-        synchronized (this) {
-            if (state != STATE_CONNECTED) return;
-            r = connectedThread;
+        write(out, false);
+    }
+
+    /**
+     * 帧进入所有链路的出站合并队列；urgent 为 true 时立即刷新
+     */
+    public void write(byte[] out, boolean urgent) {
+        for (ConnectedThread link : links.values()) {
+            link.write(out, urgent);
         }
-        r.write(out);
     }
 
-    private void connectionFailed() {
-        Log.d(TAG, "Connection Failed");
-        setState(STATE_LISTEN);
+    @Nullable
+    @Override
+    public Link getLink(@NonNull String address) {
+        return links.get(address);
+    }
+
+    @Override
+    public boolean isConnectedTo(@NonNull String address) {
+        return links.containsKey(address);
+    }
+
+    @NonNull
+    @Override
+    public List<String> getConnectedAddresses() {
+        return new ArrayList<>(links.keySet());
+    }
+
+    public int getLinkCount() {
+        return links.size();
+    }
+
+    /**
+     * 因链路池满而被淘汰的链路数
+     */
+    public long getEvictedLinkCount() {
+        return evictedLinks.get();
+    }
+
+    /**
+     * 连接各阶段（排队、SDP + 连接、按缓存信道连接、链路登记）的耗时
+     */
+    @NonNull
+    public ConnectionTimings getConnectionTimings() {
+        return connectionTimings;
+    }
+
+    /**
+     * 因链路池满且没有可淘汰的链路而被拒绝的新链路数
+     */
+    public long getRejectedLinkCount() {
+        return rejectedLinks.get();
+    }
+
+    private void connectionFailed(String address, ConnectThread connectThread) {
+        if (!connectThreads.remove(address, connectThread)) {
+            // 已被取消（对方先连了进来，或服务已停止）
+            return;
+        }
+        Log.d(TAG, "Connection Failed: " + address);
+        connectionTimings.recordResult(false);
+        updateState();
+        if (!links.containsKey(address)) {
+            // 对方连进来的链路仍在时不算断开
+            notifyLinkDown(address);
+        }
 
         // Send a failure message back to the Activity
         Bundle bundle = new Bundle();
         bundle.putString("toast", "無法接続デバイス");
-        handler.obtainMessage(MainActivity.MESSAGE_TOAST, bundle).sendToTarget();
+        notifyHandler(MainActivity.MESSAGE_TOAST, 0, 0, bundle);
     }
 
-    private void connectionLost() {
-        Log.d(TAG, "Connection Lost");
-        setState(STATE_LISTEN);
+    private void connectionLost(ConnectedThread link) {
+        if (!links.remove(link.remoteAddress, link)) {
+            // 主动淘汰或停止时关闭的链路
+            return;
+        }
+        Log.d(TAG, "Connection Lost: " + link.remoteAddress);
+        updateState();
+        notifyLinkDown(link.remoteAddress);
 
         // Send a failure message back to the Activity
         Bundle bundle = new Bundle();
         bundle.putString("toast", "デバイス接続が切断されました");
-        handler.obtainMessage(MainActivity.MESSAGE_TOAST, bundle).sendToTarget();
+        notifyHandler(MainActivity.MESSAGE_TOAST, 0, 0, bundle);
+    }
+
+    private static void closeQuietly(BluetoothSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Could not close unwanted socket", e);
+        }
     }
 
     private class AcceptThread extends Thread {
@@ -240,7 +496,8 @@ public class BluetoothCommunicationService {
             Log.d(TAG, "BEGIN AcceptThread");
             setName("AcceptThread");
 
-            while (state != STATE_CONNECTED) {
+            // 链路池满员时也继续监听，由 connected() 决定淘汰或拒绝
+            while (true) {
                 BluetoothSocket socket = null;
                 try {
                     socket = serverSocket.accept();
@@ -253,31 +510,51 @@ public class BluetoothCommunicationService {
                 }
 
                 if (socket != null) {
-                    synchronized (BluetoothCommunicationService.this) {
-                        try {
-                            switch (state) {
-                                case STATE_LISTEN:
-                                case STATE_CONNECTING:
-                                    connected(socket, socket.getRemoteDevice());
-                                    break;
-                                case STATE_NONE:
-                                case STATE_CONNECTED:
-                                    try {
-                                        socket.close();
-                                    } catch (IOException e) {
-                                        Log.e(TAG, "Could not close unwanted socket", e);
-                                    }
-                                    break;
-                            }
-                        } catch (SecurityException e) {
-                            Log.e(TAG, "Security Exception while handling connection", e);
-                        }
-                    }
+                    // 握手在单独的线程上读取，慢的对方不会拖住监听
+                    BluetoothSocket accepted = socket;
+                    new Thread(() -> receiveHandshake(accepted), "HandshakeThread").start();
                 }
             }
             Log.i(TAG, "END AcceptThread");
         }
 
+        /**
+         * 读取发起方的标识后登记链路；对方在 HANDSHAKE_TIMEOUT_MS 内没有发来时关闭套接字
+         */
+        private void receiveHandshake(BluetoothSocket socket) {
+            TimingWheel.Timeout timeout = TimingWheel.getDefault()
+                    .schedule(HANDSHAKE_TIMEOUT_MS, () -> closeQuietly(socket));
+            long initiatorToken;
+            try {
+                initiatorToken = new DataInputStream(socket.getInputStream()).readLong();
+            } catch (IOException e) {
+                Log.w(TAG, "Handshake failed", e);
+                timeout.cancel();
+                closeQuietly(socket);
+                return;
+            }
+            if (!timeout.cancel()) {
+                // 超时已关闭了套接字
+                return;
+            }
+            synchronized (BluetoothCommunicationService.this) {
+                try {
+                    switch (state) {
+                        case STATE_LISTEN:
+                        case STATE_CONNECTING:
+                        case STATE_CONNECTED:
+                            connected(socket, socket.getRemoteDevice(), initiatorToken);
+                            break;
+                        case STATE_NONE:
+                            closeQuietly(socket);
+                            break;
+                    }
+                } catch (SecurityException e) {
+                    Log.e(TAG, "Security Exception while handling connection", e);
+                }
+            }
+        }
+
         public void cancel() {
             Log.d(TAG, "Cancel AcceptThread");
             if (serverSocket != null) {
@@ -291,92 +568,177 @@ public class BluetoothCommunicationService {
     }
 
 
+    /**
+     * 一次连接尝试。先等待连接槽位（最多 MAX_PARALLEL_DIALS 个同时进行），
+     * 有缓存的信道时直接连接该信道，失败或没有缓存时按 UUID 连接（含 SDP 查询）
+     */
     private class ConnectThread extends Thread {
-        private BluetoothSocket socket = null;
+        private volatile BluetoothSocket socket = null;
+        private volatile boolean cancelled;
         private final BluetoothDevice device;
+        private final String address;
+        private final long createdAt = SystemClock.elapsedRealtime();
 
         public ConnectThread(BluetoothDevice device) {
             this.device = device;
-
-            try {
-                if (!checkBluetoothPermissions()) {
-                    Log.e(TAG, "Required Bluetooth permissions not granted");
-                    return;
-                }
-                socket = device.createInsecureRfcommSocketToServiceRecord(MY_UUID);
-            } catch (SecurityException e) {
-                Log.e(TAG, "Security Exception in ConnectThread constructor", e);
-            } catch (IOException e) {
-                Log.e(TAG, "Socket create() failed", e);
-            }
+            this.address = device.getAddress();
         }
 
         public void run() {
-            if (socket == null) {
-                Log.e(TAG, "Socket was not initialized");
-                connectionFailed();
+            setName("ConnectThread-" + address);
+            try {
+                dialSlots.acquire();
+            } catch (InterruptedException e) {
+                connectionFailed(address, this);
                 return;
             }
 
-            Log.i(TAG, "BEGIN ConnectThread");
-            setName("ConnectThread");
-
+            BluetoothSocket connectedSocket;
             try {
+                long now = SystemClock.elapsedRealtime();
+                connectionTimings.record(ConnectionTimings.Stage.QUEUED, now - createdAt);
+                if (cancelled) {
+                    return;
+                }
                 if (!checkBluetoothPermissions()) {
                     Log.e(TAG, "Required Bluetooth permissions not granted");
-                    connectionFailed();
+                    connectionFailed(address, this);
                     return;
                 }
+                Log.i(TAG, "BEGIN ConnectThread");
 
                 // Always cancel discovery because it will slow down a connection
                 if (bluetoothAdapter.isDiscovering()) {
                     bluetoothAdapter.cancelDiscovery();
                 }
 
-                // Make a connection to the BluetoothSocket
-                socket.connect();
+                connectedSocket = connectCachedChannel();
+                if (connectedSocket == null) {
+                    connectedSocket = connectWithSdp();
+                }
             } catch (SecurityException e) {
                 Log.e(TAG, "Security Exception during connection", e);
-                connectionFailed();
-                try {
-                    socket.close();
-                } catch (IOException e2) {
-                    Log.e(TAG, "Unable to close socket during connection failure", e2);
-                }
-                return;
-            } catch (IOException e) {
-                connectionFailed();
-                try {
-                    socket.close();
-                } catch (IOException e2) {
-                    Log.e(TAG, "Unable to close socket during connection failure", e2);
-                }
+                connectedSocket = null;
+            } finally {
+                dialSlots.release();
+            }
+            if (connectedSocket == null) {
+                connectionFailed(address, this);
                 return;
             }
 
             // Reset the ConnectThread because we're done
             synchronized (BluetoothCommunicationService.this) {
-                connectThread = null;
+                if (!connectThreads.remove(address, this)) {
+                    // 连接期间被取消
+                    closeQuietly(connectedSocket);
+                    return;
+                }
             }
 
+            long handshakeStart = SystemClock.elapsedRealtime();
             try {
                 // Start the connected thread
-                if (socket != null && socket.isConnected()) {
-                    connected(socket, device);
+                if (connectedSocket.isConnected()) {
+                    sendHandshake(connectedSocket);
+                    connected(connectedSocket, device, linkToken);
+                    connectionTimings.record(ConnectionTimings.Stage.HANDSHAKE,
+                            SystemClock.elapsedRealtime() - handshakeStart);
+                    connectionTimings.recordResult(true);
                 } else {
-                    Log.e(TAG, "Socket is null or not connected");
-                    connectionFailed();
+                    Log.e(TAG, "Socket is not connected");
+                    connectionTimings.recordResult(false);
+                    updateState();
+                    notifyLinkDown(address);
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Handshake with " + address + " failed: " + e.getMessage());
+                closeQuietly(connectedSocket);
+                connectionTimings.recordResult(false);
+                updateState();
+                if (!links.containsKey(address)) {
+                    notifyLinkDown(address);
                 }
             } catch (SecurityException e) {
                 Log.e(TAG, "Security Exception during final connection phase", e);
-                connectionFailed();
+                connectionTimings.recordResult(false);
+                updateState();
+                notifyLinkDown(address);
+            }
+        }
+
+        private void sendHandshake(BluetoothSocket connectedSocket) throws IOException {
+            DataOutputStream handshake = new DataOutputStream(connectedSocket.getOutputStream());
+            handshake.writeLong(linkToken);
+            handshake.flush();
+        }
+
+        /**
+         * 按缓存的信道连接；没有缓存或连接失败时返回 null，失败的缓存被清除
+         */
+        private BluetoothSocket connectCachedChannel() {
+            int channel = channelCache.get(address);
+            connectionTimings.recordChannelCache(channel != RfcommChannelCache.NO_CHANNEL);
+            if (channel == RfcommChannelCache.NO_CHANNEL) {
+                return null;
+            }
+            long start = SystemClock.elapsedRealtime();
+            BluetoothSocket candidate = createSocketOnChannel(device, channel);
+            if (candidate != null && connectSocket(candidate)) {
+                connectionTimings.record(ConnectionTimings.Stage.CONNECT,
+                        SystemClock.elapsedRealtime() - start);
+                channelCache.put(address, channel, System.currentTimeMillis());
+                return candidate;
+            }
+            Log.d(TAG, "Cached channel " + channel + " for " + address + " failed, using SDP");
+            channelCache.invalidate(address);
+            return null;
+        }
+
+        private BluetoothSocket connectWithSdp() {
+            long start = SystemClock.elapsedRealtime();
+            BluetoothSocket candidate;
+            try {
+                candidate = device.createInsecureRfcommSocketToServiceRecord(MY_UUID);
+            } catch (IOException e) {
+                Log.e(TAG, "Socket create() failed", e);
+                return null;
+            }
+            if (candidate == null || !connectSocket(candidate)) {
+                return null;
+            }
+            connectionTimings.record(ConnectionTimings.Stage.SDP_AND_CONNECT,
+                    SystemClock.elapsedRealtime() - start);
+            channelCache.put(address, readChannel(candidate), System.currentTimeMillis());
+            return candidate;
+        }
+
+        /**
+         * 连接成功时返回 true；失败或期间被取消时关闭 candidate 并返回 false
+         */
+        private boolean connectSocket(BluetoothSocket candidate) {
+            socket = candidate;
+            if (cancelled) {
+                closeQuietly(candidate);
+                return false;
+            }
+            try {
+                candidate.connect();
+                return !cancelled;
+            } catch (IOException e) {
+                Log.d(TAG, "connect() to " + address + " failed: " + e.getMessage());
+                closeQuietly(candidate);
+                return false;
             }
         }
 
         public void cancel() {
-            if (socket != null) {
+            cancelled = true;
+            interrupt();
+            BluetoothSocket current = socket;
+            if (current != null) {
                 try {
-                    socket.close();
+                    current.close();
                 } catch (SecurityException e) {
                     Log.e(TAG, "Security Exception closing socket", e);
                 } catch (IOException e) {
@@ -386,16 +748,50 @@ public class BluetoothCommunicationService {
         }
     }
 
-    private class ConnectedThread extends Thread {
+    /**
+     * 直接连接 RFCOMM 信道，跳过 SDP。隐藏 API，不可用时返回 null
+     */
+    private static BluetoothSocket createSocketOnChannel(BluetoothDevice device, int channel) {
+        try {
+            Method method = device.getClass().getMethod("createInsecureRfcommSocket", int.class);
+            return (BluetoothSocket) method.invoke(device, channel);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.w(TAG, "createInsecureRfcommSocket unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * 已连接套接字的 RFCOMM 信道号，读取失败时返回 {@link RfcommChannelCache#NO_CHANNEL}
+     */
+    private static int readChannel(BluetoothSocket socket) {
+        try {
+            Field port = BluetoothSocket.class.getDeclaredField("mPort");
+            port.setAccessible(true);
+            return port.getInt(socket);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.w(TAG, "RFCOMM channel unavailable", e);
+            return RfcommChannelCache.NO_CHANNEL;
+        }
+    }
+
+    private class ConnectedThread extends Thread implements Link {
         private final BluetoothSocket socket;
+        private final String remoteAddress;
+        private final long initiatorToken;
         private InputStream inputStream = null;
         private OutputStream outputStream = null;
-        private final ByteArrayOutputStream messageBuffer;
+        private final FrameDecoder frameDecoder;
+        private final LinkQuality quality;
+        private WriteCoalescer writeCoalescer = null;
 
-        public ConnectedThread(BluetoothSocket socket) {
+        public ConnectedThread(BluetoothSocket socket, String remoteAddress, long initiatorToken) {
             Log.d(TAG, "Create ConnectedThread");
             this.socket = socket;
-            this.messageBuffer = new ByteArrayOutputStream();
+            this.remoteAddress = remoteAddress;
+            this.initiatorToken = initiatorToken;
+            this.frameDecoder = new FrameDecoder();
+            this.quality = new LinkQuality(System.currentTimeMillis());
 
             if (!checkBluetoothPermissions()) {
                 Log.e(TAG, "Required Bluetooth permissions not granted");
@@ -405,6 +801,12 @@ public class BluetoothCommunicationService {
             try {
                 inputStream = socket.getInputStream();
                 outputStream = socket.getOutputStream();
+                writeCoalescer = new WriteCoalescer(outputStream, BUFFER_POOL, (bytes, frames) ->
+                        notifyHandler(MainActivity.MESSAGE_WRITE, bytes, frames, null));
+                writeCoalescer.configure(coalescingMinWindowMs, coalescingMaxWindowMs,
+                        coalescingByteBudget);
+                // 关闭套接字后读线程随之退出，链路从池中移除并通知断开
+                writeCoalescer.setFailureListener(e -> cancel());
             } catch (SecurityException e) {
                 Log.e(TAG, "Security Exception getting socket streams", e);
             } catch (IOException e) {
@@ -415,73 +817,87 @@ public class BluetoothCommunicationService {
         public void run() {
             if (inputStream == null || outputStream == null) {
                 Log.e(TAG, "Socket streams were not initialized");
+                connectionLost(this);
                 return;
             }
 
-            Log.i(TAG, "BEGIN ConnectedThread");
-            byte[] buffer = new byte[1024];
+            Log.i(TAG, "BEGIN ConnectedThread " + remoteAddress);
+            setName("ConnectedThread-" + remoteAddress);
+            writeCoalescer.start("ConnectedThread-Writer-" + remoteAddress);
+            byte[] buffer = BUFFER_POOL.acquire();
             int bytes;
 
-            while (true) {
-                try {
-                    bytes = inputStream.read(buffer);
-                    if (bytes > 0) {
-                        handleReadMessage(buffer, bytes);
+            try {
+                while (true) {
+                    try {
+                        bytes = inputStream.read(buffer);
+                        if (bytes > 0) {
+                            handleReadMessage(buffer, bytes);
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "Disconnected: " + remoteAddress, e);
+                        if (writeCoalescer != null) {
+                            writeCoalescer.stop();
+                        }
+                        connectionLost(this);
+                        break;
                     }
-                } catch (IOException e) {
-                    Log.e(TAG, "Disconnected", e);
-                    connectionLost();
-                    break;
                 }
+            } finally {
+                BUFFER_POOL.release(buffer);
             }
         }
 
         private void handleReadMessage(byte[] buffer, int bytes) {
-            try {
-                messageBuffer.write(buffer, 0, bytes);
+            frameDecoder.feed(buffer, 0, bytes, this::handleFrame);
+        }
 
-                // 尝试反序列化完整消息
-                byte[] messageData = messageBuffer.toByteArray();
-                try {
-                    ByteArrayInputStream bis = new ByteArrayInputStream(messageData);
-                    ObjectInputStream ois = new ObjectInputStream(bis);
-                    Message message = (Message) ois.readObject();
+        private void handleFrame(byte[] buffer, int offset, int length) {
+            quality.onFrameReceived(System.currentTimeMillis());
+            InboundFrameListener listener = inboundFrameListener;
+            if (listener == null) {
+                Log.w(TAG, "No inbound frame listener, dropping frame");
+                return;
+            }
 
-                    // 消息成功反序列化，清空缓冲区
-                    messageBuffer.reset();
+            listener.onFrameReceived(buffer, offset - FrameCodec.HEADER_SIZE,
+                    length + FrameCodec.OVERHEAD, remoteAddress);
+        }
 
-                    // 发送消息到handler
-                    handler.obtainMessage(MainActivity.MESSAGE_READ, -1, -1, message)
-                            .sendToTarget();
+        public void write(byte[] buffer, boolean urgent) {
+            write(buffer, urgent ? MessageScheduler.Lane.CHAT : MessageScheduler.Lane.LOCATION);
+        }
 
-                } catch (StreamCorruptedException e) {
-                    // 数据不完整，继续等待更多数据
-                    return;
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error processing message", e);
-                messageBuffer.reset();
-            }
+        @NonNull
+        @Override
+        public String getAddress() {
+            return remoteAddress;
         }
 
-        public void write(byte[] buffer) {
-            if (outputStream == null) {
+        @NonNull
+        @Override
+        public WriteCoalescer.EnqueueStatus write(@NonNull byte[] buffer,
+                                                  @NonNull MessageScheduler.Lane lane) {
+            if (writeCoalescer == null) {
                 Log.e(TAG, "OutputStream is null, cannot write");
-                return;
+                return WriteCoalescer.EnqueueStatus.CLOSED;
             }
-
-            try {
-                outputStream.write(buffer);
-                handler.obtainMessage(MainActivity.MESSAGE_WRITE, -1, -1, buffer)
-                        .sendToTarget();
-            } catch (SecurityException e) {
-                Log.e(TAG, "Security Exception during write", e);
-            } catch (IOException e) {
-                Log.e(TAG, "Exception during write", e);
+            WriteCoalescer.EnqueueStatus status = writeCoalescer.enqueue(buffer, lane);
+            if (!status.isQueued()) {
+                Log.w(TAG, "Outbound queue to " + remoteAddress + " full, " + lane + " frame " + status);
             }
+            return status;
+        }
+
+        @Override
+        public int getBacklog() {
+            return writeCoalescer != null ? writeCoalescer.getQueuedFrames() : 0;
         }
 
         public void cancel() {
+            if (writeCoalescer != null) {
+                writeCoalescer.stop();
+            }
             try {
                 socket.close();
             } catch (SecurityException e) {
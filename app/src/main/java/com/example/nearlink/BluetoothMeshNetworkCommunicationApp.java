@@ -20,7 +20,6 @@ import androidx.core.app.ActivityCompat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 public class BluetoothMeshNetworkCommunicationApp extends AppCompatActivity {
     private BluetoothAdapter bluetoothAdapter;
@@ -53,7 +52,7 @@ public class BluetoothMeshNetworkCommunicationApp extends AppCompatActivity {
         updateHandler = new Handler(Looper.getMainLooper());
 
         // MeshNodeの初期化
-        String nodeId = UUID.randomUUID().toString();
+        MeshId nodeId = MeshId.random();
         meshNode = new MeshNode(nodeId, this);
 
         // Bluetooth初期化
@@ -144,7 +143,7 @@ public class BluetoothMeshNetworkCommunicationApp extends AppCompatActivity {
     }
 
     private void updateLocationDisplay() {
-        Map<String, Location> nearbyLocations = meshNode.getNearbyUserLocations();
+        Map<MeshId, Location> nearbyLocations = meshNode.getNearbyUserLocations();
         // UIの更新処理
     }
 
@@ -18,11 +18,6 @@ import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import android.util.Log;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -42,8 +37,8 @@ public class BluetoothService {
     private static final long DISCOVERY_INTERVAL_NORMAL = 5000; // 5秒
     private static final long DISCOVERY_INTERVAL_POWER_SAVE = 15000; // 15秒
     private static final long CONNECTION_TIMEOUT = 10000; // 10秒
-    private static final int MAX_MESSAGE_SIZE = 1024 * 1024; // 1MB
     private static final int DISCOVERABLE_DURATION = 300; // 300秒
+    private static final long DIAL_BATCH_WINDOW = 2000; // 2秒
 
     private final WeakReference<Context> contextRef;
     private final BluetoothAdapter bluetoothAdapter;
@@ -51,9 +46,10 @@ public class BluetoothService {
     private final Handler handler;
     private final ConcurrentHashMap<String, DeviceInfo> discoveredDevices;
     private final ConcurrentHashMap<String, Long> connectionAttempts;
+    private final TimingWheel timingWheel;
     private final AtomicBoolean isDiscovering;
     private final PowerManager.WakeLock wakeLock;
-    private BluetoothCommunicationService communicationService;
+    private Transport communicationService;
 
     private BroadcastReceiver discoveryReceiver;
     private BroadcastReceiver scanModeReceiver;
@@ -62,6 +58,9 @@ public class BluetoothService {
     private long lastDiscoverableRequestTime;
     private boolean isDiscoverable;
     private final Object connectionLock = new Object();
+    // 本轮扫描中找到、尚未发起连接的设备，由 connectionLock 保护
+    private final List<BluetoothDevice> dialBatch = new ArrayList<>();
+    private final Runnable dialBatchFlush = this::flushDialBatch;
 
     public BluetoothService(@NonNull BluetoothAdapter adapter,
                             @NonNull MeshNode meshNode,
@@ -72,6 +71,7 @@ public class BluetoothService {
         this.handler = new Handler(Looper.getMainLooper());
         this.discoveredDevices = new ConcurrentHashMap<>();
         this.connectionAttempts = new ConcurrentHashMap<>();
+        this.timingWheel = TimingWheel.getDefault();
         this.isDiscovering = new AtomicBoolean(false);
         this.isDiscoverable = false;
 
@@ -83,7 +83,7 @@ public class BluetoothService {
         wakeLock.setReferenceCounted(false);
 
         initializeReceivers();
-        initializeCommunicationService(context);
+        initializeCommunicationService();
         advertiseServiceUUID();
     }
 
@@ -247,7 +247,7 @@ public class BluetoothService {
         return false;
     }
 
-    private void initializeCommunicationService(Context context) {
+    private void initializeCommunicationService() {
         Handler commHandler = new Handler(Looper.getMainLooper()) {
             @Override
             public void handleMessage(@NonNull android.os.Message msg) {
@@ -255,9 +255,6 @@ public class BluetoothService {
                     case MainActivity.MESSAGE_STATE_CHANGE:
                         handleStateChange(msg.arg1);
                         break;
-                    case MainActivity.MESSAGE_READ:
-                        handleReadMessage((Message) msg.obj);
-                        break;
                     case MainActivity.MESSAGE_DEVICE_NAME:
                         Bundle bundle = msg.getData();
                         if (bundle != null) {
@@ -271,8 +268,13 @@ public class BluetoothService {
             }
         };
 
-        communicationService = new BluetoothCommunicationService(context, commHandler);
-        communicationService.start();
+        // 与 MeshNode 共用同一个链路池：MeshNode 的转发与 HELLO 都写到这里建立的链路上
+        communicationService = meshNode.getTransport();
+        if (communicationService instanceof BluetoothCommunicationService) {
+            ((BluetoothCommunicationService) communicationService).setHandler(commHandler);
+        }
+        // 链路池的生命周期属于 MeshNode：这里只确保它已启动，暂停画面时不停止
+        meshNode.start();
     }
 
     private void handleDeviceFound(Intent intent) {
@@ -308,17 +310,15 @@ public class BluetoothService {
                     if (!connectionAttempts.containsKey(deviceAddress) ||
                             canAttemptConnection(deviceAddress)) {
 
-                        if (bluetoothAdapter.isDiscovering()) {
-                            bluetoothAdapter.cancelDiscovery();
-                        }
-
-                        communicationService.connect(device);
-                        connectionAttempts.put(deviceAddress, System.currentTimeMillis());
+                        queueDial(device);
                     }
                 }
 
                 DeviceInfo deviceInfo = new DeviceInfo(deviceAddress, deviceName, System.currentTimeMillis());
-                discoveredDevices.put(deviceAddress, deviceInfo);
+                if (discoveredDevices.put(deviceAddress, deviceInfo) == null) {
+                    timingWheel.scheduleExpiry(DISCOVERY_TIMEOUT,
+                            () -> expireDiscoveredDevice(deviceAddress));
+                }
                 meshNode.handleNewDevice(deviceInfo);
             }
         } catch (SecurityException e) {
@@ -328,31 +328,52 @@ public class BluetoothService {
         }
     }
 
-    public void sendMessage(Message message) {
-        try {
-            byte[] serializedMessage = serializeMessage(message);
-            if (serializedMessage.length <= MAX_MESSAGE_SIZE) {
-                for (DeviceInfo deviceInfo : discoveredDevices.values()) {
-                    BluetoothDevice device = bluetoothAdapter.getRemoteDevice(deviceInfo.address);
-                    communicationService.connect(device);
-                    communicationService.write(serializedMessage);
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error sending message", e);
+    /**
+     * 扫描期间找到的设备先攒 DIAL_BATCH_WINDOW，再停止扫描、一起交给链路池的连接流水线并行连接；
+     * 否则第一个设备的连接就会中断扫描，同一轮中的其他设备只能等下一轮。
+     * 调用方持有 connectionLock
+     */
+    private void queueDial(BluetoothDevice device) {
+        if (!bluetoothAdapter.isDiscovering()) {
+            connectInBackground(device);
+            return;
+        }
+        if (dialBatch.isEmpty()) {
+            handler.postDelayed(dialBatchFlush, DIAL_BATCH_WINDOW);
         }
+        dialBatch.add(device);
     }
 
-    private byte[] serializeMessage(Message message) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        oos.writeObject(message);
-        return bos.toByteArray();
+    private void flushDialBatch() {
+        handler.removeCallbacks(dialBatchFlush);
+        synchronized (connectionLock) {
+            if (dialBatch.isEmpty()) {
+                return;
+            }
+            Log.d(TAG, "Dialing " + dialBatch.size() + " devices found in this scan");
+            try {
+                if (bluetoothAdapter.isDiscovering()) {
+                    bluetoothAdapter.cancelDiscovery();
+                }
+            } catch (SecurityException e) {
+                Log.e(TAG, "Security Exception cancelling discovery", e);
+            }
+            for (BluetoothDevice device : dialBatch) {
+                connectInBackground(device);
+            }
+            dialBatch.clear();
+        }
     }
 
-    private void handleReadMessage(Message message) {
-        if (message != null) {
-            meshNode.broadcastMessage(message);
+    /**
+     * 异步建立链路（已连接或正在连接时由链路池忽略），记录尝试时间用于限速
+     */
+    private void connectInBackground(BluetoothDevice device) {
+        String deviceAddress = device.getAddress();
+        communicationService.connect(deviceAddress);
+        if (connectionAttempts.put(deviceAddress, System.currentTimeMillis()) == null) {
+            timingWheel.scheduleExpiry(CONNECTION_TIMEOUT,
+                    () -> expireConnectionAttempt(deviceAddress));
         }
     }
 
@@ -371,6 +392,7 @@ public class BluetoothService {
 
     private void handleDiscoveryFinished() {
         isDiscovering.set(false);
+        flushDialBatch();
         if (wakeLock.isHeld()) {
             wakeLock.release();
         }
@@ -380,9 +402,6 @@ public class BluetoothService {
         if (timeSinceLastDiscovery >= getDiscoveryInterval()) {
             retryDiscovery();
         }
-
-        // 清理过期的连接
-        cleanupExpiredConnections();
     }
 
     private void handleDiscoveryFailure() {
@@ -397,6 +416,8 @@ public class BluetoothService {
         int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
         switch (state) {
             case BluetoothAdapter.STATE_ON:
+                // 适配器关闭时监听与链路都已失效，重新打开后重建链路池
+                meshNode.start();
                 if (!isDiscovering.get()) {
                     startDiscovery();
                 }
@@ -404,6 +425,7 @@ public class BluetoothService {
             case BluetoothAdapter.STATE_TURNING_OFF:
             case BluetoothAdapter.STATE_OFF:
                 stopDiscovery();
+                meshNode.stop();
                 break;
         }
     }
@@ -420,20 +442,28 @@ public class BluetoothService {
 
         int bondState = intent.getIntExtra(BluetoothDevice.EXTRA_BOND_STATE, BluetoothDevice.ERROR);
         if (bondState == BluetoothDevice.BOND_BONDED) {
-            communicationService.connect(device);
+            communicationService.connect(device.getAddress());
         }
     }
 
-    private void cleanupExpiredConnections() {
-        long now = System.currentTimeMillis();
+    // 以下由时间轮调用：过期则移除，否则返回剩余的有效时间
 
-        // 清理过期的设备记录
-        discoveredDevices.entrySet().removeIf(entry ->
-                (now - entry.getValue().lastSeen) > DISCOVERY_TIMEOUT);
+    private long expireDiscoveredDevice(String deviceAddress) {
+        long[] remaining = {0};
+        discoveredDevices.computeIfPresent(deviceAddress, (key, info) -> {
+            remaining[0] = DISCOVERY_TIMEOUT - (System.currentTimeMillis() - info.lastSeen);
+            return remaining[0] > 0 ? info : null;
+        });
+        return remaining[0];
+    }
 
-        // 清理超时的连接尝试记录
-        connectionAttempts.entrySet().removeIf(entry ->
-                (now - entry.getValue()) > CONNECTION_TIMEOUT);
+    private long expireConnectionAttempt(String deviceAddress) {
+        long[] remaining = {0};
+        connectionAttempts.computeIfPresent(deviceAddress, (key, lastAttempt) -> {
+            remaining[0] = CONNECTION_TIMEOUT - (System.currentTimeMillis() - lastAttempt);
+            return remaining[0] > 0 ? lastAttempt : null;
+        });
+        return remaining[0];
     }
 
     private long getDiscoveryInterval() {
@@ -548,15 +578,15 @@ public class BluetoothService {
             }
             unregisterReceivers();
             isDiscovering.set(false);
+            handler.removeCallbacks(dialBatchFlush);
+            synchronized (connectionLock) {
+                dialBatch.clear();
+            }
             retryCount = 0;
 
             if (wakeLock.isHeld()) {
                 wakeLock.release();
             }
-
-            if (communicationService != null) {
-                communicationService.stop();
-            }
         } catch (SecurityException e) {
             Log.e(TAG, "Security Exception in stopDiscovery", e);
         } catch (Exception e) {
@@ -591,24 +621,17 @@ public class BluetoothService {
     }
 
     public boolean isDeviceConnected(String address) {
-        if (communicationService != null) {
-            return communicationService.getState() == BluetoothCommunicationService.STATE_CONNECTED;
-        }
-        return false;
+        return communicationService != null && communicationService.isConnectedTo(address);
     }
 
     public void disconnectDevice() {
-        if (communicationService != null) {
-            communicationService.stop();
-        }
+        meshNode.stop();
     }
 
     public void resetConnections() {
         stopDiscovery();
-        if (communicationService != null) {
-            communicationService.stop();
-            communicationService.start();
-        }
+        meshNode.stop();
+        meshNode.start();
         startDiscovery();
     }
 
@@ -0,0 +1,58 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 固定大小字节数组的共享池，供所有连接的读写路径复用，
+ * 稳态下收发消息不再为 I/O 缓冲区分配新数组。
+ *
+ * 只覆盖链路的读缓冲区与合并写出的批次缓冲区。{@link MeshNode} 保留下来的帧
+ * 仍按实际长度复制一份，并为它分配 MeshFrame 与 MeshId：同一帧会同时挂在
+ * 多条链路的写队列、待发队列和 gossip 定时器上，没有唯一的归还时机，
+ * 池化它需要引用计数，目前没有这样做。重复帧在复制之前就被丢弃，不产生这些分配。
+ *
+ * 线程安全。池满时归还的数组直接丢弃，池空时临时分配新数组。
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> buffers;
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    @NonNull
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        if (buffer != null) {
+            reuses.incrementAndGet();
+            return buffer;
+        }
+        allocations.incrementAndGet();
+        return new byte[bufferSize];
+    }
+
+    public void release(@NonNull byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    public long getReuses() {
+        return reuses.get();
+    }
+}
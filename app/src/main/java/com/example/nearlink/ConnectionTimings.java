@@ -0,0 +1,111 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 建立链路各阶段的耗时统计
+ */
+public final class ConnectionTimings {
+
+    public enum Stage {
+        /** 等待空闲的连接槽位 */
+        QUEUED,
+        /** 按 UUID 连接：SDP 查询信道加上 RFCOMM 连接，两者在同一个 connect() 调用中 */
+        SDP_AND_CONNECT,
+        /** 按缓存的信道直接连接，不做 SDP */
+        CONNECT,
+        /** 套接字连接后到链路登记完成（取流、启动读写线程） */
+        HANDSHAKE
+    }
+
+    private final AtomicLong[] counts = newCounters();
+    private final AtomicLong[] totalMillis = newCounters();
+    private final AtomicLong[] maxMillis = newCounters();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong channelCacheHits = new AtomicLong();
+    private final AtomicLong channelCacheMisses = new AtomicLong();
+
+    private static AtomicLong[] newCounters() {
+        AtomicLong[] counters = new AtomicLong[Stage.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicLong();
+        }
+        return counters;
+    }
+
+    void record(@NonNull Stage stage, long millis) {
+        int i = stage.ordinal();
+        counts[i].incrementAndGet();
+        totalMillis[i].addAndGet(millis);
+        long previous;
+        while (millis > (previous = maxMillis[i].get())
+                && !maxMillis[i].compareAndSet(previous, millis)) {
+            // retry
+        }
+    }
+
+    void recordResult(boolean success) {
+        (success ? succeeded : failed).incrementAndGet();
+    }
+
+    void recordChannelCache(boolean hit) {
+        (hit ? channelCacheHits : channelCacheMisses).incrementAndGet();
+    }
+
+    public long getCount(@NonNull Stage stage) {
+        return counts[stage.ordinal()].get();
+    }
+
+    public double getAverageMillis(@NonNull Stage stage) {
+        long count = getCount(stage);
+        return count == 0 ? 0 : (double) totalMillis[stage.ordinal()].get() / count;
+    }
+
+    public long getMaxMillis(@NonNull Stage stage) {
+        return maxMillis[stage.ordinal()].get();
+    }
+
+    /**
+     * SDP 查询的估计耗时：按 UUID 连接与按缓存信道连接的平均耗时之差；
+     * 两种连接都还没有样本时为 0
+     */
+    public double getEstimatedSdpMillis() {
+        if (getCount(Stage.SDP_AND_CONNECT) == 0 || getCount(Stage.CONNECT) == 0) {
+            return 0;
+        }
+        return Math.max(0, getAverageMillis(Stage.SDP_AND_CONNECT) - getAverageMillis(Stage.CONNECT));
+    }
+
+    public long getSucceededCount() {
+        return succeeded.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getChannelCacheHits() {
+        return channelCacheHits.get();
+    }
+
+    public long getChannelCacheMisses() {
+        return channelCacheMisses.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ConnectionTimings{");
+        for (Stage stage : Stage.values()) {
+            builder.append(stage).append('=').append(String.format(Locale.ROOT, "%.1f",
+                    getAverageMillis(stage))).append("ms/").append(getCount(stage)).append(", ");
+        }
+        return builder.append("ok=").append(succeeded.get())
+                .append(", failed=").append(failed.get())
+                .append(", cacheHits=").append(channelCacheHits.get()).append('}').toString();
+    }
+}
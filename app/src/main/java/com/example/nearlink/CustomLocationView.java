@@ -13,7 +13,7 @@ import java.util.Map;
 public class CustomLocationView extends View {
     private Paint paint;
     private Location myLocation;
-    private Map<String, Location> nearbyLocations;
+    private Map<MeshId, Location> nearbyLocations;
     private float scale = 1.0f; // メートル/ピクセルの比率
     private static final int MAX_RANGE = 1000; // メートル単位での表示範囲
 
@@ -38,7 +38,7 @@ public class CustomLocationView extends View {
         invalidate();
     }
 
-    public void updateNearbyLocations(Map<String, Location> locations) {
+    public void updateNearbyLocations(Map<MeshId, Location> locations) {
         nearbyLocations = locations;
         invalidate();
     }
@@ -57,7 +57,7 @@ public class CustomLocationView extends View {
 
         // 近くのユーザーを描画
         paint.setColor(Color.RED);
-        for (Map.Entry<String, Location> entry : nearbyLocations.entrySet()) {
+        for (Map.Entry<MeshId, Location> entry : nearbyLocations.entrySet()) {
             Location otherLocation = entry.getValue();
             float[] results = new float[3];
 
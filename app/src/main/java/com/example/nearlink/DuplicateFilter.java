@@ -0,0 +1,181 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按 (发送者, 序号) 去重。每个发送者只保存最高序号和其后 64 个序号的位图，
+ * 检查与记录都是 O(1)，内存只与活跃的发送者数量有关，与消息速率无关。
+ * 与 OLSR 一样，"已收到"与"已转发"分开记录：先从非 MPR 选择者收到的消息，
+ * 之后从 MPR 选择者收到副本时仍需要转发一次。
+ *
+ * 序号为 32 位并按回绕比较。比窗口更旧的序号无法区分，一律视为重复；
+ * 这类消息本来也会因为超过 MESSAGE_TIMEOUT 而被丢弃。
+ * 超过 maxIdle 没有新序号的发送者由 {@link TimingWheel} 移除。
+ */
+final class DuplicateFilter {
+    static final int WINDOW_SIZE = 64;
+
+    private final ConcurrentHashMap<MeshId, Window> windows = new ConcurrentHashMap<>();
+    private final TimingWheel timingWheel;
+    private final long maxIdle;
+
+    DuplicateFilter(@NonNull TimingWheel timingWheel, long maxIdle) {
+        this.timingWheel = timingWheel;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * 只检查不记录，供读线程在复制帧之前快速丢弃重复
+     */
+    boolean isDuplicate(@NonNull MeshId origin, int sequence) {
+        Window window = windows.get(origin);
+        return window != null && window.contains(sequence);
+    }
+
+    /**
+     * 记录一个序号；已经见过时返回 false
+     */
+    boolean markSeen(@NonNull MeshId origin, int sequence, long now) {
+        Window window = windows.get(origin);
+        if (window == null) {
+            window = new Window();
+            Window existing = windows.putIfAbsent(origin, window);
+            if (existing != null) {
+                window = existing;
+            } else {
+                timingWheel.scheduleExpiry(maxIdle, () -> expireIfIdle(origin));
+            }
+        }
+        return window.mark(sequence, now);
+    }
+
+    /**
+     * 是否已经转发过该序号；未记录为已见的序号返回 false
+     */
+    boolean isRetransmitted(@NonNull MeshId origin, int sequence) {
+        Window window = windows.get(origin);
+        return window != null && window.isRetransmitted(sequence);
+    }
+
+    /**
+     * 记录一次转发；已经转发过时返回 false。比窗口更旧的序号视为已转发
+     */
+    boolean markRetransmitted(@NonNull MeshId origin, int sequence) {
+        Window window = windows.get(origin);
+        return window == null || window.markRetransmitted(sequence);
+    }
+
+    /**
+     * 撤销记录，用于消息未能进入处理队列的情况
+     */
+    void forget(@NonNull MeshId origin, int sequence) {
+        Window window = windows.get(origin);
+        if (window != null) {
+            window.clear(sequence);
+        }
+    }
+
+    private long expireIfIdle(MeshId origin) {
+        long[] remaining = {0};
+        windows.computeIfPresent(origin, (key, window) -> {
+            remaining[0] = window.remainingTtl(System.currentTimeMillis(), maxIdle);
+            return remaining[0] > 0 ? window : null;
+        });
+        return remaining[0];
+    }
+
+    int getOriginCount() {
+        return windows.size();
+    }
+
+    private static final class Window {
+        private boolean initialized;
+        private int highest;
+        // bit i 表示序号 highest - i 已见过
+        private long seen;
+        // 同样的位序，表示已转发
+        private long retransmitted;
+        private long lastSeen;
+
+        synchronized boolean contains(int sequence) {
+            if (!initialized) {
+                return false;
+            }
+            int behind = highest - sequence;
+            if (behind < 0) {
+                return false;
+            }
+            return behind >= WINDOW_SIZE || (seen & (1L << behind)) != 0;
+        }
+
+        synchronized boolean mark(int sequence, long now) {
+            if (!initialized) {
+                initialized = true;
+                highest = sequence;
+                seen = 1L;
+                retransmitted = 0L;
+                lastSeen = now;
+                return true;
+            }
+            int behind = highest - sequence;
+            if (behind < 0) {
+                int ahead = -behind;
+                boolean reset = ahead >= WINDOW_SIZE || ahead < 0;
+                seen = reset ? 1L : (seen << ahead) | 1L;
+                retransmitted = reset ? 0L : retransmitted << ahead;
+                highest = sequence;
+                lastSeen = now;
+                return true;
+            }
+            if (behind >= WINDOW_SIZE) {
+                return false;
+            }
+            long bit = 1L << behind;
+            if ((seen & bit) != 0) {
+                return false;
+            }
+            seen |= bit;
+            lastSeen = now;
+            return true;
+        }
+
+        synchronized boolean isRetransmitted(int sequence) {
+            int behind = highest - sequence;
+            if (!initialized || behind < 0) {
+                return false;
+            }
+            return behind >= WINDOW_SIZE || (retransmitted & (1L << behind)) != 0;
+        }
+
+        synchronized boolean markRetransmitted(int sequence) {
+            int behind = highest - sequence;
+            if (!initialized || behind < 0) {
+                // 尚未记录为已见，不会发生在转发路径上
+                return true;
+            }
+            if (behind >= WINDOW_SIZE) {
+                return false;
+            }
+            long bit = 1L << behind;
+            if ((retransmitted & bit) != 0) {
+                return false;
+            }
+            retransmitted |= bit;
+            return true;
+        }
+
+        synchronized void clear(int sequence) {
+            int behind = highest - sequence;
+            if (initialized && behind >= 0 && behind < WINDOW_SIZE) {
+                seen &= ~(1L << behind);
+                retransmitted &= ~(1L << behind);
+            }
+        }
+
+        synchronized long remainingTtl(long now, long maxIdle) {
+            return maxIdle - (now - lastSeen);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * 链路层帧格式：
+ *
+ * <pre>
+ * offset  size  field
+ * 0       2     magic 'N' 'L'
+ * 2       2     payload length (big endian, unsigned)
+ * 4       1     header check   (CRC-8 of the length bytes)
+ * 5       n     payload        ({@link MessageCodec} encoded message)
+ * 5+n     4     CRC32 of length bytes + payload
+ * </pre>
+ *
+ * 头部校验让解码器在长度字段损坏时立即重新同步，而不必等待一个不存在的大帧。
+ */
+public final class FrameCodec {
+    static final byte MAGIC_0 = 'N';
+    static final byte MAGIC_1 = 'L';
+    static final int HEADER_SIZE = 5;
+    static final int TRAILER_SIZE = 4;
+    static final int OVERHEAD = HEADER_SIZE + TRAILER_SIZE;
+    static final int MAX_PAYLOAD_SIZE = 0xFFFF;
+    static final int MAX_FRAME_SIZE = MAX_PAYLOAD_SIZE + OVERHEAD;
+
+    private static final ThreadLocal<CRC32> CRC = new ThreadLocal<CRC32>() {
+        @Override
+        protected CRC32 initialValue() {
+            return new CRC32();
+        }
+    };
+
+    private FrameCodec() {
+    }
+
+    /**
+     * 将消息直接编码进一个完整的帧，不产生中间数组
+     */
+    @NonNull
+    public static byte[] encodeMessage(@NonNull Message message) {
+        int payloadLength = MessageCodec.encodedLength(message);
+        checkPayloadLength(payloadLength);
+        byte[] frame = new byte[payloadLength + OVERHEAD];
+        MessageCodec.encode(message, frame, HEADER_SIZE);
+        seal(frame, 0, payloadLength);
+        return frame;
+    }
+
+    /**
+     * 解码 {@link FrameDecoder} 回调中的负载，并把整个帧复制一份附加到消息上，
+     * 以便转发时直接复用
+     */
+    @NonNull
+    public static Message decodeMessage(@NonNull byte[] buffer, int payloadOff, int payloadLength)
+            throws IOException {
+        byte[] frame = new byte[payloadLength + OVERHEAD];
+        System.arraycopy(buffer, payloadOff - HEADER_SIZE, frame, 0, frame.length);
+        Message message = MessageCodec.decode(frame, HEADER_SIZE, payloadLength);
+        message.attachFrame(frame);
+        return message;
+    }
+
+    @NonNull
+    public static byte[] encode(@NonNull byte[] payload, int off, int len) {
+        checkPayloadLength(len);
+        byte[] frame = new byte[len + OVERHEAD];
+        System.arraycopy(payload, off, frame, HEADER_SIZE, len);
+        seal(frame, 0, len);
+        return frame;
+    }
+
+    /**
+     * 负载已写入 {@code frame[frameOff + HEADER_SIZE ..]} 后，补全头部与校验和
+     */
+    static void seal(byte[] frame, int frameOff, int payloadLength) {
+        frame[frameOff] = MAGIC_0;
+        frame[frameOff + 1] = MAGIC_1;
+        frame[frameOff + 2] = (byte) (payloadLength >>> 8);
+        frame[frameOff + 3] = (byte) payloadLength;
+        frame[frameOff + 4] = headerCheck(frame[frameOff + 2], frame[frameOff + 3]);
+        updateChecksum(frame, frameOff, payloadLength);
+    }
+
+    /**
+     * 负载被原地修改后重新计算 CRC32
+     */
+    static void updateChecksum(byte[] frame, int frameOff, int payloadLength) {
+        MessageCodec.writeInt(frame, frameOff + HEADER_SIZE + payloadLength,
+                checksum(frame, frameOff + 2, payloadLength + 2));
+    }
+
+    static int payloadLength(byte[] frame, int frameOff) {
+        return ((frame[frameOff + 2] & 0xFF) << 8) | (frame[frameOff + 3] & 0xFF);
+    }
+
+    static int checksum(byte[] data, int off, int len) {
+        CRC32 crc = CRC.get();
+        crc.reset();
+        crc.update(data, off, len);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * CRC-8 (poly 0x07) over the two length bytes
+     */
+    static byte headerCheck(byte lengthHigh, byte lengthLow) {
+        int crc = 0;
+        crc = crc8(crc, lengthHigh);
+        crc = crc8(crc, lengthLow);
+        return (byte) crc;
+    }
+
+    private static int crc8(int crc, byte value) {
+        crc ^= value & 0xFF;
+        for (int i = 0; i < 8; i++) {
+            crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+        }
+        return crc;
+    }
+
+    private static void checkPayloadLength(int length) {
+        if (length > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Payload too large for a frame: " + length);
+        }
+    }
+}
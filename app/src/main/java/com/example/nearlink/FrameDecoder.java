@@ -0,0 +1,118 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link FrameCodec} 帧的增量解码器。
+ *
+ * 每次读取的数据追加到内部缓冲区，只有帧完整且校验通过时才回调；
+ * 一次读取可以包含多个帧，一个帧也可以跨多次读取。遇到损坏的数据时
+ * 丢弃一个字节后重新寻找帧头，链路本身不受影响。
+ *
+ * 非线程安全，每条连接使用一个实例。
+ */
+public class FrameDecoder {
+    private static final int INITIAL_CAPACITY = 2048;
+
+    public interface FrameListener {
+        /**
+         * payload 仅在回调期间有效，需要保留时由调用方复制
+         */
+        void onFrame(@NonNull byte[] buffer, int offset, int length);
+    }
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int start;
+    private int end;
+
+    private long framesDecoded;
+    private long checksumErrors;
+    private long bytesDiscarded;
+
+    public void feed(@NonNull byte[] data, int off, int len, @NonNull FrameListener listener) {
+        append(data, off, len);
+
+        while (end - start >= FrameCodec.HEADER_SIZE) {
+            if (buffer[start] != FrameCodec.MAGIC_0 || buffer[start + 1] != FrameCodec.MAGIC_1) {
+                skipToNextMagic();
+                continue;
+            }
+
+            if (FrameCodec.headerCheck(buffer[start + 2], buffer[start + 3]) != buffer[start + 4]) {
+                discard(1);
+                continue;
+            }
+
+            int payloadLength = FrameCodec.payloadLength(buffer, start);
+            int frameLength = payloadLength + FrameCodec.OVERHEAD;
+            if (end - start < frameLength) {
+                break;
+            }
+
+            int payloadOff = start + FrameCodec.HEADER_SIZE;
+            int expected = MessageCodec.readInt(buffer, payloadOff + payloadLength);
+            if (FrameCodec.checksum(buffer, start + 2, payloadLength + 2) != expected) {
+                checksumErrors++;
+                discard(1);
+                continue;
+            }
+
+            start += frameLength;
+            framesDecoded++;
+            listener.onFrame(buffer, payloadOff, payloadLength);
+        }
+
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+    }
+
+    public void reset() {
+        start = 0;
+        end = 0;
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    public long getChecksumErrors() {
+        return checksumErrors;
+    }
+
+    public long getBytesDiscarded() {
+        return bytesDiscarded;
+    }
+
+    private void append(byte[] data, int off, int len) {
+        if (end + len > buffer.length) {
+            int pending = end - start;
+            if (pending + len <= buffer.length) {
+                System.arraycopy(buffer, start, buffer, 0, pending);
+            } else {
+                // 未完成的数据最多是一个不完整的帧，缓冲区大小因此有上界
+                byte[] grown = new byte[Math.max(buffer.length * 2, pending + len)];
+                System.arraycopy(buffer, start, grown, 0, pending);
+                buffer = grown;
+            }
+            start = 0;
+            end = pending;
+        }
+        System.arraycopy(data, off, buffer, end, len);
+        end += len;
+    }
+
+    private void skipToNextMagic() {
+        int i = start + 1;
+        while (i < end && buffer[i] != FrameCodec.MAGIC_0) {
+            i++;
+        }
+        discard(i - start);
+    }
+
+    private void discard(int count) {
+        start += count;
+        bytesDiscarded += count;
+    }
+}
@@ -19,7 +19,6 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 public class Gamen1Activity extends AppCompatActivity {
     private static final String TAG = "Gamen1Activity";
@@ -41,7 +40,7 @@ public class Gamen1Activity extends AppCompatActivity {
         initializeViews();
 
         // MeshNodeの初期化
-        String nodeId = UUID.randomUUID().toString();
+        MeshId nodeId = MeshId.random();
         meshNode = new MeshNode(nodeId, getApplicationContext());  // 修改这里
 
         // その他の初期化処理...
@@ -54,7 +53,7 @@ public class Gamen1Activity extends AppCompatActivity {
 
         chatButton.setOnClickListener(v -> {
             Intent intent = new Intent(Gamen1Activity.this, Gamen2Activity.class);
-            intent.putExtra("NODE_ID", meshNode.getNodeId());
+            intent.putExtra("NODE_ID", meshNode.getNodeId().toString());
             startActivity(intent);
         });
     }
@@ -96,7 +95,7 @@ public class Gamen1Activity extends AppCompatActivity {
 
     private boolean initializeServices() {
         try {
-            String nodeId = UUID.randomUUID().toString();
+            MeshId nodeId = MeshId.random();
             meshNode = new MeshNode(nodeId, this);
 
             BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
@@ -136,7 +135,7 @@ public class Gamen1Activity extends AppCompatActivity {
     }
 
     private void updateNearbyUsersDisplay() {
-        Map<String, Location> nearbyLocations = meshNode.getNearbyUserLocations();
+        Map<MeshId, Location> nearbyLocations = meshNode.getNearbyUserLocations();
         List<BluetoothService.DeviceInfo> nearbyDevices = meshNode.getNearbyDevices();
 
         StringBuilder displayText = new StringBuilder();
@@ -151,8 +150,8 @@ public class Gamen1Activity extends AppCompatActivity {
         }
 
         if (myLocation != null) {
-            for (Map.Entry<String, Location> entry : nearbyLocations.entrySet()) {
-                String userId = entry.getKey();
+            for (Map.Entry<MeshId, Location> entry : nearbyLocations.entrySet()) {
+                MeshId userId = entry.getKey();
                 Location userLocation = entry.getValue();
 
                 float[] results = new float[1];
@@ -167,7 +166,7 @@ public class Gamen1Activity extends AppCompatActivity {
 
                 String userInfo = String.format(
                         "ユーザー: %s\n距離: %.0fm\n\n",
-                        userId.substring(0, 8),
+                        userId.toShortString(),
                         distance
                 );
                 displayText.append(userInfo);
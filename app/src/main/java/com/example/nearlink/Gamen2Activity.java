@@ -20,7 +20,6 @@ import android.Manifest;
 import android.content.pm.PackageManager;
 import android.content.Intent;
 import java.util.Map;
-import java.util.UUID;
 
 public class Gamen2Activity extends AppCompatActivity {
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
@@ -46,9 +45,9 @@ public class Gamen2Activity extends AppCompatActivity {
         initializeViews();
 
         // MeshNodeの取得または作成
-        String nodeId = getIntent().getStringExtra("NODE_ID");
+        MeshId nodeId = MeshId.fromString(getIntent().getStringExtra("NODE_ID"));
         if (nodeId == null) {
-            nodeId = UUID.randomUUID().toString();
+            nodeId = MeshId.random();
         }
         meshNode = new MeshNode(nodeId, this);
 
@@ -113,7 +112,7 @@ public class Gamen2Activity extends AppCompatActivity {
                 }
 
                 // 現在のノードIDを渡す
-                intent.putExtra("NODE_ID", meshNode.getNodeId());
+                intent.putExtra("NODE_ID", meshNode.getNodeId().toString());
                 Log.d(TAG, "Starting MapActivity for result");
 
                 // MapActivityを起動（結果を待つ）
@@ -166,7 +165,7 @@ public class Gamen2Activity extends AppCompatActivity {
     private void setupMessageListener() {
         meshNode.setMessageListener(message -> {
             runOnUiThread(() -> {
-                String senderId = message.getSenderId().substring(0, 8);
+                String senderId = message.getSenderId().toShortString();
                 appendMessage(senderId, message.getContent());
             });
         });
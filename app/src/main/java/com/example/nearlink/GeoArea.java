@@ -0,0 +1,46 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 圆形目标区域：中心 + 半径（米），用于限定广播的传播范围
+ */
+final class GeoArea {
+    final GeoPoint centre;
+    final int radiusMetres;
+
+    GeoArea(@NonNull GeoPoint centre, int radiusMetres) {
+        this.centre = centre;
+        this.radiusMetres = Math.max(0, radiusMetres);
+    }
+
+    boolean contains(@NonNull GeoPoint point) {
+        return centre.distanceTo(point) <= radiusMetres;
+    }
+
+    /**
+     * point 到区域边界的距离，在区域内为 0
+     */
+    double distanceFrom(@NonNull GeoPoint point) {
+        return Math.max(0, centre.distanceTo(point) - radiusMetres);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GeoArea)) return false;
+        GeoArea other = (GeoArea) o;
+        return radiusMetres == other.radiusMetres && centre.equals(other.centre);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * centre.hashCode() + radiusMetres;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return centre + "±" + radiusMetres + "m";
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.nearlink;
+
+import android.location.Location;
+import androidx.annotation.NonNull;
+
+/**
+ * 以 1e-7 度定点整数保存的坐标，与线路格式一致。
+ *
+ * 距离与方位使用等距圆柱投影近似：mesh 的跨度只有几公里，
+ * 误差远小于 GPS 精度，而且不需要三角函数以外的计算。
+ */
+final class GeoPoint {
+    private static final double EARTH_RADIUS_M = 6371000;
+    private static final long HALF_TURN_E7 = 1800000000L;
+
+    final int latitudeE7;
+    final int longitudeE7;
+
+    GeoPoint(int latitudeE7, int longitudeE7) {
+        this.latitudeE7 = latitudeE7;
+        this.longitudeE7 = longitudeE7;
+    }
+
+    @NonNull
+    static GeoPoint of(@NonNull Location location) {
+        return new GeoPoint(MessageCodec.toFixedPoint(location.getLatitude()),
+                MessageCodec.toFixedPoint(location.getLongitude()));
+    }
+
+    @NonNull
+    Location toLocation() {
+        return MessageCodec.toLocation(latitudeE7, longitudeE7);
+    }
+
+    /**
+     * 到 other 的近似距离（米）
+     */
+    double distanceTo(@NonNull GeoPoint other) {
+        return Math.hypot(eastTo(other), northTo(other));
+    }
+
+    /**
+     * 从本点指向 other 的方位角，自正东方向逆时针，弧度 (-π, π]
+     */
+    double angleTo(@NonNull GeoPoint other) {
+        return Math.atan2(northTo(other), eastTo(other));
+    }
+
+    private double northTo(GeoPoint other) {
+        return Math.toRadians(MessageCodec.fromFixedPoint(other.latitudeE7 - latitudeE7))
+                * EARTH_RADIUS_M;
+    }
+
+    private double eastTo(GeoPoint other) {
+        double meanLatitude = MessageCodec.fromFixedPoint(latitudeE7 / 2 + other.latitudeE7 / 2);
+        // 跨越 ±180° 经线时取短的一侧
+        long deltaLongitudeE7 = (long) other.longitudeE7 - longitudeE7;
+        if (deltaLongitudeE7 > HALF_TURN_E7) {
+            deltaLongitudeE7 -= 2 * HALF_TURN_E7;
+        } else if (deltaLongitudeE7 < -HALF_TURN_E7) {
+            deltaLongitudeE7 += 2 * HALF_TURN_E7;
+        }
+        return Math.toRadians(deltaLongitudeE7 / 1e7)
+                * Math.cos(Math.toRadians(meanLatitude)) * EARTH_RADIUS_M;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GeoPoint)) return false;
+        GeoPoint other = (GeoPoint) o;
+        return latitudeE7 == other.latitudeE7 && longitudeE7 == other.longitudeE7;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * latitudeE7 + longitudeE7;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return MessageCodec.fromFixedPoint(latitudeE7) + "," + MessageCodec.fromFixedPoint(longitudeE7);
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 地理路由（GPSR）：按位置选下一跳，不需要任何路由发现流量。
+ *
+ * <ul>
+ *   <li>贪心模式：交给离目标最近、且比本节点更近的邻居</li>
+ *   <li>周边模式：没有更近的邻居（空洞）时，在 Gabriel 图平面化后的邻居上按右手法则
+ *       绕空洞前进；到达比进入点更接近目标的节点后回到贪心模式</li>
+ * </ul>
+ * 进入点与当前模式写在帧的地理段中，由每一跳就地更新。
+ * 这里省略了 GPSR 的换面处理，绕行的长度由跳数上限约束；
+ * 周边模式绕回进入点说明本节点就是离目标坐标最近的可达节点。
+ */
+final class GeoRouter {
+    static final int MODE_GREEDY = 0;
+    static final int MODE_PERIMETER = 1;
+
+    /**
+     * 绕行一周回到了进入点：本节点就是离目标最近的节点
+     */
+    static final Decision ARRIVED = new Decision(null, MODE_PERIMETER, null);
+
+    /**
+     * 判定回到进入点时允许的偏差（米）：进入周边模式之后本节点可能已经移动，定位也有误差
+     */
+    static final double ENTRY_TOLERANCE_METRES = 10;
+
+    static final class Neighbour {
+        final String address;
+        final GeoPoint position;
+
+        Neighbour(@NonNull String address, @NonNull GeoPoint position) {
+            this.address = address;
+            this.position = position;
+        }
+    }
+
+    static final class Decision {
+        @Nullable
+        final String nextHop;
+        final int mode;
+        // 周边模式的进入点；贪心模式为 null
+        @Nullable
+        final GeoPoint entry;
+
+        Decision(@Nullable String nextHop, int mode, @Nullable GeoPoint entry) {
+            this.nextHop = nextHop;
+            this.mode = mode;
+            this.entry = entry;
+        }
+    }
+
+    private GeoRouter() {
+    }
+
+    /**
+     * 选择下一跳。没有任何已知位置的邻居时返回 null，由调用方回退到其他路由方式。
+     *
+     * @param previousHop 帧的上一跳；本地消息或上一跳位置未知时为 null
+     */
+    @Nullable
+    static Decision route(@NonNull GeoPoint self, @NonNull GeoPoint target, int mode,
+                          @Nullable GeoPoint entry, @Nullable Neighbour previousHop,
+                          @NonNull List<Neighbour> neighbours) {
+        if (neighbours.isEmpty()) {
+            return null;
+        }
+        double selfDistance = self.distanceTo(target);
+        if (mode == MODE_PERIMETER && entry != null && selfDistance < entry.distanceTo(target)) {
+            mode = MODE_GREEDY;
+        }
+
+        double referenceAngle;
+        if (mode == MODE_GREEDY || entry == null) {
+            Neighbour best = null;
+            double bestDistance = selfDistance;
+            for (Neighbour neighbour : neighbours) {
+                double distance = neighbour.position.distanceTo(target);
+                if (distance < bestDistance) {
+                    best = neighbour;
+                    bestDistance = distance;
+                }
+            }
+            if (best != null) {
+                return new Decision(best.address, MODE_GREEDY, null);
+            }
+            // 局部最小：从本节点进入周边模式，第一条边是目标方向逆时针的第一个邻居
+            entry = self;
+            referenceAngle = self.angleTo(target);
+        } else {
+            if (previousHop != null && isAtEntry(self, entry, neighbours)) {
+                return ARRIVED;
+            }
+            referenceAngle = previousHop != null
+                    ? self.angleTo(previousHop.position) : self.angleTo(target);
+        }
+
+        Neighbour next = nextCounterClockwise(self, referenceAngle, planarize(self, neighbours));
+        return next != null ? new Decision(next.address, MODE_PERIMETER, entry) : null;
+    }
+
+    /**
+     * 本节点在进入点的容差之内，且没有邻居比它更接近进入点；
+     * 进入点旁边的其他节点不会被误认为绕行的起点
+     */
+    private static boolean isAtEntry(GeoPoint self, GeoPoint entry, List<Neighbour> neighbours) {
+        double distance = self.distanceTo(entry);
+        if (distance > ENTRY_TOLERANCE_METRES) {
+            return false;
+        }
+        for (Neighbour neighbour : neighbours) {
+            if (neighbour.position.distanceTo(entry) < distance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gabriel 图：以 (self, v) 为直径的圆内有其他邻居 w 时去掉边 self-v。
+     * 只用本地已知的邻居位置，得到的图没有交叉边，右手法则才能沿面的边界前进。
+     */
+    @NonNull
+    static List<Neighbour> planarize(@NonNull GeoPoint self, @NonNull List<Neighbour> neighbours) {
+        List<Neighbour> planar = new ArrayList<>(neighbours.size());
+        for (Neighbour v : neighbours) {
+            double edge = square(self.distanceTo(v.position));
+            boolean keep = true;
+            for (Neighbour w : neighbours) {
+                if (w != v && square(self.distanceTo(w.position))
+                        + square(w.position.distanceTo(v.position)) < edge) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                planar.add(v);
+            }
+        }
+        return planar;
+    }
+
+    /**
+     * 从 referenceAngle 开始逆时针遇到的第一个邻居；与参考方向重合的邻居（来时的边）排在最后
+     */
+    @Nullable
+    private static Neighbour nextCounterClockwise(GeoPoint self, double referenceAngle,
+                                                  List<Neighbour> neighbours) {
+        Neighbour next = null;
+        double smallest = Double.MAX_VALUE;
+        for (Neighbour neighbour : neighbours) {
+            double delta = self.angleTo(neighbour.position) - referenceAngle;
+            while (delta <= 1e-9) {
+                delta += 2 * Math.PI;
+            }
+            while (delta > 2 * Math.PI + 1e-9) {
+                delta -= 2 * Math.PI;
+            }
+            if (delta < smallest) {
+                smallest = delta;
+                next = neighbour;
+            }
+        }
+        return next;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+}
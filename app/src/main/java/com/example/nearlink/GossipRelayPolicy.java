@@ -0,0 +1,181 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 决定一帧是否转发，抑制密集人群中的广播风暴。
+ *
+ * <ul>
+ *   <li>FLOOD：总是转发（原有行为）</li>
+ *   <li>FIXED：以固定概率转发</li>
+ *   <li>ADAPTIVE：概率随邻居数下降，期望转发邻居数保持在 targetFanout 左右</li>
+ * </ul>
+ * 非 FLOOD 模式下，转发前先等待一个随机退避；退避期间若已从其他邻居
+ * 听到同一消息 suppressionThreshold 次，说明周围已经覆盖，放弃转发。
+ * 本地消息、紧急消息以及离源头不足 floodHops 跳的消息总是立即转发。
+ */
+public class GossipRelayPolicy {
+    public enum Mode { FLOOD, FIXED, ADAPTIVE }
+
+    static final double DEFAULT_PROBABILITY = 0.65;
+    static final int DEFAULT_TARGET_FANOUT = 4;
+    static final double MIN_ADAPTIVE_PROBABILITY = 0.35;
+    static final int DEFAULT_SUPPRESSION_THRESHOLD = 3;
+    static final long DEFAULT_MAX_BACKOFF_MS = 200;
+    static final int DEFAULT_FLOOD_HOPS = 1;
+
+    interface Forwarder {
+        void forward(@NonNull MeshFrame frame);
+    }
+
+    private final TimingWheel timingWheel;
+    private final Random random;
+    // 退避中的帧 → 期间听到的重复次数
+    private final ConcurrentHashMap<MessageKey, AtomicInteger> pending = new ConcurrentHashMap<>();
+
+    private volatile Mode mode = Mode.ADAPTIVE;
+    private volatile double probability = DEFAULT_PROBABILITY;
+    private volatile int targetFanout = DEFAULT_TARGET_FANOUT;
+    private volatile int suppressionThreshold = DEFAULT_SUPPRESSION_THRESHOLD;
+    private volatile long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+    private volatile int floodHops = DEFAULT_FLOOD_HOPS;
+
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    GossipRelayPolicy(@NonNull TimingWheel timingWheel, @NonNull Random random) {
+        this.timingWheel = timingWheel;
+        this.random = random;
+    }
+
+    public void setMode(@NonNull Mode mode) {
+        this.mode = mode;
+    }
+
+    @NonNull
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * FIXED 模式的转发概率
+     */
+    public void setProbability(double probability) {
+        this.probability = Math.max(0, Math.min(1, probability));
+    }
+
+    /**
+     * ADAPTIVE 模式下期望的转发邻居数
+     */
+    public void setTargetFanout(int targetFanout) {
+        this.targetFanout = Math.max(1, targetFanout);
+    }
+
+    public void setSuppression(int threshold, long maxBackoffMs) {
+        this.suppressionThreshold = Math.max(1, threshold);
+        this.maxBackoffMs = Math.max(0, maxBackoffMs);
+    }
+
+    public void setFloodHops(int floodHops) {
+        this.floodHops = Math.max(0, floodHops);
+    }
+
+    /**
+     * 按当前模式与邻居数计算的转发概率
+     */
+    public double getForwardProbability(int neighbourCount) {
+        switch (mode) {
+            case FLOOD:
+                return 1;
+            case FIXED:
+                return probability;
+            default:
+                if (neighbourCount <= targetFanout) {
+                    return 1;
+                }
+                return Math.max(MIN_ADAPTIVE_PROBABILITY, (double) targetFanout / neighbourCount);
+        }
+    }
+
+    /**
+     * 提交一个可转发的帧。立即转发时在调用方线程上通过 forwarder 完成；
+     * 退避之后的转发在时间轮线程上交给 deferredForwarder，它不能阻塞
+     * （链路写入可能因拥塞而等待，会拖住同一时间轮上的所有定时任务）
+     */
+    void submit(@NonNull MeshFrame frame, int neighbourCount, @NonNull Forwarder forwarder,
+                @NonNull Forwarder deferredForwarder) {
+        if (mode == Mode.FLOOD || frame.isLocal() || frame.isUrgent()
+                || frame.getHopCount() < floodHops) {
+            forward(frame, forwarder);
+            return;
+        }
+
+        MessageKey key = new MessageKey(frame.getSenderId(), frame.getSequence());
+        AtomicInteger heard = new AtomicInteger();
+        if (pending.putIfAbsent(key, heard) != null) {
+            return;
+        }
+        long backoff = maxBackoffMs <= 0 ? 0 : (long) (random.nextDouble() * maxBackoffMs);
+        timingWheel.schedule(backoff,
+                () -> decide(key, frame, neighbourCount, deferredForwarder));
+    }
+
+    /**
+     * 收到一个已处理过的消息的副本
+     */
+    void onDuplicateHeard(@NonNull MeshId origin, int sequence) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        AtomicInteger heard = pending.get(new MessageKey(origin, sequence));
+        if (heard != null) {
+            heard.incrementAndGet();
+        }
+    }
+
+    private void decide(MessageKey key, MeshFrame frame, int neighbourCount, Forwarder forwarder) {
+        AtomicInteger heard = pending.remove(key);
+        if (heard != null && heard.get() >= suppressionThreshold) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        if (random.nextDouble() >= getForwardProbability(neighbourCount)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        forward(frame, forwarder);
+    }
+
+    private void forward(MeshFrame frame, Forwarder forwarder) {
+        forwarded.incrementAndGet();
+        forwarder.forward(frame);
+    }
+
+    public long getForwardedCount() {
+        return forwarded.get();
+    }
+
+    /**
+     * 因退避期间听到足够多副本而放弃的转发
+     */
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+
+    /**
+     * 因概率判定而放弃的转发
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 周期性的邻居通告（只传播一跳）：列出发送者听到过的所有邻居，
+ * 包括尚未确认为对称的，并标出其中被发送者选为多点中继（MPR）的节点。
+ * 接收方在列表中看到自己时即确认与发送者的链路是对称的。
+ * 接收方据此得到两跳邻居拓扑，见 {@link MprSelector}。
+ */
+public class HelloMessage extends Message {
+    private final List<MeshId> neighbours;
+    private final Set<MeshId> relays;
+
+    HelloMessage(@NonNull MeshId senderId, int sequence, @NonNull List<MeshId> neighbours,
+                 @NonNull Set<MeshId> relays) {
+        super("HELLO", senderId, null, false, 1);
+        assignSequence(sequence);
+        this.neighbours = Collections.unmodifiableList(neighbours);
+        this.relays = Collections.unmodifiableSet(relays);
+    }
+
+    /**
+     * 由 {@link MessageCodec} 解码时使用
+     */
+    HelloMessage(@NonNull MeshId senderId, int sequence, long timestamp, int hopCount,
+                 int hopLimit, @NonNull List<MeshId> neighbours, @NonNull Set<MeshId> relays) {
+        super(senderId, sequence, "HELLO", false, 0, 0, timestamp, hopCount, hopLimit);
+        this.neighbours = Collections.unmodifiableList(neighbours);
+        this.relays = Collections.unmodifiableSet(relays);
+    }
+
+    @NonNull
+    public List<MeshId> getNeighbours() {
+        return neighbours;
+    }
+
+    /**
+     * 发送者选出的多点中继，是 {@link #getNeighbours()} 的子集
+     */
+    @NonNull
+    public Set<MeshId> getRelays() {
+        return relays;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 按估计的网络半径为本地消息选择跳数上限，替代固定的 {@link Message#MAX_HOPS}。
+ *
+ * 半径（本节点的离心率）取路由表中到各源节点的最大跳数：
+ * 每个收到的帧都会以实际走过的跳数刷新路由，因此它反映的是最近观测到的网络规模。
+ * 上限 = 半径 + 各类消息的余量，单播与地理路由的消息为两倍半径 + 余量；
+ * 余量也让更远的节点的流量能被观测到，网络变大时估计值会逐轮跟上，
+ * 网络变小时旧路由过期后估计值随之下降。
+ */
+final class HopLimitPolicy {
+    static final int MIN_HOP_LIMIT = 2;
+    static final int MAX_HOP_LIMIT = 32;
+    static final int URGENT_MARGIN = 4;
+    static final int CHAT_MARGIN = 2;
+    static final int LOCATION_MARGIN = 1;
+
+    private HopLimitPolicy() {
+    }
+
+    /**
+     * @param radius 估计的网络半径（跳数）；尚无观测时为 0，此时使用默认的 MAX_HOPS
+     * @param routed 单播或地理路由的消息，绕行时路径可能比最短路径长，
+     *               上限取两倍半径再加余量
+     */
+    static int hopLimitFor(@NonNull MessageScheduler.Lane lane, int radius, boolean routed) {
+        if (radius <= 0) {
+            return Message.MAX_HOPS;
+        }
+        int margin;
+        switch (lane) {
+            case URGENT:
+                margin = URGENT_MARGIN;
+                break;
+            case CHAT:
+                margin = CHAT_MARGIN;
+                break;
+            default:
+                margin = LOCATION_MARGIN;
+                break;
+        }
+        int limit = routed ? 2 * radius + margin : radius + margin;
+        return Math.max(MIN_HOP_LIMIT, Math.min(MAX_HOP_LIMIT, limit));
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link Transport} 中到单个邻居的一条已建立的链路
+ */
+public interface Link {
+    /**
+     * 远端的链路地址，与 {@link Transport} 回调中的 address 一致
+     */
+    @NonNull
+    String getAddress();
+
+    /**
+     * 帧进入链路的出站队列，不会长时间阻塞；队列满时的处理见 {@link WriteCoalescer}
+     */
+    @NonNull
+    WriteCoalescer.EnqueueStatus write(@NonNull byte[] frame, @NonNull MessageScheduler.Lane lane);
+
+    /**
+     * 尚未写出的帧数
+     */
+    int getBacklog();
+}
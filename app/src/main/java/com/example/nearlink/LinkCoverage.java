@@ -0,0 +1,128 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按链路记录每条消息的去向（split horizon）：
+ * 对方发来过这条消息（首份或重复的副本都算），或本节点已经转发给对方，
+ * 都说明对方已经有它，转发时跳过这些链路。
+ *
+ * 链路建立时分配一个 0..63 的编号，断开时释放；只被发现而没有链路的设备不占编号。
+ * 每条消息只保存一个 64 位掩码，取代按 "消息 ID + 地址" 拼接字符串为键的全局表。
+ * 掩码在 retention 之后由 {@link TimingWheel} 移除；链路编号释放后也要隔离同样长的时间，
+ * 避免旧掩码中的位被误认为属于新链路。编号用尽时新链路不跟踪，照常转发，
+ * 直到它断开后重新建立时再分配。
+ */
+final class LinkCoverage {
+    static final int MAX_LINKS = 64;
+
+    private final TimingWheel timingWheel;
+    private final long retention;
+    private final ConcurrentHashMap<String, Integer> linkIndex = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<MessageKey, AtomicLong> coverage = new ConcurrentHashMap<>();
+    // 已分配或隔离中的编号
+    private long usedIndices;
+
+    LinkCoverage(@NonNull TimingWheel timingWheel, long retention) {
+        this.timingWheel = timingWheel;
+        this.retention = retention;
+    }
+
+    /**
+     * 链路的编号；没有分配编号时返回 -1
+     */
+    int indexOf(@NonNull String address) {
+        Integer index = linkIndex.get(address);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * 链路已建立，为它分配编号；已有编号时沿用，编号已用尽时返回 -1
+     */
+    int assignLink(@NonNull String address) {
+        Integer index = linkIndex.get(address);
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            index = linkIndex.get(address);
+            if (index != null) {
+                return index;
+            }
+            if (usedIndices == -1L) {
+                return -1;
+            }
+            int free = Long.numberOfTrailingZeros(~usedIndices);
+            usedIndices |= 1L << free;
+            linkIndex.put(address, free);
+            return free;
+        }
+    }
+
+    /**
+     * 链路已断开；编号在 retention 之后才能重新分配
+     */
+    void releaseLink(@NonNull String address) {
+        Integer index = linkIndex.remove(address);
+        if (index != null) {
+            timingWheel.schedule(retention, () -> {
+                synchronized (this) {
+                    usedIndices &= ~(1L << index);
+                }
+            });
+        }
+    }
+
+    /**
+     * 从 address 收到了这条消息
+     */
+    void markReceivedFrom(@NonNull MeshId origin, int sequence, @NonNull String address) {
+        int index = indexOf(address);
+        if (index >= 0) {
+            maskFor(origin, sequence).getAndUpdate(mask -> mask | (1L << index));
+        }
+    }
+
+    /**
+     * 记录将向 address 转发；对方已经有这条消息时返回 false
+     */
+    boolean markRelayedTo(@NonNull MeshId origin, int sequence, @NonNull String address) {
+        int index = indexOf(address);
+        if (index < 0) {
+            return true;
+        }
+        long bit = 1L << index;
+        long previous = maskFor(origin, sequence).getAndUpdate(mask -> mask | bit);
+        return (previous & bit) == 0;
+    }
+
+    /**
+     * 已知拥有这条消息的链路数
+     */
+    int coverageOf(@NonNull MeshId origin, int sequence) {
+        AtomicLong mask = coverage.get(new MessageKey(origin, sequence));
+        return mask != null ? Long.bitCount(mask.get()) : 0;
+    }
+
+    int size() {
+        return coverage.size();
+    }
+
+    private AtomicLong maskFor(MeshId origin, int sequence) {
+        MessageKey key = new MessageKey(origin, sequence);
+        AtomicLong mask = coverage.get(key);
+        if (mask == null) {
+            mask = new AtomicLong();
+            AtomicLong existing = coverage.putIfAbsent(key, mask);
+            if (existing != null) {
+                mask = existing;
+            } else {
+                timingWheel.schedule(retention, () -> coverage.remove(key));
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.nearlink;
+
+/**
+ * 单条链路的质量估计，供链路池在满员时选择淘汰对象。
+ *
+ * 以收到的帧速率（指数衰减平均）衡量对方是否仍在有效地参与 mesh，
+ * 空闲的链路得分随时间衰减；出站积压说明链路带宽跟不上，按积压深度打折。
+ */
+final class LinkQuality {
+    static final long RATE_TIME_CONSTANT_MS = 30000;
+    static final int BACKLOG_HALVING_FRAMES = 16;
+
+    private final long connectedAt;
+    // 帧/秒
+    private double rate;
+    private long lastUpdate;
+
+    LinkQuality(long now) {
+        this.connectedAt = now;
+        this.lastUpdate = now;
+    }
+
+    synchronized void onFrameReceived(long now) {
+        rate = decayedRate(now) + 1000.0 / RATE_TIME_CONSTANT_MS;
+        lastUpdate = Math.max(lastUpdate, now);
+    }
+
+    /**
+     * 得分越高越值得保留
+     */
+    synchronized double score(long now, int backlog) {
+        return decayedRate(now) / (1 + (double) Math.max(0, backlog) / BACKLOG_HALVING_FRAMES);
+    }
+
+    long getAge(long now) {
+        return now - connectedAt;
+    }
+
+    private double decayedRate(long now) {
+        long elapsed = Math.max(0, now - lastUpdate);
+        return rate * Math.exp(-(double) elapsed / RATE_TIME_CONSTANT_MS);
+    }
+}
@@ -6,26 +6,86 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class LocationCache {
-    private final Map<String, LocationInfo> userLocations;
+    private final Map<MeshId, LocationInfo> userLocations;
+    private final Map<MeshId, Keyframe> keyframes;
+    private final TimingWheel timingWheel;
     private static final long LOCATION_EXPIRY_TIME = 5 * 60 * 1000; // 5分
 
     public LocationCache() {
+        this(TimingWheel.getDefault());
+    }
+
+    LocationCache(TimingWheel timingWheel) {
         this.userLocations = new ConcurrentHashMap<>();
+        this.keyframes = new ConcurrentHashMap<>();
+        this.timingWheel = timingWheel;
+    }
+
+    public void updateLocation(MeshId userId, Location location, long updateTime) {
+        if (userLocations.put(userId, new LocationInfo(location, updateTime)) == null) {
+            timingWheel.scheduleExpiry(LOCATION_EXPIRY_TIME, () -> expireIfStale(userId));
+        }
     }
 
-    public void updateLocation(String userId, Location location, long updateTime) {
-        userLocations.put(userId, new LocationInfo(location, updateTime));
+    /**
+     * 由时间轮调用：过期则连同关键帧一起移除，否则返回剩余的有效时间
+     */
+    private long expireIfStale(MeshId userId) {
+        long[] remaining = {0};
+        userLocations.computeIfPresent(userId, (key, info) -> {
+            remaining[0] = LOCATION_EXPIRY_TIME - (System.currentTimeMillis() - info.updateTime);
+            if (remaining[0] > 0) {
+                return info;
+            }
+            keyframes.remove(key);
+            return null;
+        });
+        return remaining[0];
     }
 
-    public Map<String, Location> getActiveUserLocations() {
-        long now = System.currentTimeMillis();
-        Map<String, Location> activeLocations = new HashMap<>();
+    /**
+     * 应用位置流中的一条消息。增量帧按同一发送者的最近关键帧还原为绝对坐标；
+     * 关键帧缺失或已被更新的关键帧取代时丢弃，返回 false。
+     */
+    public boolean applyLocationMessage(LocationMessage message) {
+        MeshId userId = message.getUserId();
 
-        userLocations.entrySet().removeIf(entry ->
-                (now - entry.getValue().updateTime) > LOCATION_EXPIRY_TIME
-        );
+        if (!message.isDelta()) {
+            Keyframe current = keyframes.get(userId);
+            if (current != null && current.isNewerThan(message.getKeyframeSeq())) {
+                return false;
+            }
+            keyframes.put(userId, new Keyframe(message.getKeyframeSeq(), message.getLatitudeE7(),
+                    message.getLongitudeE7(), message.getAccuracyDm(), message.getUpdateTime()));
+        } else if (!message.isResolved()) {
+            Keyframe keyframe = keyframes.get(userId);
+            if (keyframe == null || keyframe.seq != message.getKeyframeSeq()) {
+                return false;
+            }
+            message.resolve(keyframe.latitudeE7 + message.getDeltaLatitudeE7(),
+                    keyframe.longitudeE7 + message.getDeltaLongitudeE7(), keyframe.accuracyDm,
+                    keyframe.updateTime);
+        }
 
-        for (Map.Entry<String, LocationInfo> entry : userLocations.entrySet()) {
+        LocationInfo previous = userLocations.get(userId);
+        if (previous != null && previous.updateTime > message.getUpdateTime()) {
+            return false;
+        }
+        updateLocation(userId, message.getLocation(), message.getUpdateTime());
+        return true;
+    }
+
+    /**
+     * 该节点最近的位置；未知或已过期时返回 null
+     */
+    public Location getLocation(MeshId userId) {
+        LocationInfo info = userLocations.get(userId);
+        return info != null ? info.location : null;
+    }
+
+    public Map<MeshId, Location> getActiveUserLocations() {
+        Map<MeshId, Location> activeLocations = new HashMap<>();
+        for (Map.Entry<MeshId, LocationInfo> entry : userLocations.entrySet()) {
             activeLocations.put(entry.getKey(), entry.getValue().location);
         }
 
@@ -41,4 +101,28 @@ public class LocationCache {
             this.updateTime = updateTime;
         }
     }
-}
\ No newline at end of file
+
+    private static class Keyframe {
+        final int seq;
+        final int latitudeE7;
+        final int longitudeE7;
+        final int accuracyDm;
+        final long updateTime;
+
+        Keyframe(int seq, int latitudeE7, int longitudeE7, int accuracyDm, long updateTime) {
+            this.seq = seq;
+            this.latitudeE7 = latitudeE7;
+            this.longitudeE7 = longitudeE7;
+            this.accuracyDm = accuracyDm;
+            this.updateTime = updateTime;
+        }
+
+        /**
+         * 8 位序号按回绕比较
+         */
+        boolean isNewerThan(int otherSeq) {
+            int diff = (seq - otherSeq) & 0xFF;
+            return diff != 0 && diff < 0x80;
+        }
+    }
+}
@@ -2,27 +2,171 @@ package com.example.nearlink;
 
 import android.location.Location;
 
+/**
+ * 位置更新。关键帧携带绝对坐标，增量帧只携带相对于同一发送者
+ * 最近关键帧（{@link #getKeyframeSeq()}）的定点偏移，由接收方的
+ * {@link LocationCache} 还原为绝对坐标。精度与关键帧不同时增量帧也携带精度，
+ * 否则还原时沿用关键帧的精度。增量帧的时间同样是相对关键帧的偏移。
+ */
 public class LocationMessage extends Message {
-    private final Location location;
-    private final String userId;
-    private final long updateTime;
+    private Location location;
+    private final MeshId userId;
+    private long updateTime;
+    private long keyframeOffsetMs;
+    private final int keyframeSeq;
+    private final boolean delta;
+    private int latitudeE7;
+    private int longitudeE7;
+    private final int deltaLatitudeE7;
+    private final int deltaLongitudeE7;
+    private int accuracyDm;
+    private int deltaAccuracyDm = -1;
+    private boolean resolved;
 
-    public LocationMessage(String userId, Location location) {
+    public LocationMessage(MeshId userId, Location location) {
+        this(userId, location, 0, false, 0, 0);
+    }
+
+    /**
+     * 由 {@link LocationStreamEncoder} 使用，坐标已知且为绝对值
+     */
+    LocationMessage(MeshId userId, int sequence, Location location, int keyframeSeq,
+                    boolean delta, int deltaLatitudeE7, int deltaLongitudeE7) {
+        this(userId, location, keyframeSeq, delta, deltaLatitudeE7, deltaLongitudeE7);
+        assignSequence(sequence);
+    }
+
+    private LocationMessage(MeshId userId, Location location, int keyframeSeq, boolean delta,
+                            int deltaLatitudeE7, int deltaLongitudeE7) {
         super("LOCATION_UPDATE", userId, location);
         this.userId = userId;
         this.location = location;
         this.updateTime = System.currentTimeMillis();
+        this.keyframeSeq = keyframeSeq & 0xFF;
+        this.delta = delta;
+        this.latitudeE7 = MessageCodec.toFixedPoint(location.getLatitude());
+        this.longitudeE7 = MessageCodec.toFixedPoint(location.getLongitude());
+        this.deltaLatitudeE7 = deltaLatitudeE7;
+        this.deltaLongitudeE7 = deltaLongitudeE7;
+        this.accuracyDm = accuracyDmOf(location);
+        this.resolved = true;
+    }
+
+    /**
+     * 由 {@link MessageCodec} 解码关键帧时使用
+     */
+    LocationMessage(MeshId userId, int sequence, int keyframeSeq, int latitudeE7, int longitudeE7,
+                    int accuracyDm, long updateTime, int hopCount, int hopLimit) {
+        super(userId, sequence, "LOCATION_UPDATE", true, latitudeE7, longitudeE7,
+                updateTime, hopCount, hopLimit);
+        this.userId = userId;
+        this.updateTime = updateTime;
+        this.keyframeSeq = keyframeSeq;
+        this.delta = false;
+        this.latitudeE7 = latitudeE7;
+        this.longitudeE7 = longitudeE7;
+        this.deltaLatitudeE7 = 0;
+        this.deltaLongitudeE7 = 0;
+        this.accuracyDm = accuracyDm;
+        this.resolved = true;
     }
 
+    /**
+     * 由 {@link MessageCodec} 解码增量帧时使用，绝对坐标与时间待 {@link #resolve} 填入；
+     * 在此之前以收到的时间为准
+     */
+    LocationMessage(MeshId userId, int sequence, int keyframeSeq, int deltaLatitudeE7,
+                    int deltaLongitudeE7, long keyframeOffsetMs, int hopCount, int hopLimit) {
+        super(userId, sequence, "LOCATION_UPDATE", false, 0, 0, System.currentTimeMillis(),
+                hopCount, hopLimit);
+        this.userId = userId;
+        this.updateTime = getTimestamp();
+        this.keyframeOffsetMs = keyframeOffsetMs;
+        this.keyframeSeq = keyframeSeq;
+        this.delta = true;
+        this.deltaLatitudeE7 = deltaLatitudeE7;
+        this.deltaLongitudeE7 = deltaLongitudeE7;
+        this.accuracyDm = -1;
+        this.resolved = false;
+    }
+
+    /**
+     * 增量帧还原后返回绝对位置；尚未还原时返回 null
+     */
     public Location getLocation() {
+        if (location == null && resolved) {
+            location = MessageCodec.toLocation(latitudeE7, longitudeE7);
+            if (accuracyDm >= 0) {
+                location.setAccuracy(accuracyDm / 10f);
+            }
+            location.setTime(updateTime);
+        }
         return location;
     }
 
-    public String getUserId() {
+    public MeshId getUserId() {
         return userId;
     }
 
     public long getUpdateTime() {
         return updateTime;
     }
-}
\ No newline at end of file
+
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public int getKeyframeSeq() {
+        return keyframeSeq;
+    }
+
+    boolean isResolved() { return resolved; }
+
+    /**
+     * 按关键帧还原绝对坐标与时间；增量帧没有携带精度时沿用关键帧的精度
+     */
+    void resolve(int latitudeE7, int longitudeE7, int keyframeAccuracyDm, long keyframeTime) {
+        this.latitudeE7 = latitudeE7;
+        this.longitudeE7 = longitudeE7;
+        this.updateTime = keyframeTime + keyframeOffsetMs;
+        if (accuracyDm < 0) {
+            this.accuracyDm = keyframeAccuracyDm;
+        }
+        this.resolved = true;
+    }
+
+    int getLatitudeE7() { return latitudeE7; }
+    int getLongitudeE7() { return longitudeE7; }
+    int getDeltaLatitudeE7() { return deltaLatitudeE7; }
+    int getDeltaLongitudeE7() { return deltaLongitudeE7; }
+
+    /**
+     * 精度（分米），没有精度信息时为 -1
+     */
+    int getAccuracyDm() { return accuracyDm; }
+
+    /**
+     * 增量帧携带的精度（分米）；与关键帧相同时不发送，为 -1
+     */
+    int getDeltaAccuracyDm() { return deltaAccuracyDm; }
+
+    void setDeltaAccuracyDm(int accuracyDm) {
+        this.deltaAccuracyDm = accuracyDm;
+        if (!resolved && accuracyDm >= 0) {
+            this.accuracyDm = accuracyDm;
+        }
+    }
+
+    /**
+     * 增量帧相对关键帧的时间偏移（毫秒）
+     */
+    long getKeyframeOffsetMs() { return keyframeOffsetMs; }
+
+    void setKeyframeOffsetMs(long keyframeOffsetMs) {
+        this.keyframeOffsetMs = Math.max(0, keyframeOffsetMs);
+    }
+
+    static int accuracyDmOf(Location location) {
+        return location.hasAccuracy() ? Math.round(location.getAccuracy() * 10f) : -1;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.nearlink;
+
+import android.location.Location;
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本节点位置流的编码状态：定期发送关键帧，其余更新只发送相对于
+ * 最近关键帧的定点偏移。偏移总是相对关键帧而不是上一条增量，
+ * 因此丢失的增量不会累积误差。
+ */
+class LocationStreamEncoder {
+    static final int KEYFRAME_INTERVAL = 10;          // 每 10 次更新一个关键帧
+    static final long KEYFRAME_MAX_AGE = 10000;       // 10秒
+    static final int MAX_DELTA_E7 = 1 << 20;          // 约 0.1 度，varint 最多 3 字节
+
+    private final MeshId userId;
+    private final AtomicInteger sequences;
+    private int keyframeSeq = -1;
+    private int keyframeLatitudeE7;
+    private int keyframeLongitudeE7;
+    private int keyframeAccuracyDm;
+    private long keyframeTime;
+    private int updatesSinceKeyframe;
+
+    /**
+     * sequences 为所属节点的序号计数器，与该节点的其他消息共用
+     */
+    LocationStreamEncoder(@NonNull MeshId userId, @NonNull AtomicInteger sequences) {
+        this.userId = userId;
+        this.sequences = sequences;
+    }
+
+    @NonNull
+    synchronized LocationMessage next(@NonNull Location location) {
+        long now = System.currentTimeMillis();
+        int latitudeE7 = MessageCodec.toFixedPoint(location.getLatitude());
+        int longitudeE7 = MessageCodec.toFixedPoint(location.getLongitude());
+        int deltaLatitude = latitudeE7 - keyframeLatitudeE7;
+        int deltaLongitude = longitudeE7 - keyframeLongitudeE7;
+        int accuracyDm = LocationMessage.accuracyDmOf(location);
+
+        boolean needsKeyframe = keyframeSeq < 0
+                || updatesSinceKeyframe >= KEYFRAME_INTERVAL - 1
+                || now - keyframeTime > KEYFRAME_MAX_AGE
+                || Math.abs(deltaLatitude) > MAX_DELTA_E7
+                || Math.abs(deltaLongitude) > MAX_DELTA_E7
+                // 增量帧无法表示"不再有精度"，精度消失或出现时发关键帧
+                || (accuracyDm >= 0) != (keyframeAccuracyDm >= 0);
+
+        if (needsKeyframe) {
+            keyframeSeq = (keyframeSeq + 1) & 0xFF;
+            keyframeLatitudeE7 = latitudeE7;
+            keyframeLongitudeE7 = longitudeE7;
+            keyframeAccuracyDm = accuracyDm;
+            updatesSinceKeyframe = 0;
+            LocationMessage keyframe = new LocationMessage(userId, sequences.getAndIncrement(),
+                    location, keyframeSeq, false, 0, 0);
+            keyframeTime = keyframe.getUpdateTime();
+            return keyframe;
+        }
+
+        updatesSinceKeyframe++;
+        LocationMessage delta = new LocationMessage(userId, sequences.getAndIncrement(), location,
+                keyframeSeq, true, deltaLatitude, deltaLongitude);
+        // 精度只在与关键帧不同时随增量发送，否则接收方沿用关键帧的精度
+        if (accuracyDm != keyframeAccuracyDm) {
+            delta.setDeltaAccuracyDm(accuracyDm);
+        }
+        delta.setKeyframeOffsetMs(delta.getUpdateTime() - keyframeTime);
+        return delta;
+    }
+}
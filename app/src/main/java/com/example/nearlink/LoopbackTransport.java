@@ -0,0 +1,214 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 同一进程内的 {@link Transport}：同一个 {@link Network} 中的节点按地址互连，
+ * 写入的帧在写入方的线程上直接交给对端的 {@link InboundFrameListener}，
+ * 没有套接字、线程或出站队列。
+ *
+ * 用于在一个 JVM 中运行成百上千个 {@link MeshNode}，测量 mesh 核心本身的吞吐与延迟；
+ * 拓扑由 {@link #connect} / {@link #disconnect} 决定，与距离无关。
+ */
+public final class LoopbackTransport implements Transport {
+
+    /**
+     * 一组可以互相连接的回环节点
+     */
+    public static final class Network {
+        private final ConcurrentHashMap<String, LoopbackTransport> transports =
+                new ConcurrentHashMap<>();
+
+        /**
+         * 加入一个新节点；地址已被占用时抛出 IllegalArgumentException
+         */
+        @NonNull
+        public LoopbackTransport createTransport(@NonNull String address) {
+            LoopbackTransport transport = new LoopbackTransport(this, address);
+            if (transports.putIfAbsent(address, transport) != null) {
+                throw new IllegalArgumentException("Address in use: " + address);
+            }
+            return transport;
+        }
+
+        @Nullable
+        LoopbackTransport get(@NonNull String address) {
+            return transports.get(address);
+        }
+
+        public int size() {
+            return transports.size();
+        }
+    }
+
+    private final Network network;
+    private final String address;
+    private final ConcurrentHashMap<String, LoopbackLink> links = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile InboundFrameListener inboundFrameListener;
+    private volatile LinkListener linkListener;
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private LoopbackTransport(@NonNull Network network, @NonNull String address) {
+        this.network = network;
+        this.address = address;
+    }
+
+    /**
+     * 本节点在 {@link Network} 中的地址，即对端回调中的 sourceAddress
+     */
+    @NonNull
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (String peer : new ArrayList<>(links.keySet())) {
+            disconnect(peer);
+        }
+    }
+
+    /**
+     * 同步建立双向链路；对端不存在或未启动时立即回调 onLinkDown
+     */
+    @Override
+    public void connect(@NonNull String peerAddress) {
+        LoopbackTransport peer = network.get(peerAddress);
+        if (peer == null || peer == this || !running || !peer.running) {
+            notifyLinkDown(peerAddress);
+            return;
+        }
+        // 两个节点同时互连时按地址顺序加锁，避免死锁
+        LoopbackTransport first = address.compareTo(peerAddress) < 0 ? this : peer;
+        LoopbackTransport second = first == this ? peer : this;
+        synchronized (first) {
+            synchronized (second) {
+                if (links.containsKey(peerAddress)) {
+                    return;
+                }
+                links.put(peerAddress, new LoopbackLink(this, peer));
+                peer.links.put(address, new LoopbackLink(peer, this));
+            }
+        }
+        notifyLinkUp(peerAddress);
+        peer.notifyLinkUp(address);
+    }
+
+    /**
+     * 断开到 peerAddress 的链路，两端都会收到 onLinkDown
+     */
+    public void disconnect(@NonNull String peerAddress) {
+        LoopbackLink link = links.remove(peerAddress);
+        if (link == null) {
+            return;
+        }
+        link.closed = true;
+        LoopbackLink reverse = link.peer.links.remove(address);
+        if (reverse != null) {
+            reverse.closed = true;
+        }
+        notifyLinkDown(peerAddress);
+        if (reverse != null) {
+            link.peer.notifyLinkDown(address);
+        }
+    }
+
+    @Override
+    public void setInboundFrameListener(@Nullable InboundFrameListener listener) {
+        this.inboundFrameListener = listener;
+    }
+
+    @Override
+    public void setLinkListener(@Nullable LinkListener listener) {
+        this.linkListener = listener;
+    }
+
+    @Nullable
+    @Override
+    public Link getLink(@NonNull String peerAddress) {
+        return links.get(peerAddress);
+    }
+
+    @NonNull
+    @Override
+    public List<String> getConnectedAddresses() {
+        return new ArrayList<>(links.keySet());
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private void notifyLinkUp(String peerAddress) {
+        LinkListener listener = linkListener;
+        if (listener != null) {
+            listener.onLinkUp(peerAddress);
+        }
+    }
+
+    private void notifyLinkDown(String peerAddress) {
+        LinkListener listener = linkListener;
+        if (listener != null) {
+            listener.onLinkDown(peerAddress);
+        }
+    }
+
+    private static final class LoopbackLink implements Link {
+        private final LoopbackTransport owner;
+        private final LoopbackTransport peer;
+        private volatile boolean closed;
+
+        LoopbackLink(LoopbackTransport owner, LoopbackTransport peer) {
+            this.owner = owner;
+            this.peer = peer;
+        }
+
+        @NonNull
+        @Override
+        public String getAddress() {
+            return peer.address;
+        }
+
+        /**
+         * 在调用方线程上交给对端；对端的监听器不阻塞，因此这里也不会阻塞
+         */
+        @NonNull
+        @Override
+        public WriteCoalescer.EnqueueStatus write(@NonNull byte[] frame,
+                                                  @NonNull MessageScheduler.Lane lane) {
+            if (closed) {
+                return WriteCoalescer.EnqueueStatus.CLOSED;
+            }
+            owner.framesSent.incrementAndGet();
+            owner.bytesSent.addAndGet(frame.length);
+            InboundFrameListener listener = peer.inboundFrameListener;
+            if (listener != null) {
+                listener.onFrameReceived(frame, 0, frame.length, owner.address);
+            }
+            return WriteCoalescer.EnqueueStatus.QUEUED;
+        }
+
+        @Override
+        public int getBacklog() {
+            return 0;
+        }
+    }
+}
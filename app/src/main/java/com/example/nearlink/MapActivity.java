@@ -45,7 +45,7 @@ public class MapActivity extends FragmentActivity implements OnMapReadyCallback
     private MeshNode meshNode;
     private LocationTracker locationTracker;
     private Handler updateHandler;
-    private Map<String, Marker> userMarkers;
+    private Map<MeshId, Marker> userMarkers;
     private Circle rangeCircle;
     private boolean isFirstLocationUpdate = true;
     private Marker selectedLocationMarker;
@@ -67,10 +67,10 @@ public class MapActivity extends FragmentActivity implements OnMapReadyCallback
             userMarkers = new HashMap<>();
 
             // Get MeshNode from intent or create new
-            String nodeId = getIntent().getStringExtra("NODE_ID");
+            MeshId nodeId = MeshId.fromString(getIntent().getStringExtra("NODE_ID"));
             if (nodeId == null) {
                 Log.w(TAG, "No NODE_ID provided, generating new one");
-                nodeId = java.util.UUID.randomUUID().toString();
+                nodeId = MeshId.random();
             }
             meshNode = new MeshNode(nodeId, getApplicationContext());  // 修改这里
             Log.d(TAG, "Using NODE_ID: " + nodeId);
@@ -299,7 +299,7 @@ public class MapActivity extends FragmentActivity implements OnMapReadyCallback
                             isFirstLocationUpdate = false;
                         }
 
-                        Map<String, Location> nearbyLocations = meshNode.getNearbyUserLocations();
+                        Map<MeshId, Location> nearbyLocations = meshNode.getNearbyUserLocations();
                         updateUserMarkers(nearbyLocations);
                     });
                 }
@@ -309,13 +309,13 @@ public class MapActivity extends FragmentActivity implements OnMapReadyCallback
         }).start();
     }
 
-    private void updateUserMarkers(Map<String, Location> nearbyLocations) {
+    private void updateUserMarkers(Map<MeshId, Location> nearbyLocations) {
         // Remove markers for users no longer nearby
         userMarkers.entrySet().removeIf(entry -> !nearbyLocations.containsKey(entry.getKey()));
 
         // Update or add markers for nearby users
-        for (Map.Entry<String, Location> entry : nearbyLocations.entrySet()) {
-            String userId = entry.getKey();
+        for (Map.Entry<MeshId, Location> entry : nearbyLocations.entrySet()) {
+            MeshId userId = entry.getKey();
             Location userLocation = entry.getValue();
             LatLng userLatLng = new LatLng(userLocation.getLatitude(), userLocation.getLongitude());
 
@@ -325,7 +325,7 @@ public class MapActivity extends FragmentActivity implements OnMapReadyCallback
             } else {
                 marker = mMap.addMarker(new MarkerOptions()
                         .position(userLatLng)
-                        .title("User: " + userId.substring(0, 8))
+                        .title("User: " + userId.toShortString())
                         .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_RED)));
                 userMarkers.put(userId, marker);
             }
@@ -0,0 +1,314 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * MeshNode 处理队列中的一项：一个完整的帧加上从固定头部读出的字段。
+ *
+ * 去重与转发只看头部，转发直接写出原始字节；消息体只在本地需要
+ * （聊天回调、位置缓存）时才通过 {@link #getMessage()} 解码一次。
+ */
+final class MeshFrame {
+    private final byte[] frame;
+    private final int payloadLength;
+    private final int type;
+    private final int flags;
+    private final MeshId senderId;
+    @Nullable
+    private final MeshId destinationId;
+    // 地理段在帧内的偏移，没有时为 -1
+    private final int geoOffset;
+    @Nullable
+    private final GeoPoint geoTarget;
+    @Nullable
+    private final GeoArea targetArea;
+    private final int sequence;
+    private final long timestamp;
+    private final int hopLimit;
+    private final boolean local;
+    @Nullable
+    private final String sourceAddress;
+    private Message message;
+
+    private MeshFrame(byte[] frame, Message message, boolean local, String sourceAddress) {
+        this.frame = frame;
+        this.payloadLength = frame.length - FrameCodec.OVERHEAD;
+        int base = FrameCodec.HEADER_SIZE;
+        this.type = frame[base + MessageCodec.OFFSET_TYPE] & 0xFF;
+        this.flags = frame[base + MessageCodec.OFFSET_FLAGS] & 0xFF;
+        this.hopLimit = frame[base + MessageCodec.OFFSET_HOP_LIMIT] & 0xFF;
+        this.senderId = MeshId.read(frame, base + MessageCodec.OFFSET_SENDER_ID);
+        this.sequence = MessageCodec.readInt(frame, base + MessageCodec.OFFSET_SEQUENCE);
+        if (type != MessageCodec.TYPE_LOCATION_DELTA) {
+            this.timestamp = MessageCodec.readLong(frame, base + MessageCodec.OFFSET_TIMESTAMP);
+        } else {
+            // 增量帧不携带绝对时间，以产生或收到的时间为准
+            this.timestamp = message != null ? message.getTimestamp() : System.currentTimeMillis();
+        }
+        this.destinationId = (flags & MessageCodec.FLAG_HAS_DESTINATION) != 0
+                ? MeshId.read(frame, base + MessageCodec.headerSize(type)) : null;
+        this.geoOffset = geoOffset(type, flags, 0);
+        this.geoTarget = geoOffset >= 0
+                ? new GeoPoint(MessageCodec.readInt(frame, geoOffset),
+                        MessageCodec.readInt(frame, geoOffset + 4))
+                : null;
+        this.targetArea = readTargetArea(frame, type, flags);
+        this.message = message;
+        this.local = local;
+        this.sourceAddress = sourceAddress;
+    }
+
+    /**
+     * 本节点产生的消息，帧由消息自身编码一次
+     */
+    @NonNull
+    static MeshFrame of(@NonNull Message message) {
+        return new MeshFrame(message.getFrame(), message, true, null);
+    }
+
+    /**
+     * 从链路收到的帧，只解析固定头部（以及目的地与地理段）
+     */
+    @NonNull
+    static MeshFrame parse(@NonNull byte[] frame, @Nullable String sourceAddress) throws IOException {
+        checkHeader(frame, 0, frame.length);
+        int type = frame[FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_TYPE] & 0xFF;
+        int flags = frame[FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_FLAGS] & 0xFF;
+        if (frame.length < FrameCodec.OVERHEAD + MessageCodec.headerSize(type)
+                + extensionLength(flags)) {
+            throw new EOFException("Frame shorter than extended header: " + frame.length);
+        }
+        return new MeshFrame(frame, null, false, sourceAddress);
+    }
+
+    /**
+     * 校验共享读缓冲区中的帧头部；通过后才需要复制出帧
+     */
+    static void checkHeader(@NonNull byte[] buffer, int frameOffset, int frameLength)
+            throws IOException {
+        if (frameLength < FrameCodec.OVERHEAD + MessageCodec.DELTA_HEADER_SIZE) {
+            throw new EOFException("Frame shorter than message header: " + frameLength);
+        }
+        int version = buffer[frameOffset + FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_VERSION] & 0xFF;
+        if (version != MessageCodec.VERSION) {
+            throw new StreamCorruptedException("Unsupported wire version: " + version);
+        }
+        int type = buffer[frameOffset + FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_TYPE] & 0xFF;
+        if (frameLength < FrameCodec.OVERHEAD + MessageCodec.headerSize(type)) {
+            throw new EOFException("Frame shorter than message header: " + frameLength);
+        }
+    }
+
+    /**
+     * 固定头部之后、消息体之前的扩展头部长度
+     */
+    static int extensionLength(int flags) {
+        int length = 0;
+        if ((flags & MessageCodec.FLAG_HAS_DESTINATION) != 0) {
+            length += MeshId.SIZE;
+        }
+        if ((flags & MessageCodec.FLAG_GEO_ROUTED) != 0) {
+            length += MessageCodec.GEO_SECTION_SIZE;
+        }
+        if ((flags & MessageCodec.FLAG_HAS_AREA) != 0) {
+            length += MessageCodec.AREA_SECTION_SIZE;
+        }
+        return length;
+    }
+
+    @Nullable
+    private static GeoArea readTargetArea(byte[] frame, int type, int flags) {
+        if ((flags & MessageCodec.FLAG_HAS_AREA) == 0) {
+            return null;
+        }
+        // 区域段位于扩展头部末尾
+        int offset = FrameCodec.HEADER_SIZE + MessageCodec.headerSize(type)
+                + extensionLength(flags) - MessageCodec.AREA_SECTION_SIZE;
+        return new GeoArea(new GeoPoint(MessageCodec.readInt(frame, offset),
+                MessageCodec.readInt(frame, offset + 4)), MessageCodec.readInt(frame, offset + 8));
+    }
+
+    private static int geoOffset(int type, int flags, int frameOffset) {
+        if ((flags & MessageCodec.FLAG_GEO_ROUTED) == 0) {
+            return -1;
+        }
+        int offset = frameOffset + FrameCodec.HEADER_SIZE + MessageCodec.headerSize(type);
+        if ((flags & MessageCodec.FLAG_HAS_DESTINATION) != 0) {
+            offset += MeshId.SIZE;
+        }
+        return offset;
+    }
+
+    /**
+     * 处于周边模式的地理路由帧。绕行空洞时同一节点可能被合法地经过两次，
+     * 这类帧不能按重复丢弃（单播转发不会放大流量，绕行长度由跳数上限约束）；
+     * 再次经过时只转发，不再投递
+     */
+    static boolean isPerimeterMode(@NonNull byte[] buffer, int frameOffset, int frameLength) {
+        int type = buffer[frameOffset + FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_TYPE] & 0xFF;
+        int flags = buffer[frameOffset + FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_FLAGS] & 0xFF;
+        int offset = geoOffset(type, flags, frameOffset);
+        return offset >= 0 && offset + MessageCodec.GEO_SECTION_SIZE <= frameOffset + frameLength
+                && buffer[offset + MessageCodec.GEO_OFFSET_MODE] == GeoRouter.MODE_PERIMETER;
+    }
+
+    @NonNull
+    static MeshId readSenderId(@NonNull byte[] buffer, int frameOffset) {
+        return MeshId.read(buffer,
+                frameOffset + FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_SENDER_ID);
+    }
+
+    static int readSequence(@NonNull byte[] buffer, int frameOffset) {
+        return MessageCodec.readInt(buffer,
+                frameOffset + FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_SEQUENCE);
+    }
+
+    @NonNull
+    MeshId getSenderId() { return senderId; }
+
+    int getSequence() { return sequence; }
+
+    /**
+     * 单播的目的节点；广播帧为 null
+     */
+    @Nullable
+    MeshId getDestinationId() { return destinationId; }
+
+    boolean isGeoRouted() { return geoTarget != null; }
+
+    /**
+     * 地理路由的目标坐标；不是地理路由帧时为 null
+     */
+    @Nullable
+    GeoPoint getGeoTarget() { return geoTarget; }
+
+    /**
+     * 限定广播范围的目标区域；不限范围时为 null
+     */
+    @Nullable
+    GeoArea getTargetArea() { return targetArea; }
+
+    synchronized int getGeoMode() {
+        return frame[geoOffset + MessageCodec.GEO_OFFSET_MODE] & 0xFF;
+    }
+
+    /**
+     * 周边模式的进入点；贪心模式下为 null
+     */
+    @Nullable
+    synchronized GeoPoint getGeoEntry() {
+        if (getGeoMode() != GeoRouter.MODE_PERIMETER) {
+            return null;
+        }
+        int offset = geoOffset + MessageCodec.GEO_OFFSET_ENTRY;
+        return new GeoPoint(MessageCodec.readInt(frame, offset),
+                MessageCodec.readInt(frame, offset + 4));
+    }
+
+    /**
+     * 就地改写地理路由的模式与进入点并重算校验和，与跳数一样不重新编码
+     */
+    synchronized void setGeoState(int mode, @Nullable GeoPoint entry) {
+        frame[geoOffset + MessageCodec.GEO_OFFSET_MODE] = (byte) mode;
+        int offset = geoOffset + MessageCodec.GEO_OFFSET_ENTRY;
+        MessageCodec.writeInt(frame, offset, entry != null ? entry.latitudeE7 : 0);
+        MessageCodec.writeInt(frame, offset + 4, entry != null ? entry.longitudeE7 : 0);
+        FrameCodec.updateChecksum(frame, 0, payloadLength);
+    }
+
+    long getTimestamp() { return timestamp; }
+
+    boolean isLocal() { return local; }
+
+    @Nullable
+    String getSourceAddress() { return sourceAddress; }
+
+    boolean isLocation() {
+        return type == MessageCodec.TYPE_LOCATION || type == MessageCodec.TYPE_LOCATION_DELTA;
+    }
+
+    boolean isHello() {
+        return type == MessageCodec.TYPE_HELLO;
+    }
+
+    boolean isLocationDelta() {
+        return type == MessageCodec.TYPE_LOCATION_DELTA;
+    }
+
+    boolean isUrgent() {
+        return (flags & MessageCodec.FLAG_URGENT) != 0;
+    }
+
+    synchronized int getHopCount() {
+        return frame[FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_HOP_COUNT] & 0xFF;
+    }
+
+    boolean canBeRelayed() {
+        return getHopCount() < hopLimit;
+    }
+
+    synchronized void incrementHopCount() {
+        if (message != null) {
+            message.incrementHopCount();
+        } else {
+            addHopCount(1);
+        }
+    }
+
+    /**
+     * 撤销一次 {@link #incrementHopCount()}。帧按引用排入写队列，只能在写入前改写；
+     * 写入被拒绝（链路已关闭）时由调用方撤销，免得回退路径再消耗一跳
+     */
+    synchronized void decrementHopCount() {
+        if (message != null) {
+            message.decrementHopCount();
+        } else {
+            addHopCount(-1);
+        }
+    }
+
+    private void addHopCount(int delta) {
+        int offset = FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_HOP_COUNT;
+        frame[offset] = (byte) ((frame[offset] & 0xFF) + delta);
+        FrameCodec.updateChecksum(frame, 0, payloadLength);
+    }
+
+    /**
+     * 原始帧，转发时直接写出
+     */
+    @NonNull
+    byte[] getFrame() {
+        return frame;
+    }
+
+    /**
+     * 已解码的消息；尚未解码时返回 null，不会触发解码
+     */
+    @Nullable
+    synchronized Message peekMessage() {
+        return message;
+    }
+
+    /**
+     * 按需完整解码消息体，结果会被缓存
+     */
+    @NonNull
+    synchronized Message getMessage() throws IOException {
+        if (message == null) {
+            message = MessageCodec.decode(frame, FrameCodec.HEADER_SIZE, payloadLength);
+            message.attachFrame(frame);
+        }
+        return message;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return senderId.toShortString() + "#" + (sequence & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * 128 位的消息 / 节点标识，保存为两个 long。
+ *
+ * 线路格式、去重表与位置缓存都直接使用这个值类型作为键，
+ * 热路径上不再出现 36 字节的 UUID 字符串、字符串哈希与拼接。
+ * {@link #toString()} 仍输出 UUID 的标准形式，便于日志与 Intent 传递。
+ */
+public final class MeshId {
+    public static final int SIZE = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    public MeshId(long mostSignificantBits, long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+    /**
+     * 随机生成（UUID 版本 4 布局）
+     */
+    @NonNull
+    public static MeshId random() {
+        long msb = RANDOM.nextLong();
+        long lsb = RANDOM.nextLong();
+        msb = (msb & ~0xF000L) | 0x4000L;
+        lsb = (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new MeshId(msb, lsb);
+    }
+
+    /**
+     * 解析 {@link #toString()} 的输出；无法解析时返回 null
+     */
+    @Nullable
+    public static MeshId fromString(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return new MeshId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    static MeshId read(@NonNull byte[] src, int pos) {
+        return new MeshId(MessageCodec.readLong(src, pos), MessageCodec.readLong(src, pos + 8));
+    }
+
+    int write(@NonNull byte[] dst, int pos) {
+        pos = MessageCodec.writeLong(dst, pos, mostSignificantBits);
+        return MessageCodec.writeLong(dst, pos, leastSignificantBits);
+    }
+
+    public long getMostSignificantBits() {
+        return mostSignificantBits;
+    }
+
+    public long getLeastSignificantBits() {
+        return leastSignificantBits;
+    }
+
+    /**
+     * 界面显示用的 8 位十六进制短形式
+     */
+    @NonNull
+    public String toShortString() {
+        String hex = Long.toHexString((mostSignificantBits >>> 32) | 0x100000000L);
+        return hex.substring(1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MeshId)) return false;
+        MeshId other = (MeshId) o;
+        return mostSignificantBits == other.mostSignificantBits
+                && leastSignificantBits == other.leastSignificantBits;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = mostSignificantBits ^ leastSignificantBits;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return new UUID(mostSignificantBits, leastSignificantBits).toString();
+    }
+}
@@ -2,47 +2,108 @@ package com.example.nearlink;
 
 import android.content.Context;
 import android.location.Location;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MeshNode implements AutoCloseable {
     private static final String TAG = "MeshNode";
-    private static final int MAX_QUEUE_SIZE = 1000;
-    private static final int MAX_CACHE_SIZE = 10000;
     private static final int MESSAGE_TIMEOUT = 30000; // 30秒
     private static final int LOCATION_TIMEOUT = 300000; // 5分钟
-
-    private BluetoothCommunicationService bluetoothCommunicationService = null;
-    private final Context context;
-    private final String nodeId;
+    private static final int INGRESS_CAPACITY = 256;
+    private static final int RELAY_CAPACITY = 512;
+    private static final long HELLO_INTERVAL = 5000; // 5秒
+    private static final long NEIGHBOUR_HOLD_TIME = 3 * HELLO_INTERVAL;
+    private static final long ROUTE_TIMEOUT = 60000; // 1分钟
+    private static final int MAX_PENDING_PER_NEIGHBOUR = 64;
+    private static final long PENDING_TIMEOUT = 15000; // 15秒
+    private static final long DIAL_RETRY_INTERVAL = 10000; // 10秒
+    // 同一进程中使用同一 nodeId 的 MeshNode（各个画面各自创建）共用一个序号计数器，
+    // 否则它们发出的 (发送者, 序号) 相同，会被对端的 DuplicateFilter 当作重复丢弃
+    private static final ConcurrentHashMap<MeshId, AtomicInteger> SEQUENCES =
+            new ConcurrentHashMap<>();
+
+    private final Transport transport;
+    private final MeshId nodeId;
     private volatile Location currentLocation;
-    private final LinkedBlockingQueue<Message> messageQueue;
-    private final ConcurrentHashMap<String, Message> processedMessages;
-    private final ConcurrentHashMap<String, Long> messageTimestamps;
+    private final StageQueue<InboundFrame> ingressQueue;
+    private final MessageScheduler messageScheduler;
+    private final StageQueue<RelayTask> relayQueue;
+    private final TimingWheel timingWheel;
+    private final DuplicateFilter duplicateFilter;
+    private final GossipRelayPolicy gossipRelay;
+    private final MprSelector mprSelector;
+    private volatile boolean mprRelayEnabled = true;
+    private final AtomicLong mprSkipped = new AtomicLong();
+    private final RoutingTable routingTable;
+    private final LinkCoverage linkCoverage;
+    // 已发现、链路尚未建立的邻居的待发送帧
+    private final PendingSendQueue pendingSends;
+    private final ConcurrentHashMap<String, Long> dialAttempts = new ConcurrentHashMap<>();
+    private final Set<String> dialRetryScheduled = ConcurrentHashMap.newKeySet();
+    private final AtomicLong splitHorizonSkipped = new AtomicLong();
+    private final AtomicLong backpressureDropped = new AtomicLong();
+    private final AtomicLong unicastForwarded = new AtomicLong();
+    private final AtomicLong geoForwarded = new AtomicLong();
+    private final AtomicLong areaSuppressed = new AtomicLong();
+    private final Random random = new Random();
     private final LocationCache locationCache;
+    private final LocationStreamEncoder locationEncoder;
+    // 本节点发出的消息的序号，同一节点严格递增（可以有空洞）
+    private final AtomicInteger sequences;
     private final ConcurrentHashMap<String, BluetoothService.DeviceInfo> nearbyDevices;
     private final AtomicBoolean isRunning;
+    private final AtomicBoolean transportStarted = new AtomicBoolean();
     private final AtomicInteger messageCount;
     private MessageListener messageListener;
     private final Object locationLock = new Object();
-    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 链路上收到、尚未解析的帧
+     */
+    private static final class InboundFrame {
+        final byte[] frame;
+        final String sourceAddress;
+        // 已处理过的消息的副本，只为 MPR 转发而放行
+        final boolean duplicate;
+
+        InboundFrame(byte[] frame, String sourceAddress, boolean duplicate) {
+            this.frame = frame;
+            this.sourceAddress = sourceAddress;
+            this.duplicate = duplicate;
+        }
+    }
+
+    /**
+     * 中继阶段的一项工作。gossip 退避后决定转发的帧也回到中继队列，
+     * 由中继线程写出，时间轮线程上不做可能阻塞的链路写入
+     */
+    private static final class RelayTask {
+        final MeshFrame frame;
+        final boolean gossipApproved;
+
+        RelayTask(MeshFrame frame, boolean gossipApproved) {
+            this.frame = frame;
+            this.gossipApproved = gossipApproved;
+        }
+    }
+
+    private interface StageStep {
+        void runOnce() throws InterruptedException;
+    }
 
     public interface MessageListener {
         void onMessageReceived(Message message);
@@ -51,82 +112,194 @@ public class MeshNode implements AutoCloseable {
         }
     }
 
-    public MeshNode(@NonNull String nodeId, @NonNull Context context) {
+    /**
+     * 使用 RFCOMM 链路的节点。链路池由 {@link BluetoothService} 通过 {@link #getTransport()}
+     * 共用：它负责发现设备与发起连接；链路池随 {@link #start()} / {@link #close()} 启停，
+     * 不随画面暂停时的停止发现而断开
+     */
+    public MeshNode(@NonNull MeshId nodeId, @NonNull Context context) {
+        this(nodeId, new BluetoothCommunicationService(context.getApplicationContext()));
+    }
+
+    /**
+     * 使用任意 {@link Transport} 的节点；本机回环或 TCP 链路可以在一个进程内运行多个节点
+     */
+    public MeshNode(@NonNull MeshId nodeId, @NonNull Transport transport) {
         this.nodeId = nodeId;
-        this.context = context.getApplicationContext();
-        this.messageQueue = new LinkedBlockingQueue<>(MAX_QUEUE_SIZE);
-        this.processedMessages = new ConcurrentHashMap<>();
-        this.messageTimestamps = new ConcurrentHashMap<>();
-        this.locationCache = new LocationCache();
+        this.transport = transport;
+        this.sequences = sequencesFor(nodeId);
+        // 读线程不能被阻塞：入口满时丢弃新帧，由邻居的后续转发补上
+        this.ingressQueue = new StageQueue<>(INGRESS_CAPACITY, StageQueue.OverflowPolicy.DROP_NEWEST);
+        this.messageScheduler = new MessageScheduler();
+        // 转发积压时旧帧的价值最低
+        this.relayQueue = new StageQueue<>(RELAY_CAPACITY, StageQueue.OverflowPolicy.DROP_OLDEST);
+        this.timingWheel = TimingWheel.getDefault();
+        // 超过 MESSAGE_TIMEOUT 的帧在入口就会被丢弃，窗口保留两倍时间即可
+        this.duplicateFilter = new DuplicateFilter(timingWheel, 2L * MESSAGE_TIMEOUT);
+        this.gossipRelay = new GossipRelayPolicy(timingWheel, random);
+        this.mprSelector = new MprSelector(nodeId, timingWheel, NEIGHBOUR_HOLD_TIME);
+        this.routingTable = new RoutingTable(timingWheel, ROUTE_TIMEOUT);
+        this.linkCoverage = new LinkCoverage(timingWheel, 2L * MESSAGE_TIMEOUT);
+        this.pendingSends = new PendingSendQueue(timingWheel, MAX_PENDING_PER_NEIGHBOUR,
+                PENDING_TIMEOUT);
+        this.locationCache = new LocationCache(timingWheel);
+        this.locationEncoder = new LocationStreamEncoder(nodeId, sequences);
         this.nearbyDevices = new ConcurrentHashMap<>();
         this.isRunning = new AtomicBoolean(true);
         this.messageCount = new AtomicInteger(0);
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
 
-        initializeBluetoothService();
-        startMessageProcessor();
-        startCacheCleanup();
-    }
+        transport.setInboundFrameListener(this::onFrameReceived);
+        transport.setLinkListener(new Transport.LinkListener() {
+            @Override
+            public void onLinkUp(@NonNull String address) {
+                linkCoverage.assignLink(address);
+                flushPending(address);
+            }
 
-    private void initializeBluetoothService() {
-        Handler handler = new Handler(Looper.getMainLooper()) {
             @Override
-            public void handleMessage(@NonNull android.os.Message msg) {
-                switch (msg.what) {
-                    case MainActivity.MESSAGE_READ:
-                    case MainActivity.MESSAGE_STATE_CHANGE:
-                        // Handle message if needed
-                        break;
+            public void onLinkDown(@NonNull String address) {
+                // 链路编号只有 64 个，断开的链路必须归还，否则换过 64 个邻居后 split horizon 失效
+                linkCoverage.releaseLink(address);
+                int dropped = pendingSends.discard(address);
+                if (dropped > 0) {
+                    // 为这些帧拨号失败：经它的路由不再可用，后续单播回退到泛洪
+                    routingTable.invalidateNextHop(address);
+                    Log.d(TAG, "Link to " + address + " unavailable, " + dropped
+                            + " pending frames dropped");
                 }
             }
-        };
-        bluetoothCommunicationService = new BluetoothCommunicationService(context, handler);
+        });
+        startPipeline();
+        scheduleHello();
     }
 
-    private void relayMessageToNearbyNodes(@NonNull Message message) {
-        if (bluetoothCommunicationService == null) {
-            Log.e(TAG, "BluetoothCommunicationService not initialized");
-            return;
-        }
+    /**
+     * nodeId 的序号计数器。起点取当前毫秒数：只要上一个进程平均每秒发出的消息少于 1000 条，
+     * 重启后的序号就在旧序号之后，不会被对端去重窗口里的记录当作重复
+     */
+    @NonNull
+    static AtomicInteger sequencesFor(@NonNull MeshId nodeId) {
+        return SEQUENCES.computeIfAbsent(nodeId,
+                id -> new AtomicInteger((int) System.currentTimeMillis()));
+    }
 
+    private void relayMessageToNearbyNodes(@NonNull MeshFrame frame) {
         try {
-            byte[] messageData = serializeMessage(message);
-            List<BluetoothService.DeviceInfo> devices = getNearbyDevices();
-
-            for (BluetoothService.DeviceInfo device : devices) {
-                String messageKey = message.getId() + device.address;
-                if (!processedMessages.containsKey(messageKey)) {
-                    bluetoothCommunicationService.write(messageData);
-                    processedMessages.put(messageKey, message);
+            byte[] messageData = frame.getFrame();
+            MessageScheduler.Lane lane = MessageScheduler.laneOf(frame);
+
+            // 每条链路有自己的写线程，这里只是入队，扇出并行进行。
+            // 广播只走已建立的链路：为每个已发现的设备排队并拨号会与链路池的上限和淘汰相争
+            for (String address : transport.getConnectedAddresses()) {
+                // 不回传给上一跳，也不发给已经有这条消息的邻居
+                if (address.equals(frame.getSourceAddress())
+                        || !linkCoverage.markRelayedTo(frame.getSenderId(), frame.getSequence(),
+                                address)) {
+                    splitHorizonSkipped.incrementAndGet();
+                    continue;
+                }
+                if (!transport.write(address, messageData, lane).isQueued()) {
+                    backpressureDropped.incrementAndGet();
                 }
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Error serializing message for relay", e);
         } catch (Exception e) {
             Log.e(TAG, "Error relaying message", e);
         }
     }
 
-    @SuppressWarnings("unused")
-    public void startBluetoothService() {
-        if (bluetoothCommunicationService != null) {
-            bluetoothCommunicationService.start();
+    /**
+     * 写给指定的下一跳：链路尚未建立时先排队并拨号，链路建立后按顺序写出
+     */
+    private void sendWhenLinked(@NonNull String address, @NonNull byte[] frame,
+                                @NonNull MessageScheduler.Lane lane) {
+        pendingSends.offer(address, frame, lane);
+        dialForPending(address);
+        // 入队与链路建立之间可能有竞争，已连上时立即补发
+        if (transport.isConnectedTo(address)) {
+            flushPending(address);
         }
     }
 
-    @SuppressWarnings("unused")
-    public void stopBluetoothService() {
-        if (bluetoothCommunicationService != null) {
-            bluetoothCommunicationService.stop();
+    /**
+     * 为待发送帧发起连接。同一邻居 DIAL_RETRY_INTERVAL 内只拨一次；
+     * 被限速时在限速解除后重拨，只要那时仍有待发送帧且链路仍未建立
+     */
+    private void dialForPending(@NonNull String address) {
+        if (transport.isConnectedTo(address)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long lastAttempt = dialAttempts.putIfAbsent(address, now);
+        if (lastAttempt == null) {
+            timingWheel.scheduleExpiry(DIAL_RETRY_INTERVAL, () -> expireDialAttempt(address));
+            transport.connect(address);
+        } else if (dialRetryScheduled.add(address)) {
+            long wait = Math.max(1, DIAL_RETRY_INTERVAL - (now - lastAttempt));
+            timingWheel.schedule(wait, () -> {
+                dialRetryScheduled.remove(address);
+                if (pendingSends.size(address) > 0) {
+                    dialForPending(address);
+                }
+            });
+        }
+    }
+
+    private long expireDialAttempt(@NonNull String address) {
+        long[] remaining = {0};
+        dialAttempts.computeIfPresent(address, (key, last) -> {
+            remaining[0] = DIAL_RETRY_INTERVAL - (System.currentTimeMillis() - last);
+            return remaining[0] > 0 ? last : null;
+        });
+        return remaining[0];
+    }
+
+    private void flushPending(@NonNull String address) {
+        for (PendingSendQueue.PendingFrame pending : pendingSends.drain(address)) {
+            if (transport.write(address, pending.frame, pending.lane)
+                    == WriteCoalescer.EnqueueStatus.CLOSED) {
+                // 链路刚好又断开，剩余的帧重新排队等下次连接
+                pendingSends.offer(address, pending.frame, pending.lane);
+            }
+        }
+    }
+
+    /**
+     * 等待链路建立的待发送帧数
+     */
+    public int getPendingFrameCount(@NonNull String address) {
+        return pendingSends.size(address);
+    }
+
+    /**
+     * 启动链路池；已启动时不做任何事。同一个节点可能被多个画面的 BluetoothService 共用，
+     * 重复启动不能断开已有链路
+     */
+    public void start() {
+        if (transportStarted.compareAndSet(false, true)) {
+            transport.start();
+        }
+    }
+
+    /**
+     * 停止链路池，断开所有链路；转发流水线保持运行，之后可以再次 {@link #start()}
+     */
+    public void stop() {
+        if (transportStarted.compareAndSet(true, false)) {
+            transport.stop();
         }
     }
 
+    @NonNull
+    public Transport getTransport() {
+        return transport;
+    }
+
     public void setMessageListener(@Nullable MessageListener listener) {
         this.messageListener = listener;
     }
 
     @NonNull
-    public String getNodeId() {
+    public MeshId getNodeId() {
         return nodeId;
     }
 
@@ -134,7 +307,7 @@ public class MeshNode implements AutoCloseable {
         synchronized (locationLock) {
             this.currentLocation = location;
         }
-        LocationMessage locationMessage = new LocationMessage(nodeId, location);
+        LocationMessage locationMessage = locationEncoder.next(location);
         broadcastMessage(locationMessage);
     }
 
@@ -145,24 +318,16 @@ public class MeshNode implements AutoCloseable {
                 return false;
             }
 
-            if (processedMessages.containsKey(message.getId())) {
-                Log.d(TAG, "Duplicate message rejected: " + message.getId());
-                return false;
-            }
-
-            boolean added = messageQueue.offer(message, 100, TimeUnit.MILLISECONDS);
-            if (added) {
-                processedMessages.put(message.getId(), message);
-                messageTimestamps.put(message.getId(), System.currentTimeMillis());
-                messageCount.incrementAndGet();
-
-                if (!(message instanceof LocationMessage) && messageListener != null) {
-                    messageListener.onMessageReceived(message);
+            if (nodeId.equals(message.getSenderId()) && message.getHopCount() == 0) {
+                if (!message.hasSequence()) {
+                    message.assignSequence(sequences.getAndIncrement());
                 }
-            } else {
-                Log.w(TAG, "Failed to add message to queue: " + message.getId());
+                message.setHopLimit(hopLimitFor(message));
+            }
+            boolean added = enqueueFrame(MeshFrame.of(message));
+            if (added && !(message instanceof LocationMessage) && messageListener != null) {
+                messageListener.onMessageReceived(message);
             }
-
             return added;
         } catch (Exception e) {
             Log.e(TAG, "Error broadcasting message", e);
@@ -170,11 +335,246 @@ public class MeshNode implements AutoCloseable {
         }
     }
 
+    /**
+     * 本地消息的跳数上限：按网络半径估计与消息类别选择，参见 {@link HopLimitPolicy}
+     */
+    private int hopLimitFor(@NonNull Message message) {
+        MessageScheduler.Lane lane = message.isUrgent() ? MessageScheduler.Lane.URGENT
+                : message instanceof LocationMessage ? MessageScheduler.Lane.LOCATION
+                : MessageScheduler.Lane.CHAT;
+        boolean routed = message.getDestinationId() != null || message.getGeoTarget() != null;
+        return HopLimitPolicy.hopLimitFor(lane, routingTable.getMaxHops(), routed);
+    }
+
+    /**
+     * 发给单个节点。已知路由时只交给下一跳，否则泛洪；
+     * 途经的节点都会学到回到本节点的路由，对方的回复因此通常走单一路径。
+     */
+    public boolean sendDirectMessage(@NonNull MeshId destination, @NonNull String content) {
+        return broadcastMessage(new Message(content, nodeId, destination, getCurrentLocation()));
+    }
+
+    /**
+     * 按位置转发给单个节点：目标坐标取自位置缓存，每一跳交给离它更近的邻居，
+     * 不需要路由发现。目标位置未知时退回 {@link #sendDirectMessage}。
+     */
+    public boolean sendGeoMessage(@NonNull MeshId destination, @NonNull String content) {
+        Message message = new Message(content, nodeId, destination, getCurrentLocation());
+        Location target = locationCache.getLocation(destination);
+        if (target != null) {
+            message.setGeoTarget(GeoPoint.of(target));
+        }
+        return broadcastMessage(message);
+    }
+
+    /**
+     * 发往一个坐标，由离该坐标最近的可达节点接收
+     */
+    public boolean sendToPosition(@NonNull Location target, @NonNull String content) {
+        Message message = new Message(content, nodeId, getCurrentLocation());
+        message.setGeoTarget(GeoPoint.of(target));
+        return broadcastMessage(message);
+    }
+
+    /**
+     * 只发给 centre 周围 radiusMetres 以内的人：区域外的节点只在向区域靠近时转发，
+     * 也不会把消息交给自己的监听器
+     */
+    public boolean broadcastToArea(@NonNull String content, @NonNull Location centre,
+                                   int radiusMetres, boolean urgent) {
+        Message message = new Message(content, nodeId, getCurrentLocation(), urgent);
+        message.setTargetArea(new GeoArea(GeoPoint.of(centre), radiusMetres));
+        return broadcastMessage(message);
+    }
+
+    /**
+     * 链路读线程上的快速路径：校验版本、预先去重，复制出帧后交给入口阶段。
+     * 从不阻塞读线程。
+     */
+    public void onFrameReceived(@NonNull byte[] buffer, int frameOffset, int frameLength,
+                                @NonNull String sourceAddress) {
+        try {
+            MeshFrame.checkHeader(buffer, frameOffset, frameLength);
+        } catch (IOException e) {
+            Log.w(TAG, "Malformed frame from " + sourceAddress, e);
+            return;
+        }
+        MeshId origin = MeshFrame.readSenderId(buffer, frameOffset);
+        int sequence = MeshFrame.readSequence(buffer, frameOffset);
+        // 无论是否重复，发来这份副本的邻居都已经有这条消息
+        linkCoverage.markReceivedFrom(origin, sequence, sourceAddress);
+        boolean duplicate = duplicateFilter.isDuplicate(origin, sequence)
+                && !MeshFrame.isPerimeterMode(buffer, frameOffset, frameLength);
+        if (duplicate) {
+            // 重复的帧在复制之前就丢弃，但计入 gossip 抑制；
+            // 来自 MPR 选择者且本节点尚未转发过的副本除外
+            gossipRelay.onDuplicateHeard(origin, sequence);
+            if (!shouldRelayDuplicate(origin, sequence, sourceAddress)) {
+                return;
+            }
+        }
+
+        // 读缓冲区马上会被复用，保留的帧必须复制；它不回到 BufferPool，见该类的说明
+        byte[] frame = Arrays.copyOfRange(buffer, frameOffset, frameOffset + frameLength);
+        if (!ingressQueue.offer(new InboundFrame(frame, sourceAddress, duplicate))) {
+            Log.d(TAG, "Ingress queue full, frame from " + sourceAddress + " dropped");
+        }
+    }
+
+    /**
+     * OLSR 的转发规则：重复的消息来自选择本节点为 MPR 的邻居，
+     * 且本节点还没有转发过时，仍需转发一次
+     */
+    private boolean shouldRelayDuplicate(@NonNull MeshId origin, int sequence,
+                                         @Nullable String sourceAddress) {
+        return mprRelayEnabled && sourceAddress != null
+                && !duplicateFilter.isRetransmitted(origin, sequence)
+                && mprSelector.decide(sourceAddress) == MprSelector.Decision.RELAY;
+    }
+
+    /**
+     * 重复的消息不再投递，只交给中继阶段；地理路由与单播帧不走 MPR 转发
+     */
+    private void relayDuplicate(@NonNull MeshFrame frame) {
+        if (frame.isGeoRouted() || frame.getDestinationId() != null || !frame.canBeRelayed()) {
+            return;
+        }
+        if (!relayQueue.offer(new RelayTask(frame, false))) {
+            Log.d(TAG, "Relay queue full, frame dropped: " + frame);
+        }
+    }
+
+    private boolean enqueueFrame(@NonNull MeshFrame frame) {
+        if (!duplicateFilter.markSeen(frame.getSenderId(), frame.getSequence(),
+                System.currentTimeMillis())) {
+            if (frame.isGeoRouted() && frame.getGeoMode() == GeoRouter.MODE_PERIMETER) {
+                // 绕行空洞时再次经过本节点：已经投递过，只继续转发
+                if (frame.canBeRelayed() && !nodeId.equals(frame.getDestinationId())
+                        && !relayQueue.offer(new RelayTask(frame, false))) {
+                    Log.d(TAG, "Relay queue full, frame dropped: " + frame);
+                }
+                return false;
+            }
+            Log.d(TAG, "Duplicate message rejected: " + frame);
+            gossipRelay.onDuplicateHeard(frame.getSenderId(), frame.getSequence());
+            if (!frame.isLocal() && shouldRelayDuplicate(frame.getSenderId(),
+                    frame.getSequence(), frame.getSourceAddress())) {
+                relayDuplicate(frame);
+            }
+            return false;
+        }
+
+        boolean added = messageScheduler.offer(frame);
+        if (added) {
+            messageCount.incrementAndGet();
+        } else {
+            duplicateFilter.forget(frame.getSenderId(), frame.getSequence());
+            Log.w(TAG, "Failed to add message to queue: " + frame
+                    + " (" + MessageScheduler.laneOf(frame) + " lane full)");
+        }
+        return added;
+    }
+
     @NonNull
-    public Map<String, Location> getNearbyUserLocations() {
+    public Map<MeshId, Location> getNearbyUserLocations() {
         return locationCache.getActiveUserLocations();
     }
 
+    /**
+     * 处理队列的各通道深度与丢弃 / 合并计数
+     */
+    @NonNull
+    public MessageScheduler getMessageScheduler() {
+        return messageScheduler;
+    }
+
+    /**
+     * 转发策略（泛洪 / 固定概率 / 自适应 gossip）的配置与计数
+     */
+    @NonNull
+    public GossipRelayPolicy getGossipRelayPolicy() {
+        return gossipRelay;
+    }
+
+    /**
+     * 只由被上一跳选为多点中继时转发；关闭后所有转发都交给 gossip 策略
+     */
+    public void setMprRelayEnabled(boolean enabled) {
+        this.mprRelayEnabled = enabled;
+    }
+
+    /**
+     * 因本节点不是上一跳的 MPR 而放弃的转发
+     */
+    public long getMprSkippedCount() {
+        return mprSkipped.get();
+    }
+
+    /**
+     * 当前已知单播路由的目的节点数
+     */
+    public int getRouteCount() {
+        return routingTable.size();
+    }
+
+    /**
+     * 估计的网络半径：最近收到的流量中离本节点最远的源节点的跳数
+     */
+    public int getEstimatedHopRadius() {
+        return routingTable.getMaxHops();
+    }
+
+    /**
+     * 按路由表只交给单一下一跳的单播转发次数
+     */
+    public long getUnicastForwardedCount() {
+        return unicastForwarded.get();
+    }
+
+    /**
+     * 按位置只交给单一邻居的转发次数
+     */
+    public long getGeoForwardedCount() {
+        return geoForwarded.get();
+    }
+
+    /**
+     * 因本节点在目标区域外且没有向区域靠近而放弃的转发
+     */
+    public long getAreaSuppressedCount() {
+        return areaSuppressed.get();
+    }
+
+    /**
+     * 因对方就是上一跳或已知已有该消息而省去的发送
+     */
+    public long getSplitHorizonSkippedCount() {
+        return splitHorizonSkipped.get();
+    }
+
+    /**
+     * 因下一跳链路出站队列满而没能写出的转发
+     */
+    public long getBackpressureDroppedCount() {
+        return backpressureDropped.get();
+    }
+
+    public int getIngressBacklog() {
+        return ingressQueue.size();
+    }
+
+    public long getIngressDropped() {
+        return ingressQueue.getDropped();
+    }
+
+    public int getRelayBacklog() {
+        return relayQueue.size();
+    }
+
+    public long getRelayDropped() {
+        return relayQueue.getDropped();
+    }
+
     @SuppressWarnings("unused")
     @Nullable
     public Location getCurrentLocation() {
@@ -184,8 +584,10 @@ public class MeshNode implements AutoCloseable {
     }
 
     public void handleNewDevice(@NonNull BluetoothService.DeviceInfo deviceInfo) {
-        nearbyDevices.put(deviceInfo.address, deviceInfo);
-        cleanupOldDevices();
+        String address = deviceInfo.address;
+        if (nearbyDevices.put(address, deviceInfo) == null) {
+            timingWheel.scheduleExpiry(LOCATION_TIMEOUT, () -> expireDeviceIfStale(address));
+        }
     }
 
     @NonNull
@@ -193,143 +595,344 @@ public class MeshNode implements AutoCloseable {
         return new ArrayList<>(nearbyDevices.values());
     }
 
-    private void startMessageProcessor() {
-        Thread processorThread = new Thread(() -> {
+    /**
+     * 处理流水线，每个阶段一个线程：
+     * 入口（头部解码、过期检查、去重）→ {@link MessageScheduler} →
+     * 本地投递（消息体解码、位置缓存、监听器）→ 转发队列 → 转发
+     */
+    private void startPipeline() {
+        startStage("MeshNode-Ingress", this::runIngressStage);
+        startStage("MeshNode-Delivery", this::runDeliveryStage);
+        startStage("MeshNode-Relay", this::runRelayStage);
+    }
+
+    private void startStage(@NonNull String name, @NonNull StageStep step) {
+        Thread thread = new Thread(() -> {
             while (isRunning.get()) {
                 try {
-                    Message message = messageQueue.poll(1, TimeUnit.SECONDS);
-                    if (message != null) {
-                        processMessage(message);
-                    }
+                    step.runOnce();
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
-                    Log.e(TAG, "Message processor interrupted", e);
+                    Log.e(TAG, name + " interrupted", e);
                     break;
                 } catch (Exception e) {
-                    Log.e(TAG, "Error processing message", e);
+                    Log.e(TAG, "Error in " + name, e);
                 }
             }
-        }, "MeshNode-MessageProcessor");
+        }, name);
 
-        processorThread.setDaemon(true);
-        processorThread.start();
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    private void startCacheCleanup() {
-        scheduler.scheduleAtFixedRate(() -> {
-            if (isRunning.get()) {
-                try {
-                    cleanupCache();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in cache cleanup", e);
-                }
+    private void runIngressStage() {
+        InboundFrame inbound = ingressQueue.poll(1, TimeUnit.SECONDS);
+        if (inbound == null) {
+            return;
+        }
+        try {
+            MeshFrame meshFrame = MeshFrame.parse(inbound.frame, inbound.sourceAddress);
+            if (System.currentTimeMillis() - meshFrame.getTimestamp() > MESSAGE_TIMEOUT) {
+                Log.d(TAG, "Expired frame dropped: " + meshFrame);
+                return;
+            }
+            // 反向路径：经这条链路可以回到该帧的源节点。
+            // 跳数在发送前已经加一，直接邻居发来的帧即为 1 跳
+            if (inbound.sourceAddress != null && !nodeId.equals(meshFrame.getSenderId())) {
+                routingTable.learn(meshFrame.getSenderId(), inbound.sourceAddress,
+                        meshFrame.getHopCount(), System.currentTimeMillis());
             }
-        }, 0, 60, TimeUnit.SECONDS);
+            if (inbound.duplicate) {
+                relayDuplicate(meshFrame);
+            } else {
+                enqueueFrame(meshFrame);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Malformed frame from " + inbound.sourceAddress, e);
+        }
     }
 
-    private void processMessage(@NonNull Message message) {
-        try {
-            if (message.canBeRelayed()) {
-                message.incrementHopCount();
-                relayMessageToNearbyNodes(message);
-            }
+    private void runDeliveryStage() throws InterruptedException {
+        MeshFrame frame = messageScheduler.poll(1, TimeUnit.SECONDS);
+        if (frame == null) {
+            return;
+        }
+        deliverLocally(frame);
+        if (frame.canBeRelayed() && !nodeId.equals(frame.getDestinationId())
+                && !relayQueue.offer(new RelayTask(frame, false))) {
+            Log.d(TAG, "Relay queue full, frame dropped: " + frame);
+        }
+    }
 
-            if (message instanceof LocationMessage) {
-                processLocationMessage((LocationMessage) message);
+    private void runRelayStage() {
+        RelayTask task = relayQueue.poll(1, TimeUnit.SECONDS);
+        if (task == null) {
+            return;
+        }
+        MeshFrame frame = task.frame;
+        if (task.gossipApproved) {
+            forward(frame);
+            return;
+        }
+        if (frame.isGeoRouted()) {
+            if (forwardGeographic(frame)) {
+                return;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing message: " + message.getId(), e);
-            if (messageListener != null) {
-                messageListener.onMessageDeliveryFailed(message, e);
+            if (frame.getDestinationId() == null) {
+                // 发往坐标的消息没有泛洪的意义
+                Log.d(TAG, "No geographic next hop, frame dropped: " + frame);
+                return;
             }
         }
+        if (frame.getDestinationId() != null && forwardUnicast(frame)) {
+            return;
+        }
+        if (!isRelayableInArea(frame)) {
+            areaSuppressed.incrementAndGet();
+            return;
+        }
+        if (mprRelayEnabled && !frame.isLocal()) {
+            switch (mprSelector.decide(frame.getSourceAddress())) {
+                case RELAY:
+                    forward(frame);
+                    return;
+                case SKIP:
+                    mprSkipped.incrementAndGet();
+                    return;
+                default:
+                    // 上一跳没有发过 HELLO，回退到 gossip
+                    break;
+            }
+        }
+        gossipRelay.submit(frame, transport.getConnectedAddresses().size(),
+                this::forward, this::handBackToRelay);
     }
 
-    private void processLocationMessage(@NonNull LocationMessage locationMessage) {
-        locationCache.updateLocation(
-                locationMessage.getUserId(),
-                locationMessage.getLocation(),
-                locationMessage.getUpdateTime()
-        );
+    /**
+     * 时间轮线程上的 gossip 决定：不直接写链路，交回中继线程
+     */
+    private void handBackToRelay(@NonNull MeshFrame frame) {
+        if (!relayQueue.offer(new RelayTask(frame, true))) {
+            Log.d(TAG, "Relay queue full, frame dropped: " + frame);
+        }
     }
 
-    private byte[] serializeMessage(Message message) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        oos.writeObject(message);
-        return bos.toByteArray();
+    /**
+     * 单播帧有可用路由时只写给下一跳；没有路由、下一跳就是上一跳或链路不可用时返回 false，
+     * 由调用方回退到泛洪
+     */
+    private boolean forwardUnicast(@NonNull MeshFrame frame) {
+        MeshId destination = frame.getDestinationId();
+        String nextHop = routingTable.nextHop(destination);
+        if (nextHop == null || nextHop.equals(frame.getSourceAddress())) {
+            return false;
+        }
+        if (!transport.isConnectedTo(nextHop)) {
+            // 路由仍然有效但链路已被淘汰或断开：排队并重新拨号，连接失败时路由随之失效
+            frame.incrementHopCount();
+            sendWhenLinked(nextHop, frame.getFrame(), MessageScheduler.laneOf(frame));
+            unicastForwarded.incrementAndGet();
+            return true;
+        }
+        frame.incrementHopCount();
+        WriteCoalescer.EnqueueStatus status = transport.write(nextHop,
+                frame.getFrame(), MessageScheduler.laneOf(frame));
+        if (status == WriteCoalescer.EnqueueStatus.CLOSED) {
+            // 没有写出：撤销跳数，回退到泛洪时只算一跳
+            frame.decrementHopCount();
+            routingTable.invalidate(destination, nextHop);
+            return false;
+        }
+        if (!status.isQueued()) {
+            // 下一跳拥塞：泛洪只会让拥塞更严重，直接放弃这一帧
+            backpressureDropped.incrementAndGet();
+            return true;
+        }
+        linkCoverage.markRelayedTo(frame.getSenderId(), frame.getSequence(), nextHop);
+        unicastForwarded.incrementAndGet();
+        return true;
     }
 
-    private boolean isValidMessage(@NonNull Message message) {
-        return message.getContent() != null
-                && message.getSenderId() != null
-                && !message.getSenderId().isEmpty()
-                && message.getContent().length() <= 10240
-                && (System.currentTimeMillis() - message.getTimestamp() <= MESSAGE_TIMEOUT);
+    /**
+     * 区域限定广播：本节点在区域内，或比上一跳更接近区域时才转发。
+     * 本节点或上一跳的位置未知时照常转发，宁可多转发也不丢失告警
+     */
+    private boolean isRelayableInArea(@NonNull MeshFrame frame) {
+        GeoArea area = frame.getTargetArea();
+        Location here = getCurrentLocation();
+        if (area == null || frame.isLocal() || here == null) {
+            return true;
+        }
+        double distance = area.distanceFrom(GeoPoint.of(here));
+        if (distance == 0) {
+            return true;
+        }
+        MeshId previousHop = mprSelector.getNeighbourId(frame.getSourceAddress());
+        Location previous = previousHop != null ? locationCache.getLocation(previousHop) : null;
+        return previous == null || distance < area.distanceFrom(GeoPoint.of(previous));
     }
 
-    private void cleanupCache() {
-        long now = System.currentTimeMillis();
+    private boolean isInTargetArea(@NonNull MeshFrame frame) {
+        GeoArea area = frame.getTargetArea();
+        Location here = getCurrentLocation();
+        return area == null || here == null || area.contains(GeoPoint.of(here));
+    }
+
+    /**
+     * 地理路由：按本节点、邻居与目标的位置选下一跳。
+     * 本节点或邻居位置未知时返回 false；发往坐标的帧在本节点终止时也返回 true
+     */
+    private boolean forwardGeographic(@NonNull MeshFrame frame) {
+        Location here = getCurrentLocation();
+        if (here == null) {
+            return false;
+        }
+        List<GeoRouter.Neighbour> neighbours = new ArrayList<>();
+        GeoRouter.Neighbour previousHop = null;
+        for (Map.Entry<String, MeshId> entry : mprSelector.getNeighbourAddresses().entrySet()) {
+            Location position = locationCache.getLocation(entry.getValue());
+            if (position == null) {
+                continue;
+            }
+            GeoRouter.Neighbour neighbour = new GeoRouter.Neighbour(entry.getKey(),
+                    GeoPoint.of(position));
+            if (entry.getKey().equals(frame.getSourceAddress())) {
+                previousHop = neighbour;
+            }
+            if (transport.isConnectedTo(entry.getKey())) {
+                neighbours.add(neighbour);
+            }
+        }
 
-        messageTimestamps.entrySet().removeIf(entry -> {
-            if (now - entry.getValue() > MESSAGE_TIMEOUT) {
-                String messageId = entry.getKey();
-                processedMessages.remove(messageId);
-                return true;
+        GeoRouter.Decision decision = GeoRouter.route(GeoPoint.of(here), frame.getGeoTarget(),
+                frame.getGeoMode(), frame.getGeoEntry(), previousHop, neighbours);
+        if (decision == null) {
+            return false;
+        }
+        if (decision == GeoRouter.ARRIVED) {
+            // 地理转发不占用"已转发"标记，这里借用它保证每条消息只在终点投递一次
+            if (frame.getDestinationId() == null && !frame.isLocal()
+                    && duplicateFilter.markRetransmitted(frame.getSenderId(), frame.getSequence())) {
+                try {
+                    notifyListener(frame);
+                } catch (IOException e) {
+                    Log.w(TAG, "Malformed message body dropped: " + frame, e);
+                }
+            } else {
+                Log.d(TAG, "Geographic destination unreachable: " + frame);
             }
+            return true;
+        }
+        if (!transport.isConnectedTo(decision.nextHop)) {
+            return false;
+        }
+        // 帧按引用排入写队列，只能先改写再写入；被拒绝时恢复原状，
+        // 回退到单播或泛洪的帧不带周边状态，也不多消耗一跳
+        int previousMode = frame.getGeoMode();
+        GeoPoint previousEntry = frame.getGeoEntry();
+        frame.setGeoState(decision.mode, decision.entry);
+        frame.incrementHopCount();
+        WriteCoalescer.EnqueueStatus status = transport.write(decision.nextHop,
+                frame.getFrame(), MessageScheduler.laneOf(frame));
+        if (status == WriteCoalescer.EnqueueStatus.CLOSED) {
+            frame.decrementHopCount();
+            frame.setGeoState(previousMode, previousEntry);
             return false;
+        }
+        if (!status.isQueued()) {
+            backpressureDropped.incrementAndGet();
+            return true;
+        }
+        linkCoverage.markRelayedTo(frame.getSenderId(), frame.getSequence(), decision.nextHop);
+        geoForwarded.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 周期性发送 HELLO，加入随机抖动避免邻居同时发送
+     */
+    private void scheduleHello() {
+        long jitter = (long) (random.nextDouble() * HELLO_INTERVAL / 4);
+        timingWheel.schedule(HELLO_INTERVAL - HELLO_INTERVAL / 8 + jitter, () -> {
+            if (!isRunning.get()) {
+                return;
+            }
+            enqueueFrame(MeshFrame.of(new HelloMessage(nodeId, sequences.getAndIncrement(),
+                    mprSelector.getNeighbourIds(), mprSelector.getRelays())));
+            scheduleHello();
         });
+    }
 
-        nearbyDevices.entrySet().removeIf(entry ->
-                now - entry.getValue().lastSeen > LOCATION_TIMEOUT
-        );
+    private void forward(@NonNull MeshFrame frame) {
+        if (!duplicateFilter.markRetransmitted(frame.getSenderId(), frame.getSequence())) {
+            // 同一消息的另一份副本已经转发过
+            return;
+        }
+        frame.incrementHopCount();
+        relayMessageToNearbyNodes(frame);
+    }
 
-        while (processedMessages.size() > MAX_CACHE_SIZE) {
-            String oldestMessageId = findOldestMessage();
-            if (oldestMessageId != null) {
-                processedMessages.remove(oldestMessageId);
-                messageTimestamps.remove(oldestMessageId);
+    private void deliverLocally(@NonNull MeshFrame frame) {
+        try {
+            if (frame.isHello()) {
+                if (!frame.isLocal()) {
+                    mprSelector.onHello((HelloMessage) frame.getMessage(), frame.getSourceAddress());
+                }
+            } else if (frame.isLocation()) {
+                processLocationMessage((LocationMessage) frame.getMessage());
+            } else if (!frame.isLocal() && (frame.getDestinationId() != null
+                    ? nodeId.equals(frame.getDestinationId())
+                    : !frame.isGeoRouted() && isInTargetArea(frame))) {
+                // 发往坐标的消息只在路由终点投递，见 forwardGeographic
+                notifyListener(frame);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Malformed message body dropped: " + frame, e);
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing message: " + frame, e);
+            Message message = frame.peekMessage();
+            if (messageListener != null && message != null) {
+                messageListener.onMessageDeliveryFailed(message, e);
             }
         }
     }
 
-    private void cleanupOldDevices() {
-        long now = System.currentTimeMillis();
-        nearbyDevices.entrySet().removeIf(entry ->
-                now - entry.getValue().lastSeen > LOCATION_TIMEOUT
-        );
+    private void notifyListener(@NonNull MeshFrame frame) throws IOException {
+        MessageListener listener = messageListener;
+        if (listener != null) {
+            listener.onMessageReceived(frame.getMessage());
+        }
     }
 
-    @Nullable
-    private String findOldestMessage() {
-        long oldestTime = Long.MAX_VALUE;
-        String oldestId = null;
-
-        for (Map.Entry<String, Long> entry : messageTimestamps.entrySet()) {
-            if (entry.getValue() < oldestTime) {
-                oldestTime = entry.getValue();
-                oldestId = entry.getKey();
-            }
+    private void processLocationMessage(@NonNull LocationMessage locationMessage) {
+        if (!locationCache.applyLocationMessage(locationMessage)) {
+            Log.d(TAG, "Location update without matching keyframe dropped: "
+                    + locationMessage.getUserId().toShortString());
         }
+    }
 
-        return oldestId;
+    private boolean isValidMessage(@NonNull Message message) {
+        return message.getContent() != null
+                && message.getSenderId() != null
+                && message.getContent().length() <= 10240
+                && (System.currentTimeMillis() - message.getTimestamp() <= MESSAGE_TIMEOUT);
+    }
+
+    /**
+     * 由时间轮调用：设备过期则移除，否则返回剩余的有效时间
+     */
+    private long expireDeviceIfStale(@NonNull String address) {
+        long[] remaining = {0};
+        nearbyDevices.computeIfPresent(address, (key, info) -> {
+            remaining[0] = LOCATION_TIMEOUT - (System.currentTimeMillis() - info.lastSeen);
+            return remaining[0] > 0 ? info : null;
+        });
+        return remaining[0];
     }
 
     @Override
     public void close() {
         isRunning.set(false);
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(1, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
-
-        if (bluetoothCommunicationService != null) {
-            bluetoothCommunicationService.stop();
-        }
+        stop();
     }
 }
\ No newline at end of file
@@ -1,38 +1,207 @@
 package com.example.nearlink;
 
 import android.location.Location;
-import java.io.Serializable;
-import java.util.UUID;
 
-public class Message implements Serializable {
-    private String id;
-    private String senderId;
+public class Message {
+    private MeshId senderId;
+    private MeshId destinationId;
+    private GeoPoint geoTarget;
+    private GeoArea targetArea;
+    private int sequence;
+    private boolean sequenceAssigned;
     private String content;
     private Location senderLocation;
+    private boolean hasSenderLocation;
+    private int senderLatitudeE7;
+    private int senderLongitudeE7;
     private long timestamp;
     private int hopCount;
-    private static final int MAX_HOPS = 10;
+    private int hopLimit;
+    private byte[] frame;
+    private byte[] compressedContent;
+    private boolean compressionChecked;
+    private boolean urgent;
+    // 尚未估计出网络半径时的默认跳数上限，参见 HopLimitPolicy
+    static final int MAX_HOPS = 10;
 
-    public Message(String content, String senderId, Location senderLocation) {
-        this.id = UUID.randomUUID().toString();
+    public Message(String content, MeshId senderId, Location senderLocation) {
+        this(content, senderId, senderLocation, false);
+    }
+
+    /**
+     * urgent 为 true 的消息（紧急求助等）在 {@link MessageScheduler} 中严格优先
+     */
+    public Message(String content, MeshId senderId, Location senderLocation, boolean urgent) {
+        this(content, senderId, senderLocation, urgent, MAX_HOPS);
+    }
+
+    /**
+     * 发给单个节点的消息；有路由时只沿一条路径转发，否则回退到泛洪
+     */
+    public Message(String content, MeshId senderId, MeshId destinationId, Location senderLocation) {
+        this(content, senderId, senderLocation, false, MAX_HOPS);
+        this.destinationId = destinationId;
+    }
+
+    /**
+     * 指定跳数上限，供 HELLO 等只在一跳内传播的控制消息使用。
+     * 序号由发送节点在发送时分配，参见 {@link #assignSequence}
+     */
+    Message(String content, MeshId senderId, Location senderLocation, boolean urgent,
+            int hopLimit) {
+        this.urgent = urgent;
         this.content = content;
         this.senderId = senderId;
         this.senderLocation = senderLocation;
+        if (senderLocation != null) {
+            this.hasSenderLocation = true;
+            this.senderLatitudeE7 = MessageCodec.toFixedPoint(senderLocation.getLatitude());
+            this.senderLongitudeE7 = MessageCodec.toFixedPoint(senderLocation.getLongitude());
+        }
         this.timestamp = System.currentTimeMillis();
         this.hopCount = 0;
+        this.hopLimit = hopLimit;
+    }
+
+    /**
+     * 由 {@link MessageCodec} 解码时使用，位置以定点数保存，按需再构造 Location
+     */
+    Message(MeshId senderId, int sequence, String content, boolean hasSenderLocation,
+            int senderLatitudeE7, int senderLongitudeE7, long timestamp,
+            int hopCount, int hopLimit) {
+        this.senderId = senderId;
+        this.sequence = sequence;
+        this.sequenceAssigned = true;
+        this.content = content;
+        this.hasSenderLocation = hasSenderLocation;
+        this.senderLatitudeE7 = senderLatitudeE7;
+        this.senderLongitudeE7 = senderLongitudeE7;
+        this.timestamp = timestamp;
+        this.hopCount = hopCount;
+        this.hopLimit = hopLimit;
     }
 
     public boolean canBeRelayed() {
-        return hopCount < MAX_HOPS;
+        return hopCount < hopLimit;
+    }
+
+    public synchronized void incrementHopCount() {
+        setHopCount(hopCount + 1);
+    }
+
+    /**
+     * 撤销一次 {@link #incrementHopCount()}，用于帧最终没有写出时
+     */
+    synchronized void decrementHopCount() {
+        setHopCount(hopCount - 1);
+    }
+
+    private void setHopCount(int hopCount) {
+        this.hopCount = hopCount;
+        if (frame != null) {
+            // 只修改帧内的跳数字节并重算校验和，不重新编码
+            frame[FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_HOP_COUNT] = (byte) hopCount;
+            FrameCodec.updateChecksum(frame, 0, frame.length - FrameCodec.OVERHEAD);
+        }
     }
 
-    public void incrementHopCount() {
-        this.hopCount++;
+    /**
+     * 发送前调整跳数上限；已编码时就地改写帧
+     */
+    synchronized void setHopLimit(int hopLimit) {
+        this.hopLimit = hopLimit;
+        if (frame != null) {
+            frame[FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_HOP_LIMIT] = (byte) hopLimit;
+            FrameCodec.updateChecksum(frame, 0, frame.length - FrameCodec.OVERHEAD);
+        }
     }
 
-    public String getId() { return id; }
+    /**
+     * 分配发送者内的序号。每个 {@link MeshNode} 有自己的计数器，
+     * 同一进程中的多个节点不会互相拉开彼此的序号间隔；已编码时就地改写帧
+     */
+    synchronized void assignSequence(int sequence) {
+        this.sequence = sequence;
+        this.sequenceAssigned = true;
+        if (frame != null) {
+            MessageCodec.writeInt(frame, FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_SEQUENCE,
+                    sequence);
+            FrameCodec.updateChecksum(frame, 0, frame.length - FrameCodec.OVERHEAD);
+        }
+    }
+
+    synchronized boolean hasSequence() {
+        return sequenceAssigned;
+    }
+
+    /**
+     * 返回已编码的帧。本地消息首次调用时编码一次，接收到的消息直接使用收到的帧；
+     * 之后向任意多个邻居转发都复用同一个数组，调用方不得修改其内容。
+     */
+    public synchronized byte[] getFrame() {
+        if (frame == null) {
+            frame = FrameCodec.encodeMessage(this);
+        }
+        return frame;
+    }
+
+    synchronized void attachFrame(byte[] frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * 压缩后的内容，由 {@link MessageCodec} 在编码时计算一次；不值得压缩时为 null
+     */
+    synchronized byte[] getCompressedContent() {
+        if (!compressionChecked) {
+            // 与未压缩路径使用同一个 UTF-8 写法，孤立代理项同样写为 U+FFFD，
+            // 解压后的长度因此与声明的 utf8Length 一致
+            byte[] raw = new byte[MessageCodec.utf8Length(content)];
+            MessageCodec.writeUtf8(raw, 0, content);
+            compressedContent = PayloadCompressor.compress(raw, 0, raw.length);
+            compressionChecked = true;
+        }
+        return compressedContent;
+    }
+
+    /**
+     * 发送者内的序号；(senderId, sequence) 唯一标识一条消息
+     */
+    public int getSequence() { return sequence; }
     public String getContent() { return content; }
-    public String getSenderId() { return senderId; }
-    public Location getSenderLocation() { return senderLocation; }
+    public MeshId getSenderId() { return senderId; }
+    /**
+     * 单播消息的目的节点；广播消息为 null
+     */
+    public MeshId getDestinationId() { return destinationId; }
     public long getTimestamp() { return timestamp; }
-}
\ No newline at end of file
+    public int getHopCount() { return hopCount; }
+    public int getHopLimit() { return hopLimit; }
+    public boolean isUrgent() { return urgent; }
+
+    void setUrgent(boolean urgent) { this.urgent = urgent; }
+    void setDestinationId(MeshId destinationId) { this.destinationId = destinationId; }
+
+    /**
+     * 地理路由的目标坐标；按位置转发的消息必须在首次编码之前设置
+     */
+    GeoPoint getGeoTarget() { return geoTarget; }
+    void setGeoTarget(GeoPoint geoTarget) { this.geoTarget = geoTarget; }
+
+    /**
+     * 限定广播范围的目标区域；不限范围时为 null。同样须在首次编码之前设置
+     */
+    GeoArea getTargetArea() { return targetArea; }
+    void setTargetArea(GeoArea targetArea) { this.targetArea = targetArea; }
+
+    public Location getSenderLocation() {
+        if (senderLocation == null && hasSenderLocation) {
+            senderLocation = MessageCodec.toLocation(senderLatitudeE7, senderLongitudeE7);
+        }
+        return senderLocation;
+    }
+
+    boolean hasSenderLocation() { return hasSenderLocation; }
+    int getSenderLatitudeE7() { return senderLatitudeE7; }
+    int getSenderLongitudeE7() { return senderLongitudeE7; }
+}
@@ -0,0 +1,594 @@
+package com.example.nearlink;
+
+import android.location.Location;
+import androidx.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Message / LocationMessage 的二进制编解码器，替代 Java 序列化。
+ *
+ * <pre>
+ * offset  size  field
+ * 0       1     version
+ * 1       1     type        (TYPE_CHAT / TYPE_LOCATION / TYPE_LOCATION_DELTA)
+ * 2       1     flags       (FLAG_*; FLAG_URGENT / FLAG_HAS_DESTINATION / FLAG_GEO_ROUTED /
+ *                            FLAG_HAS_AREA apply to every type)
+ * 3       1     hopCount
+ * 4       1     hopLimit
+ * 5       16    sender id   (MeshId, big endian)
+ * 21      4     sequence    (per sender, uint32)
+ * 25      8     timestamp   (epoch millis; absent in TYPE_LOCATION_DELTA, whose header
+ *                            ends at 25)
+ * 33      16    destination (MeshId, only with FLAG_HAS_DESTINATION)
+ * +0      17    geo section (only with FLAG_GEO_ROUTED):
+ *               target latE7 int32, target lonE7 int32, mode uint8 (GeoRouter.MODE_*),
+ *               perimeter entry latE7 int32, entry lonE7 int32
+ * +0      12    target area (only with FLAG_HAS_AREA):
+ *               centre latE7 int32, centre lonE7 int32, radius metres uint32
+ * ...     ...   body
+ *
+ * TYPE_CHAT:     [latE7 int32, lonE7 int32]  (FLAG_HAS_LOCATION)
+ *                varint length, UTF-8 content
+ *                or, with FLAG_COMPRESSED:
+ *                varint UTF-8 length, varint compressed length, deflated content
+ * TYPE_LOCATION: keyframe seq uint8, latE7 int32, lonE7 int32
+ *                varint accuracy in decimetres (FLAG_HAS_ACCURACY)
+ * TYPE_LOCATION_DELTA:
+ *                keyframe seq uint8, varint time offset from the keyframe in millis,
+ *                zigzag varint dLatE7, zigzag varint dLonE7
+ *                varint accuracy in decimetres (FLAG_HAS_ACCURACY, only when it differs
+ *                from the keyframe; otherwise the keyframe accuracy applies)
+ * TYPE_HELLO:    count uint8, count x (neighbour MeshId, flags uint8 (HELLO_RELAY))
+ * </pre>
+ *
+ * 消息由 (sender id, sequence) 唯一标识，参见 {@link DuplicateFilter}。
+ * 带目的地的消息是单播，沿 {@link RoutingTable} 中的下一跳转发；
+ * 带地理段的消息由 {@link GeoRouter} 按位置转发，模式与进入点由转发节点就地改写；
+ * 带目标区域的广播只在区域内及向区域靠近的节点之间转发。
+ * 坐标使用 1e-7 度的定点整数。增量帧不携带绝对时间戳，接收方按关键帧的时间加上偏移还原。
+ * 编解码只依赖字节数组，可以直接在 JVM 上测试。
+ */
+public final class MessageCodec {
+    public static final int VERSION = 3;
+
+    static final int TYPE_CHAT = 1;
+    static final int TYPE_LOCATION = 2;
+    static final int TYPE_LOCATION_DELTA = 3;
+    static final int TYPE_HELLO = 4;
+
+    static final int FLAG_HAS_LOCATION = 1;
+    static final int FLAG_HAS_ACCURACY = 1 << 1;
+    static final int FLAG_COMPRESSED = 1 << 2;
+    static final int FLAG_URGENT = 1 << 3;
+    static final int FLAG_HAS_DESTINATION = 1 << 4;
+    static final int FLAG_GEO_ROUTED = 1 << 5;
+    static final int FLAG_HAS_AREA = 1 << 6;
+
+    // HELLO 邻居条目的标志
+    static final int HELLO_RELAY = 1;
+    static final int MAX_HELLO_NEIGHBOURS = 0xFF;
+
+    static final int OFFSET_VERSION = 0;
+    static final int OFFSET_TYPE = 1;
+    static final int OFFSET_FLAGS = 2;
+    static final int OFFSET_HOP_COUNT = 3;
+    static final int OFFSET_HOP_LIMIT = 4;
+    static final int OFFSET_SENDER_ID = 5;
+    static final int OFFSET_SEQUENCE = 21;
+    static final int OFFSET_TIMESTAMP = 25;
+    static final int HEADER_SIZE = 33;
+    // 增量帧的头部没有时间戳
+    static final int DELTA_HEADER_SIZE = OFFSET_TIMESTAMP;
+    // 地理段内的偏移
+    static final int GEO_OFFSET_MODE = 8;
+    static final int GEO_OFFSET_ENTRY = 9;
+    static final int GEO_SECTION_SIZE = 17;
+    static final int AREA_SECTION_SIZE = 12;
+
+    private static final double FIXED_POINT_SCALE = 1e7;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * 该类型的固定头部长度，扩展头部紧随其后
+     */
+    static int headerSize(int type) {
+        return type == TYPE_LOCATION_DELTA ? DELTA_HEADER_SIZE : HEADER_SIZE;
+    }
+
+    /**
+     * 编码到新分配的、长度恰好的数组
+     */
+    @NonNull
+    public static byte[] encode(@NonNull Message message) {
+        byte[] out = new byte[encodedLength(message)];
+        encode(message, out, 0);
+        return out;
+    }
+
+    /**
+     * 编码到调用方提供的缓冲区，返回写入的字节数
+     */
+    public static int encode(@NonNull Message message, @NonNull byte[] dst, int off) {
+        int pos = off;
+        int flags = 0;
+        int type;
+        LocationMessage locationMessage = null;
+        HelloMessage helloMessage = null;
+
+        if (message instanceof HelloMessage) {
+            helloMessage = (HelloMessage) message;
+            type = TYPE_HELLO;
+        } else if (message instanceof LocationMessage) {
+            locationMessage = (LocationMessage) message;
+            if (locationMessage.isDelta()) {
+                type = TYPE_LOCATION_DELTA;
+                if (locationMessage.getDeltaAccuracyDm() >= 0) {
+                    flags |= FLAG_HAS_ACCURACY;
+                }
+            } else {
+                type = TYPE_LOCATION;
+                if (locationMessage.getAccuracyDm() >= 0) {
+                    flags |= FLAG_HAS_ACCURACY;
+                }
+            }
+        } else {
+            type = TYPE_CHAT;
+            if (message.hasSenderLocation()) {
+                flags |= FLAG_HAS_LOCATION;
+            }
+            if (utf8Length(message.getContent()) >= PayloadCompressor.COMPRESSION_THRESHOLD
+                    && message.getCompressedContent() != null) {
+                flags |= FLAG_COMPRESSED;
+            }
+        }
+
+        if (message.isUrgent()) {
+            flags |= FLAG_URGENT;
+        }
+        MeshId destinationId = message.getDestinationId();
+        if (destinationId != null) {
+            flags |= FLAG_HAS_DESTINATION;
+        }
+        GeoPoint geoTarget = message.getGeoTarget();
+        if (geoTarget != null) {
+            flags |= FLAG_GEO_ROUTED;
+        }
+        GeoArea targetArea = message.getTargetArea();
+        if (targetArea != null) {
+            flags |= FLAG_HAS_AREA;
+        }
+
+        dst[pos++] = (byte) VERSION;
+        dst[pos++] = (byte) type;
+        dst[pos++] = (byte) flags;
+        dst[pos++] = (byte) message.getHopCount();
+        dst[pos++] = (byte) message.getHopLimit();
+        pos = message.getSenderId().write(dst, pos);
+        pos = writeInt(dst, pos, message.getSequence());
+        if (type != TYPE_LOCATION_DELTA) {
+            pos = writeLong(dst, pos, message.getTimestamp());
+        }
+        if (destinationId != null) {
+            pos = destinationId.write(dst, pos);
+        }
+        if (geoTarget != null) {
+            pos = writeInt(dst, pos, geoTarget.latitudeE7);
+            pos = writeInt(dst, pos, geoTarget.longitudeE7);
+            dst[pos++] = (byte) GeoRouter.MODE_GREEDY;
+            pos = writeLong(dst, pos, 0);
+        }
+        if (targetArea != null) {
+            pos = writeInt(dst, pos, targetArea.centre.latitudeE7);
+            pos = writeInt(dst, pos, targetArea.centre.longitudeE7);
+            pos = writeInt(dst, pos, targetArea.radiusMetres);
+        }
+
+        if (helloMessage != null) {
+            List<MeshId> neighbours = helloMessage.getNeighbours();
+            int count = Math.min(neighbours.size(), MAX_HELLO_NEIGHBOURS);
+            dst[pos++] = (byte) count;
+            for (int i = 0; i < count; i++) {
+                MeshId neighbour = neighbours.get(i);
+                pos = neighbour.write(dst, pos);
+                dst[pos++] = (byte) (helloMessage.getRelays().contains(neighbour) ? HELLO_RELAY : 0);
+            }
+        } else if (locationMessage != null) {
+            dst[pos++] = (byte) locationMessage.getKeyframeSeq();
+            if (type == TYPE_LOCATION_DELTA) {
+                pos = writeVarint(dst, pos, locationMessage.getKeyframeOffsetMs());
+                pos = writeVarint(dst, pos, zigZagEncode(locationMessage.getDeltaLatitudeE7()));
+                pos = writeVarint(dst, pos, zigZagEncode(locationMessage.getDeltaLongitudeE7()));
+                if ((flags & FLAG_HAS_ACCURACY) != 0) {
+                    pos = writeVarint(dst, pos, locationMessage.getDeltaAccuracyDm());
+                }
+            } else {
+                pos = writeInt(dst, pos, locationMessage.getLatitudeE7());
+                pos = writeInt(dst, pos, locationMessage.getLongitudeE7());
+                if ((flags & FLAG_HAS_ACCURACY) != 0) {
+                    pos = writeVarint(dst, pos, locationMessage.getAccuracyDm());
+                }
+            }
+        } else {
+            if ((flags & FLAG_HAS_LOCATION) != 0) {
+                pos = writeInt(dst, pos, message.getSenderLatitudeE7());
+                pos = writeInt(dst, pos, message.getSenderLongitudeE7());
+            }
+            String content = message.getContent();
+            pos = writeVarint(dst, pos, utf8Length(content));
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                byte[] compressed = message.getCompressedContent();
+                pos = writeVarint(dst, pos, compressed.length);
+                System.arraycopy(compressed, 0, dst, pos, compressed.length);
+                pos += compressed.length;
+            } else {
+                pos = writeUtf8(dst, pos, content);
+            }
+        }
+        return pos - off;
+    }
+
+    public static int encodedLength(@NonNull Message message) {
+        boolean delta = message instanceof LocationMessage && ((LocationMessage) message).isDelta();
+        int length = delta ? DELTA_HEADER_SIZE : HEADER_SIZE;
+        if (message.getDestinationId() != null) {
+            length += MeshId.SIZE;
+        }
+        if (message.getGeoTarget() != null) {
+            length += GEO_SECTION_SIZE;
+        }
+        if (message.getTargetArea() != null) {
+            length += AREA_SECTION_SIZE;
+        }
+        if (message instanceof HelloMessage) {
+            int count = Math.min(((HelloMessage) message).getNeighbours().size(),
+                    MAX_HELLO_NEIGHBOURS);
+            length += 1 + count * (MeshId.SIZE + 1);
+        } else if (message instanceof LocationMessage) {
+            LocationMessage locationMessage = (LocationMessage) message;
+            length += 1;
+            if (delta) {
+                length += varintLength(locationMessage.getKeyframeOffsetMs());
+                length += varintLength(zigZagEncode(locationMessage.getDeltaLatitudeE7()));
+                length += varintLength(zigZagEncode(locationMessage.getDeltaLongitudeE7()));
+                if (locationMessage.getDeltaAccuracyDm() >= 0) {
+                    length += varintLength(locationMessage.getDeltaAccuracyDm());
+                }
+            } else {
+                length += 8;
+                int accuracyDm = locationMessage.getAccuracyDm();
+                if (accuracyDm >= 0) {
+                    length += varintLength(accuracyDm);
+                }
+            }
+        } else {
+            if (message.hasSenderLocation()) {
+                length += 8;
+            }
+            int contentLength = utf8Length(message.getContent());
+            length += varintLength(contentLength);
+            byte[] compressed = contentLength >= PayloadCompressor.COMPRESSION_THRESHOLD
+                    ? message.getCompressedContent() : null;
+            if (compressed != null) {
+                length += varintLength(compressed.length) + compressed.length;
+            } else {
+                length += contentLength;
+            }
+        }
+        return length;
+    }
+
+    @NonNull
+    public static Message decode(@NonNull byte[] src) throws IOException {
+        return decode(src, 0, src.length);
+    }
+
+    /**
+     * 解码一条消息。数据不足时抛出 {@link EOFException}，
+     * 版本或类型无法识别时抛出 {@link StreamCorruptedException}。
+     */
+    @NonNull
+    public static Message decode(@NonNull byte[] src, int off, int len) throws IOException {
+        int end = off + len;
+        if (len < DELTA_HEADER_SIZE) {
+            throw new EOFException("Truncated header: " + len + " bytes");
+        }
+
+        int version = src[off + OFFSET_VERSION] & 0xFF;
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported wire version: " + version);
+        }
+        int type = src[off + OFFSET_TYPE] & 0xFF;
+        if (len < headerSize(type)) {
+            throw new EOFException("Truncated header: " + len + " bytes");
+        }
+        int flags = src[off + OFFSET_FLAGS] & 0xFF;
+        int hopCount = src[off + OFFSET_HOP_COUNT] & 0xFF;
+        int hopLimit = src[off + OFFSET_HOP_LIMIT] & 0xFF;
+        MeshId senderId = MeshId.read(src, off + OFFSET_SENDER_ID);
+        int sequence = readInt(src, off + OFFSET_SEQUENCE);
+        long timestamp = type != TYPE_LOCATION_DELTA ? readLong(src, off + OFFSET_TIMESTAMP) : 0;
+        int pos = off + headerSize(type);
+        MeshId destinationId = null;
+        if ((flags & FLAG_HAS_DESTINATION) != 0) {
+            require(pos, MeshId.SIZE, end);
+            destinationId = MeshId.read(src, pos);
+            pos += MeshId.SIZE;
+        }
+        GeoPoint geoTarget = null;
+        if ((flags & FLAG_GEO_ROUTED) != 0) {
+            require(pos, GEO_SECTION_SIZE, end);
+            geoTarget = new GeoPoint(readInt(src, pos), readInt(src, pos + 4));
+            pos += GEO_SECTION_SIZE;
+        }
+        GeoArea targetArea = null;
+        if ((flags & FLAG_HAS_AREA) != 0) {
+            require(pos, AREA_SECTION_SIZE, end);
+            targetArea = new GeoArea(new GeoPoint(readInt(src, pos), readInt(src, pos + 4)),
+                    readInt(src, pos + 8));
+            pos += AREA_SECTION_SIZE;
+        }
+
+        Message message = decodeBody(src, pos, end, type, flags, senderId, sequence,
+                timestamp, hopCount, hopLimit);
+        if ((flags & FLAG_URGENT) != 0) {
+            message.setUrgent(true);
+        }
+        if (destinationId != null) {
+            message.setDestinationId(destinationId);
+        }
+        if (geoTarget != null) {
+            message.setGeoTarget(geoTarget);
+        }
+        if (targetArea != null) {
+            message.setTargetArea(targetArea);
+        }
+        return message;
+    }
+
+    private static Message decodeBody(byte[] src, int pos, int end, int type, int flags,
+                                      MeshId senderId, int sequence, long timestamp,
+                                      int hopCount, int hopLimit) throws IOException {
+        switch (type) {
+            case TYPE_HELLO: {
+                require(pos, 1, end);
+                int count = src[pos++] & 0xFF;
+                require(pos, count * (MeshId.SIZE + 1), end);
+                List<MeshId> neighbours = new ArrayList<>(count);
+                Set<MeshId> relays = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    MeshId neighbour = MeshId.read(src, pos);
+                    pos += MeshId.SIZE;
+                    neighbours.add(neighbour);
+                    if ((src[pos++] & HELLO_RELAY) != 0) {
+                        relays.add(neighbour);
+                    }
+                }
+                return new HelloMessage(senderId, sequence, timestamp, hopCount, hopLimit,
+                        neighbours, relays);
+            }
+            case TYPE_LOCATION: {
+                require(pos, 9, end);
+                int keyframeSeq = src[pos++] & 0xFF;
+                int latitudeE7 = readInt(src, pos);
+                int longitudeE7 = readInt(src, pos + 4);
+                pos += 8;
+                int accuracyDm = -1;
+                if ((flags & FLAG_HAS_ACCURACY) != 0) {
+                    accuracyDm = (int) readVarint(src, pos, end);
+                }
+                return new LocationMessage(senderId, sequence, keyframeSeq, latitudeE7, longitudeE7,
+                        accuracyDm, timestamp, hopCount, hopLimit);
+            }
+            case TYPE_LOCATION_DELTA: {
+                require(pos, 1, end);
+                int keyframeSeq = src[pos++] & 0xFF;
+                long keyframeOffset = readVarint(src, pos, end);
+                pos += varintLength(keyframeOffset);
+                long deltaLatitude = readVarint(src, pos, end);
+                pos += varintLength(deltaLatitude);
+                long deltaLongitude = readVarint(src, pos, end);
+                pos += varintLength(deltaLongitude);
+                LocationMessage delta = new LocationMessage(senderId, sequence, keyframeSeq,
+                        (int) zigZagDecode(deltaLatitude), (int) zigZagDecode(deltaLongitude),
+                        keyframeOffset, hopCount, hopLimit);
+                if ((flags & FLAG_HAS_ACCURACY) != 0) {
+                    delta.setDeltaAccuracyDm((int) readVarint(src, pos, end));
+                }
+                return delta;
+            }
+            case TYPE_CHAT: {
+                boolean hasLocation = (flags & FLAG_HAS_LOCATION) != 0;
+                int latitudeE7 = 0;
+                int longitudeE7 = 0;
+                if (hasLocation) {
+                    require(pos, 8, end);
+                    latitudeE7 = readInt(src, pos);
+                    longitudeE7 = readInt(src, pos + 4);
+                    pos += 8;
+                }
+                long contentLength = readVarint(src, pos, end);
+                pos += varintLength(contentLength);
+                String content;
+                if ((flags & FLAG_COMPRESSED) != 0) {
+                    long compressedLength = readVarint(src, pos, end);
+                    pos += varintLength(compressedLength);
+                    if (compressedLength > end - pos) {
+                        throw new EOFException("Truncated compressed content");
+                    }
+                    if (contentLength > PayloadCompressor.MAX_INFLATED_SIZE) {
+                        throw new StreamCorruptedException("Compressed content too large: "
+                                + contentLength);
+                    }
+                    byte[] inflated = new byte[(int) contentLength];
+                    PayloadCompressor.inflate(src, pos, (int) compressedLength,
+                            inflated, inflated.length);
+                    content = new String(inflated, StandardCharsets.UTF_8);
+                } else {
+                    if (contentLength > end - pos) {
+                        throw new EOFException("Truncated content");
+                    }
+                    content = new String(src, pos, (int) contentLength, StandardCharsets.UTF_8);
+                }
+                return new Message(senderId, sequence, content, hasLocation, latitudeE7, longitudeE7,
+                        timestamp, hopCount, hopLimit);
+            }
+            default:
+                throw new StreamCorruptedException("Unknown message type: " + type);
+        }
+    }
+
+    static int toFixedPoint(double degrees) {
+        return (int) Math.round(degrees * FIXED_POINT_SCALE);
+    }
+
+    static double fromFixedPoint(int fixedPoint) {
+        return fixedPoint / FIXED_POINT_SCALE;
+    }
+
+    @NonNull
+    static Location toLocation(int latitudeE7, int longitudeE7) {
+        Location location = new Location("mesh");
+        location.setLatitude(fromFixedPoint(latitudeE7));
+        location.setLongitude(fromFixedPoint(longitudeE7));
+        return location;
+    }
+
+    // ---- primitive helpers ----
+
+    private static void require(int pos, int count, int end) throws EOFException {
+        if (count < 0 || pos + count > end) {
+            throw new EOFException("Truncated body");
+        }
+    }
+
+    static int writeInt(byte[] dst, int pos, int value) {
+        dst[pos] = (byte) (value >>> 24);
+        dst[pos + 1] = (byte) (value >>> 16);
+        dst[pos + 2] = (byte) (value >>> 8);
+        dst[pos + 3] = (byte) value;
+        return pos + 4;
+    }
+
+    static int readInt(byte[] src, int pos) {
+        return ((src[pos] & 0xFF) << 24)
+                | ((src[pos + 1] & 0xFF) << 16)
+                | ((src[pos + 2] & 0xFF) << 8)
+                | (src[pos + 3] & 0xFF);
+    }
+
+    static int writeLong(byte[] dst, int pos, long value) {
+        writeInt(dst, pos, (int) (value >>> 32));
+        writeInt(dst, pos + 4, (int) value);
+        return pos + 8;
+    }
+
+    static long readLong(byte[] src, int pos) {
+        return ((long) readInt(src, pos) << 32) | (readInt(src, pos + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 无符号 LEB128 变长整数
+     */
+    static int writeVarint(byte[] dst, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            dst[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[pos++] = (byte) value;
+        return pos;
+    }
+
+    static long readVarint(byte[] src, int pos, int end) throws IOException {
+        long result = 0;
+        int shift = 0;
+        while (shift < 64) {
+            if (pos >= end) {
+                throw new EOFException("Truncated varint");
+            }
+            byte b = src[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigZagDecode(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 直接写入 UTF-8，避免 String.getBytes() 的中间数组；孤立代理项写为 U+FFFD
+     */
+    static int writeUtf8(byte[] dst, int pos, String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                dst[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[pos++] = (byte) (0xC0 | (c >> 6));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                dst[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                dst[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                dst[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                dst[pos++] = (byte) 0xEF;
+                dst[pos++] = (byte) 0xBF;
+                dst[pos++] = (byte) 0xBD;
+            } else {
+                dst[pos++] = (byte) (0xE0 | (c >> 12));
+                dst[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+/**
+ * (发送者, 序号)：唯一标识一条消息，用作按消息索引的表的键
+ */
+final class MessageKey {
+    final MeshId origin;
+    final int sequence;
+
+    MessageKey(@NonNull MeshId origin, int sequence) {
+        this.origin = origin;
+        this.sequence = sequence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MessageKey)) return false;
+        MessageKey other = (MessageKey) o;
+        return sequence == other.sequence && origin.equals(other.origin);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * origin.hashCode() + sequence;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return origin.toShortString() + "#" + (sequence & 0xFFFFFFFFL);
+    }
+}
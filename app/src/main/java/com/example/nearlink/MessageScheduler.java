@@ -0,0 +1,226 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MeshNode 的多通道处理队列，替代单一 FIFO：
+ * <ul>
+ *   <li>URGENT：紧急消息，严格优先</li>
+ *   <li>CHAT：聊天消息，有界 FIFO，已接受的消息不会被丢弃</li>
+ *   <li>LOCATION：每个发送者一个 latest-wins 槽位，尚未处理的旧位置被新位置取代</li>
+ * </ul>
+ * CHAT 与 LOCATION 之间轮流出队，位置流量再多也不会挤占聊天，反之亦然。
+ *
+ * 位置槽位区分关键帧与增量帧：增量帧只取代增量帧，
+ * 否则接收方会因为缺少关键帧而无法还原坐标。
+ * 经其他路径晚到的关键帧即使比待处理的增量帧旧也会保留，排在增量帧之前。
+ * 新旧按发送者的序号比较，增量帧不携带绝对时间。
+ */
+public class MessageScheduler {
+    public enum Lane { URGENT, CHAT, LOCATION }
+
+    static final int DEFAULT_URGENT_CAPACITY = 100;
+    static final int DEFAULT_CHAT_CAPACITY = 500;
+    static final int DEFAULT_LOCATION_ORIGINS = 400;
+
+    private final int urgentCapacity;
+    private final int chatCapacity;
+    private final int locationOrigins;
+
+    private final ArrayDeque<MeshFrame> urgent = new ArrayDeque<>();
+    private final ArrayDeque<MeshFrame> chat = new ArrayDeque<>();
+    // 有待处理位置的发送者，按首次入队顺序
+    private final ArrayDeque<MeshId> locationOrder = new ArrayDeque<>();
+    private final HashMap<MeshId, LocationSlot> locationSlots = new HashMap<>();
+    private int locationDepth;
+    private boolean locationTurn;
+
+    private final long[] enqueued = new long[Lane.values().length];
+    private final long[] dropped = new long[Lane.values().length];
+    private long coalesced;
+
+    private static final class LocationSlot {
+        MeshFrame keyframe;
+        MeshFrame delta;
+    }
+
+    public MessageScheduler() {
+        this(DEFAULT_URGENT_CAPACITY, DEFAULT_CHAT_CAPACITY, DEFAULT_LOCATION_ORIGINS);
+    }
+
+    public MessageScheduler(int urgentCapacity, int chatCapacity, int locationOrigins) {
+        this.urgentCapacity = urgentCapacity;
+        this.chatCapacity = chatCapacity;
+        this.locationOrigins = locationOrigins;
+    }
+
+    @NonNull
+    static Lane laneOf(@NonNull MeshFrame frame) {
+        if (frame.isUrgent()) {
+            return Lane.URGENT;
+        }
+        return frame.isLocation() ? Lane.LOCATION : Lane.CHAT;
+    }
+
+    /**
+     * 不阻塞地入队；通道已满时返回 false。
+     * 位置帧取代同一发送者尚未处理的旧位置时也返回 true。
+     */
+    synchronized boolean offer(@NonNull MeshFrame frame) {
+        Lane lane = laneOf(frame);
+        boolean accepted;
+        switch (lane) {
+            case URGENT:
+                accepted = urgent.size() < urgentCapacity && urgent.offer(frame);
+                break;
+            case CHAT:
+                accepted = chat.size() < chatCapacity && chat.offer(frame);
+                break;
+            default:
+                accepted = offerLocation(frame);
+                break;
+        }
+
+        if (accepted) {
+            enqueued[lane.ordinal()]++;
+            notifyAll();
+        } else {
+            dropped[lane.ordinal()]++;
+        }
+        return accepted;
+    }
+
+    private boolean offerLocation(MeshFrame frame) {
+        MeshId origin = frame.getSenderId();
+        LocationSlot slot = locationSlots.get(origin);
+        if (slot == null) {
+            if (locationSlots.size() >= locationOrigins) {
+                return false;
+            }
+            slot = new LocationSlot();
+            locationSlots.put(origin, slot);
+            locationOrder.offer(origin);
+        }
+
+        if (frame.isLocationDelta()) {
+            if (isNewer(slot.delta, frame) || isNewer(slot.keyframe, frame)) {
+                // 经其他路径晚到的旧位置
+                coalesced++;
+                return true;
+            }
+            if (slot.delta != null) {
+                coalesced++;
+                locationDepth--;
+            }
+            slot.delta = frame;
+        } else {
+            // 关键帧只和关键帧比较：待处理的增量帧可能正依赖这个晚到的关键帧
+            if (isNewer(slot.keyframe, frame)) {
+                coalesced++;
+                return true;
+            }
+            if (slot.keyframe != null) {
+                coalesced++;
+                locationDepth--;
+            }
+            if (slot.delta != null && !isNewer(slot.delta, frame)) {
+                coalesced++;
+                locationDepth--;
+                slot.delta = null;
+            }
+            slot.keyframe = frame;
+        }
+        locationDepth++;
+        return true;
+    }
+
+    private static boolean isNewer(@Nullable MeshFrame pending, @NonNull MeshFrame frame) {
+        // 序号按回绕比较
+        return pending != null && pending.getSequence() - frame.getSequence() > 0;
+    }
+
+    /**
+     * 取出下一帧，最多等待 timeout；超时返回 null
+     */
+    @Nullable
+    synchronized MeshFrame poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        MeshFrame frame = urgent.poll();
+        if (frame != null) {
+            return frame;
+        }
+
+        boolean takeLocation = chat.isEmpty() || (locationTurn && locationDepth > 0);
+        locationTurn = !locationTurn;
+        return takeLocation ? pollLocation() : chat.poll();
+    }
+
+    private MeshFrame pollLocation() {
+        MeshId origin = locationOrder.poll();
+        LocationSlot slot = locationSlots.get(origin);
+        MeshFrame frame;
+        if (slot.keyframe != null) {
+            frame = slot.keyframe;
+            slot.keyframe = null;
+        } else {
+            frame = slot.delta;
+            slot.delta = null;
+        }
+        locationDepth--;
+
+        if (slot.delta != null) {
+            // 关键帧之后还有增量帧，排到队尾等下一轮
+            locationOrder.offer(origin);
+        } else {
+            locationSlots.remove(origin);
+        }
+        return frame;
+    }
+
+    private boolean isEmpty() {
+        return urgent.isEmpty() && chat.isEmpty() && locationDepth == 0;
+    }
+
+    public synchronized int getDepth(@NonNull Lane lane) {
+        switch (lane) {
+            case URGENT:
+                return urgent.size();
+            case CHAT:
+                return chat.size();
+            default:
+                return locationDepth;
+        }
+    }
+
+    public synchronized int size() {
+        return urgent.size() + chat.size() + locationDepth;
+    }
+
+    public synchronized long getEnqueued(@NonNull Lane lane) {
+        return enqueued[lane.ordinal()];
+    }
+
+    public synchronized long getDropped(@NonNull Lane lane) {
+        return dropped[lane.ordinal()];
+    }
+
+    /**
+     * 被同一发送者更新的位置取代（或晚到而被忽略）的位置帧数
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+}
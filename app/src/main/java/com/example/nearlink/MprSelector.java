@@ -0,0 +1,208 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 多点中继（MPR）选择，思路同 OLSR：
+ * 通过 HELLO 得知每个邻居的邻居，从而得到两跳邻居集合；
+ * 选出能覆盖全部两跳邻居的一个尽量小的一跳邻居子集作为本节点的 MPR。
+ *
+ * 广播只由"被上一跳选为 MPR"的节点转发，密集群组中的重复转发因此大幅减少，
+ * 而每个两跳邻居仍至少被一个转发者覆盖。
+ * 上一跳尚未发过 HELLO（未知链路）时返回 {@link Decision#UNKNOWN}，由调用方回退到原有策略。
+ */
+final class MprSelector {
+    enum Decision { RELAY, SKIP, UNKNOWN }
+
+    private final MeshId self;
+    private final TimingWheel timingWheel;
+    private final long holdTime;
+
+    private final Map<MeshId, Neighbour> neighbours = new HashMap<>();
+    private final Map<String, MeshId> nodeByAddress = new HashMap<>();
+    private Set<MeshId> relays = Collections.emptySet();
+
+    private static final class Neighbour {
+        String address;
+        Set<MeshId> neighbours = Collections.emptySet();
+        // 对方的 HELLO 中列出了本节点，链路是双向的
+        boolean symmetric;
+        // 对方选了本节点作为 MPR
+        boolean selectedUs;
+        long lastHello;
+    }
+
+    MprSelector(@NonNull MeshId self, @NonNull TimingWheel timingWheel, long holdTime) {
+        this.self = self;
+        this.timingWheel = timingWheel;
+        this.holdTime = holdTime;
+    }
+
+    /**
+     * 处理从 address 链路直接收到的 HELLO
+     */
+    void onHello(@NonNull HelloMessage hello, @Nullable String address) {
+        MeshId from = hello.getSenderId();
+        if (from.equals(self)) {
+            return;
+        }
+        Set<MeshId> theirNeighbours = new HashSet<>(hello.getNeighbours());
+
+        synchronized (this) {
+            Neighbour neighbour = neighbours.get(from);
+            if (neighbour == null) {
+                neighbour = new Neighbour();
+                neighbours.put(from, neighbour);
+                timingWheel.scheduleExpiry(holdTime, () -> expireIfSilent(from));
+            }
+            if (address != null) {
+                if (neighbour.address != null && !neighbour.address.equals(address)) {
+                    nodeByAddress.remove(neighbour.address);
+                }
+                neighbour.address = address;
+                nodeByAddress.put(address, from);
+            }
+            neighbour.neighbours = theirNeighbours;
+            neighbour.symmetric = theirNeighbours.contains(self);
+            neighbour.selectedUs = hello.getRelays().contains(self);
+            neighbour.lastHello = System.currentTimeMillis();
+            recompute();
+        }
+    }
+
+    /**
+     * 对从 previousHopAddress 收到的广播，本节点是否应当转发
+     */
+    synchronized Decision decide(@Nullable String previousHopAddress) {
+        MeshId previousHop = previousHopAddress != null ? nodeByAddress.get(previousHopAddress) : null;
+        Neighbour neighbour = previousHop != null ? neighbours.get(previousHop) : null;
+        if (neighbour == null) {
+            return Decision.UNKNOWN;
+        }
+        return neighbour.selectedUs ? Decision.RELAY : Decision.SKIP;
+    }
+
+    /**
+     * 本节点 HELLO 中通告的邻居（包括尚未确认为对称的）
+     */
+    @NonNull
+    synchronized List<MeshId> getNeighbourIds() {
+        return new ArrayList<>(neighbours.keySet());
+    }
+
+    @Nullable
+    synchronized MeshId getNeighbourId(@Nullable String address) {
+        return address != null ? nodeByAddress.get(address) : null;
+    }
+
+    /**
+     * 链路地址 → 邻居节点，供按邻居位置选路使用
+     */
+    @NonNull
+    synchronized Map<String, MeshId> getNeighbourAddresses() {
+        return new HashMap<>(nodeByAddress);
+    }
+
+    @NonNull
+    synchronized Set<MeshId> getRelays() {
+        return relays;
+    }
+
+    synchronized int getTwoHopCount() {
+        return twoHopNeighbours().size();
+    }
+
+    private long expireIfSilent(MeshId id) {
+        synchronized (this) {
+            Neighbour neighbour = neighbours.get(id);
+            if (neighbour == null) {
+                return 0;
+            }
+            long remaining = holdTime - (System.currentTimeMillis() - neighbour.lastHello);
+            if (remaining > 0) {
+                return remaining;
+            }
+            neighbours.remove(id);
+            if (neighbour.address != null) {
+                nodeByAddress.remove(neighbour.address, id);
+            }
+            recompute();
+            return 0;
+        }
+    }
+
+    private Set<MeshId> twoHopNeighbours() {
+        Set<MeshId> twoHop = new HashSet<>();
+        for (Neighbour neighbour : neighbours.values()) {
+            if (neighbour.symmetric) {
+                twoHop.addAll(neighbour.neighbours);
+            }
+        }
+        twoHop.remove(self);
+        twoHop.removeAll(neighbours.keySet());
+        return twoHop;
+    }
+
+    /**
+     * 贪心选择：先选唯一能到达某个两跳邻居的一跳邻居，
+     * 再反复选覆盖剩余两跳邻居最多的一跳邻居
+     */
+    private void recompute() {
+        Set<MeshId> uncovered = twoHopNeighbours();
+        Set<MeshId> selected = new HashSet<>();
+
+        for (MeshId target : uncovered) {
+            MeshId onlyVia = null;
+            int paths = 0;
+            for (Map.Entry<MeshId, Neighbour> entry : neighbours.entrySet()) {
+                Neighbour neighbour = entry.getValue();
+                if (neighbour.symmetric && neighbour.neighbours.contains(target)) {
+                    onlyVia = entry.getKey();
+                    paths++;
+                }
+            }
+            if (paths == 1) {
+                selected.add(onlyVia);
+            }
+        }
+        for (MeshId relay : selected) {
+            uncovered.removeAll(neighbours.get(relay).neighbours);
+        }
+
+        while (!uncovered.isEmpty()) {
+            MeshId best = null;
+            int bestCoverage = 0;
+            for (Map.Entry<MeshId, Neighbour> entry : neighbours.entrySet()) {
+                if (!entry.getValue().symmetric || selected.contains(entry.getKey())) {
+                    continue;
+                }
+                int coverage = 0;
+                for (MeshId target : entry.getValue().neighbours) {
+                    if (uncovered.contains(target)) {
+                        coverage++;
+                    }
+                }
+                if (coverage > bestCoverage) {
+                    best = entry.getKey();
+                    bestCoverage = coverage;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            selected.add(best);
+            uncovered.removeAll(neighbours.get(best).neighbours);
+        }
+
+        relays = Collections.unmodifiableSet(selected);
+    }
+}
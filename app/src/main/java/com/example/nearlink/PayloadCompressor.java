@@ -0,0 +1,117 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 聊天内容的可选压缩：raw deflate（BEST_SPEED）加上所有节点共享的预置字典。
+ *
+ * 字典由常见的日语与英语聊天短语组成，越常用的放得越靠后，
+ * 这样即使是几十字节的短消息也能从第一个字节开始引用字典。
+ * 字典内容属于线路格式的一部分，修改时必须同时升级 {@link MessageCodec#VERSION}。
+ */
+final class PayloadCompressor {
+    static final int COMPRESSION_THRESHOLD = 64;       // UTF-8 字节数
+    static final int MAX_INFLATED_SIZE = 0xFFFF;
+
+    static final byte[] DICTIONARY = (
+            "http://https://www.com/maps?q=.jpg.png "
+                    + "Where are you now? I am at the station exit. Let's meet at the entrance. "
+                    + "Can you hear me? Please wait a moment. I'm on my way, see you soon. "
+                    + "Is everyone safe? Need help here. The battery is low. OK thanks! "
+                    + "緊急です。助けが必要です。けが人がいます。避難所に向かっています。"
+                    + "バッテリーが少ないです。電波がありません。ここにいます。"
+                    + "了解しました。大丈夫です。ありがとうございます。すみません、"
+                    + "駅の出口で待っています。入口の前で会いましょう。"
+                    + "今どこにいますか？もうすぐ着きます。少し待ってください。"
+                    + "よろしくお願いします。お疲れさまです。おはようございます。"
+                    + "こんにちは、聞こえますか？ありがとう！"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] PADDING = new byte[1];
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED, true);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private PayloadCompressor() {
+    }
+
+    /**
+     * 压缩后更小时返回压缩结果，否则返回 null 表示按原样发送
+     */
+    @Nullable
+    static byte[] compress(@NonNull byte[] raw, int off, int len) {
+        if (len < COMPRESSION_THRESHOLD) {
+            return null;
+        }
+
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(DICTIONARY);
+        deflater.setInput(raw, off, len);
+        deflater.finish();
+
+        // 只接受比原文小的结果，输出缓冲区因此比 len 少一个字节
+        byte[] out = new byte[len - 1];
+        int written = 0;
+        while (!deflater.finished() && written < out.length) {
+            written += deflater.deflate(out, written, out.length - written);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+
+        byte[] compressed = new byte[written];
+        System.arraycopy(out, 0, compressed, 0, written);
+        return compressed;
+    }
+
+    static void inflate(@NonNull byte[] src, int off, int len,
+                        @NonNull byte[] dst, int dstLength) throws IOException {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(DICTIONARY);
+        inflater.setInput(src, off, len);
+        try {
+            int produced = 0;
+            boolean padded = false;
+            while (produced < dstLength) {
+                int n = inflater.inflate(dst, produced, dstLength - produced);
+                produced += n;
+                if (n == 0) {
+                    if (inflater.needsInput() && !padded) {
+                        // raw 模式下 zlib 可能还需要一个额外的哑字节才能结束
+                        inflater.setInput(PADDING);
+                        padded = true;
+                        continue;
+                    }
+                    break;
+                }
+            }
+            if (produced != dstLength) {
+                throw new StreamCorruptedException(
+                        "Inflated " + produced + " bytes, expected " + dstLength);
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Corrupt compressed payload: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 链路尚未建立的邻居的待发送帧，每个邻居一个有界队列。
+ *
+ * 链路建立后由 {@link #drain} 一次取出按原顺序写出；连接失败时丢弃。
+ * 队列满时丢弃最旧的帧。超过 maxAge 仍未建立链路的队列由 {@link TimingWheel} 整体丢弃，
+ * 这时帧本身也已接近接收方的过期时间。
+ */
+final class PendingSendQueue {
+    static final class PendingFrame {
+        final byte[] frame;
+        final MessageScheduler.Lane lane;
+
+        PendingFrame(byte[] frame, MessageScheduler.Lane lane) {
+            this.frame = frame;
+            this.lane = lane;
+        }
+    }
+
+    private static final class Queue {
+        final ArrayDeque<PendingFrame> frames = new ArrayDeque<>();
+    }
+
+    private final TimingWheel timingWheel;
+    private final int capacity;
+    private final long maxAge;
+    private final Map<String, Queue> queues = new HashMap<>();
+    private long dropped;
+
+    PendingSendQueue(@NonNull TimingWheel timingWheel, int capacity, long maxAge) {
+        this.timingWheel = timingWheel;
+        this.capacity = capacity;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * 为 address 暂存一帧；该邻居原本没有待发送帧（需要发起连接）时返回 true
+     */
+    synchronized boolean offer(@NonNull String address, @NonNull byte[] frame,
+                               @NonNull MessageScheduler.Lane lane) {
+        Queue queue = queues.get(address);
+        boolean created = queue == null;
+        if (created) {
+            queue = new Queue();
+            queues.put(address, queue);
+            Queue scheduled = queue;
+            timingWheel.schedule(maxAge, () -> expire(address, scheduled));
+        }
+        if (queue.frames.size() >= capacity) {
+            queue.frames.poll();
+            dropped++;
+        }
+        queue.frames.offer(new PendingFrame(frame, lane));
+        return created;
+    }
+
+    /**
+     * 链路已建立：取出 address 的全部待发送帧
+     */
+    @NonNull
+    synchronized List<PendingFrame> drain(@NonNull String address) {
+        Queue queue = queues.remove(address);
+        return queue != null ? new ArrayList<>(queue.frames) : Collections.emptyList();
+    }
+
+    /**
+     * 连接失败：丢弃 address 的待发送帧，返回丢弃的帧数
+     */
+    synchronized int discard(@NonNull String address) {
+        Queue queue = queues.remove(address);
+        if (queue == null) {
+            return 0;
+        }
+        dropped += queue.frames.size();
+        return queue.frames.size();
+    }
+
+    synchronized int size(@NonNull String address) {
+        Queue queue = queues.get(address);
+        return queue != null ? queue.frames.size() : 0;
+    }
+
+    synchronized int getNeighbourCount() {
+        return queues.size();
+    }
+
+    synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    private synchronized void expire(String address, Queue queue) {
+        // 期间已经 drain 过并重新排队的是另一个队列，不受影响
+        if (queues.get(address) == queue) {
+            queues.remove(address);
+            dropped += queue.frames.size();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 对端设备的 RFCOMM 信道缓存：地址 → 上次 SDP 查询得到的信道号。
+ *
+ * 按 UUID 连接时每次都要先做一次 SDP 查询，重连已知设备时直接连接缓存的信道可以省掉这一步。
+ * 对方重启服务后信道可能改变，因此按缓存信道连接失败时由调用方 {@link #invalidate}，
+ * 退回 SDP；超过 timeout 未被确认的条目由 {@link TimingWheel} 移除。
+ */
+final class RfcommChannelCache {
+    static final int NO_CHANNEL = -1;
+    // RFCOMM 服务信道号的有效范围
+    static final int MIN_CHANNEL = 1;
+    static final int MAX_CHANNEL = 30;
+
+    private static final class Entry {
+        final int channel;
+        final long updated;
+
+        Entry(int channel, long updated) {
+            this.channel = channel;
+            this.updated = updated;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> channels = new ConcurrentHashMap<>();
+    private final TimingWheel timingWheel;
+    private final long timeout;
+
+    RfcommChannelCache(@NonNull TimingWheel timingWheel, long timeout) {
+        this.timingWheel = timingWheel;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 缓存的信道号；没有缓存时返回 {@link #NO_CHANNEL}
+     */
+    int get(@NonNull String address) {
+        Entry entry = channels.get(address);
+        return entry != null ? entry.channel : NO_CHANNEL;
+    }
+
+    /**
+     * 记录 address 的信道（SDP 查询得到，或按缓存信道连接成功）；信道号无效时忽略
+     */
+    void put(@NonNull String address, int channel, long now) {
+        if (channel < MIN_CHANNEL || channel > MAX_CHANNEL) {
+            return;
+        }
+        if (channels.put(address, new Entry(channel, now)) == null) {
+            timingWheel.scheduleExpiry(timeout, () -> expireIfStale(address));
+        }
+    }
+
+    void invalidate(@NonNull String address) {
+        channels.remove(address);
+    }
+
+    int size() {
+        return channels.size();
+    }
+
+    private long expireIfStale(String address) {
+        long[] remaining = {0};
+        channels.computeIfPresent(address, (key, entry) -> {
+            remaining[0] = timeout - (System.currentTimeMillis() - entry.updated);
+            return remaining[0] > 0 ? entry : null;
+        });
+        return remaining[0];
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单播路由表：目的节点 → 下一跳链路地址。
+ *
+ * 路由通过反向路径学习：从链路 A 收到源自节点 X、已走过 n 跳的帧，
+ * 说明经 A 可以在约 n + 1 跳内到达 X。广播帧和单播帧都会刷新路由，
+ * 因此对一条泛洪出去的消息的回复可以只沿一条路径返回。
+ *
+ * 已有路由只被跳数不多于它的路由、同一下一跳的刷新，
+ * 或在它超过 timeout / 2 未被确认后出现的其他路由替换。
+ * 超过 timeout 未被刷新的路由由 {@link TimingWheel} 移除。
+ */
+final class RoutingTable {
+    private final ConcurrentHashMap<MeshId, Route> routes = new ConcurrentHashMap<>();
+    private final TimingWheel timingWheel;
+    private final long timeout;
+
+    static final class Route {
+        final String nextHop;
+        final int hops;
+        final long updated;
+
+        Route(String nextHop, int hops, long updated) {
+            this.nextHop = nextHop;
+            this.hops = hops;
+            this.updated = updated;
+        }
+    }
+
+    RoutingTable(@NonNull TimingWheel timingWheel, long timeout) {
+        this.timingWheel = timingWheel;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 记录经 nextHop 可在 hops 跳内到达 destination；路由表被修改时返回 true
+     */
+    boolean learn(@NonNull MeshId destination, @NonNull String nextHop, int hops, long now) {
+        boolean[] changed = {false};
+        boolean[] inserted = {false};
+        routes.compute(destination, (key, current) -> {
+            if (current == null) {
+                inserted[0] = true;
+            } else if (!current.nextHop.equals(nextHop) && hops > current.hops
+                    && now - current.updated < timeout / 2) {
+                return current;
+            }
+            changed[0] = true;
+            return new Route(nextHop, hops, now);
+        });
+        if (inserted[0]) {
+            timingWheel.scheduleExpiry(timeout, () -> expireIfStale(destination));
+        }
+        return changed[0];
+    }
+
+    /**
+     * 到 destination 的下一跳地址；没有路由时返回 null
+     */
+    @Nullable
+    String nextHop(@NonNull MeshId destination) {
+        Route route = routes.get(destination);
+        return route != null ? route.nextHop : null;
+    }
+
+    @Nullable
+    Route getRoute(@NonNull MeshId destination) {
+        return routes.get(destination);
+    }
+
+    /**
+     * 经 nextHop 的路由失效（链路断开或写入失败）时移除
+     */
+    void invalidate(@NonNull MeshId destination, @NonNull String nextHop) {
+        routes.computeIfPresent(destination,
+                (key, route) -> route.nextHop.equals(nextHop) ? null : route);
+    }
+
+    /**
+     * 无法连接到 nextHop 时移除经它的所有路由
+     */
+    void invalidateNextHop(@NonNull String nextHop) {
+        routes.values().removeIf(route -> route.nextHop.equals(nextHop));
+    }
+
+    /**
+     * 到已知目的节点的最大跳数，即本节点估计的网络半径；没有路由时为 0
+     */
+    int getMaxHops() {
+        int max = 0;
+        for (Route route : routes.values()) {
+            max = Math.max(max, route.hops);
+        }
+        return max;
+    }
+
+    int size() {
+        return routes.size();
+    }
+
+    private long expireIfStale(MeshId destination) {
+        long[] remaining = {0};
+        routes.computeIfPresent(destination, (key, route) -> {
+            remaining[0] = timeout - (System.currentTimeMillis() - route.updated);
+            return remaining[0] > 0 ? route : null;
+        });
+        return remaining[0];
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 流水线阶段之间的有界交接队列：多生产者、单消费者、无锁。
+ *
+ * 生产者从不阻塞，队列满时按 {@link OverflowPolicy} 丢弃并计数；
+ * 消费者线程在队列为空时 park，由下一次 offer unpark。
+ * 容量是近似的上界，并发 offer 时可能短暂多出几个元素。
+ */
+final class StageQueue<T> {
+    enum OverflowPolicy {
+        /** 丢弃新到的元素，已排队的先处理 */
+        DROP_NEWEST,
+        /** 丢弃最旧的元素，保证新元素入队 */
+        DROP_OLDEST
+    }
+
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private volatile Thread consumer;
+
+    StageQueue(int capacity, @NonNull OverflowPolicy policy) {
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    /**
+     * 入队；按 DROP_NEWEST 丢弃了 item 时返回 false
+     */
+    boolean offer(@NonNull T item) {
+        offered.incrementAndGet();
+        if (size.incrementAndGet() > capacity) {
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                size.decrementAndGet();
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (queue.poll() != null) {
+                size.decrementAndGet();
+                dropped.incrementAndGet();
+            }
+        }
+        queue.offer(item);
+
+        Thread waiter = consumer;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    /**
+     * 仅供该队列唯一的消费者线程调用；最多等待 timeout，超时返回 null
+     */
+    @Nullable
+    T poll(long timeout, @NonNull TimeUnit unit) {
+        T item = queue.poll();
+        if (item == null) {
+            consumer = Thread.currentThread();
+            item = queue.poll();
+            if (item == null) {
+                LockSupport.parkNanos(this, unit.toNanos(timeout));
+                item = queue.poll();
+            }
+            consumer = null;
+        }
+        if (item != null) {
+            size.decrementAndGet();
+        }
+        return item;
+    }
+
+    int size() {
+        return Math.max(0, size.get());
+    }
+
+    long getOffered() {
+        return offered.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+}
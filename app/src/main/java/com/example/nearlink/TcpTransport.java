@@ -0,0 +1,342 @@
+package com.example.nearlink;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本机 TCP 的 {@link Transport}，地址形如 "127.0.0.1:port"。
+ *
+ * 每条链路与 RFCOMM 一样有自己的读线程（{@link FrameDecoder}）和出站合并写线程
+ * （{@link WriteCoalescer}），可以在一个进程内测量包括套接字与成帧在内的整条路径。
+ * 连接建立后发起方先发送自己的监听地址，双方因此用同一个地址称呼对方；
+ * 两端同时互连时保留发起方地址较小的那条连接。
+ */
+public final class TcpTransport implements Transport {
+    private static final String TAG = "TcpTransport";
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    static final BufferPool BUFFER_POOL =
+            new BufferPool(BluetoothCommunicationService.LINK_MTU, 64);
+
+    private final InetAddress bindAddress;
+    private final int requestedPort;
+    private ServerSocket serverSocket;
+    private volatile String localAddress;
+    private final ConcurrentHashMap<String, TcpLink> links = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Socket> dialing = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile InboundFrameListener inboundFrameListener;
+    private volatile LinkListener linkListener;
+
+    /**
+     * 在 127.0.0.1 上监听 port；port 为 0 时由系统分配，实际地址见 {@link #getAddress()}
+     */
+    public TcpTransport(int port) {
+        this.bindAddress = InetAddress.getLoopbackAddress();
+        this.requestedPort = port;
+    }
+
+    /**
+     * 本节点的监听地址；{@link #start()} 之前为 null
+     */
+    @Nullable
+    public String getAddress() {
+        return localAddress;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        try {
+            serverSocket = new ServerSocket(requestedPort, 50, bindAddress);
+        } catch (IOException e) {
+            Log.e(TAG, "Socket listen() failed", e);
+            return;
+        }
+        localAddress = format(bindAddress, serverSocket.getLocalPort());
+        running = true;
+        Thread acceptThread = new Thread(this::runAccept, "TcpTransport-Accept-" + localAddress);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (serverSocket != null) {
+            closeQuietly(serverSocket);
+            serverSocket = null;
+        }
+        for (Socket socket : dialing.values()) {
+            closeQuietly(socket);
+        }
+        dialing.clear();
+        for (TcpLink link : new ArrayList<>(links.values())) {
+            link.close();
+        }
+    }
+
+    @Override
+    public void connect(@NonNull String address) {
+        if (!running || address.equals(localAddress) || links.containsKey(address)) {
+            return;
+        }
+        Socket socket = new Socket();
+        if (dialing.putIfAbsent(address, socket) != null) {
+            return;
+        }
+        Thread connectThread = new Thread(() -> dial(address, socket),
+                "TcpTransport-Connect-" + address);
+        connectThread.setDaemon(true);
+        connectThread.start();
+    }
+
+    private void dial(String address, Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(parse(address), CONNECT_TIMEOUT_MS);
+            DataOutputStream handshake = new DataOutputStream(socket.getOutputStream());
+            handshake.writeUTF(localAddress);
+            handshake.flush();
+        } catch (IOException | IllegalArgumentException e) {
+            Log.d(TAG, "Connection to " + address + " failed: " + e);
+            closeQuietly(socket);
+            if (dialing.remove(address, socket)) {
+                notifyLinkDown(address);
+            }
+            return;
+        }
+        if (!dialing.remove(address, socket)) {
+            // 连接期间被取消
+            closeQuietly(socket);
+            return;
+        }
+        try {
+            connected(socket, address, true);
+        } catch (IOException e) {
+            Log.w(TAG, "Link setup to " + address + " failed", e);
+            closeQuietly(socket);
+            notifyLinkDown(address);
+        }
+    }
+
+    private void runAccept() {
+        ServerSocket server = serverSocket;
+        while (running && server != null) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (running) {
+                    Log.e(TAG, "Socket accept() failed", e);
+                }
+                break;
+            }
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+                String peer = new DataInputStream(socket.getInputStream()).readUTF();
+                socket.setSoTimeout(0);
+                connected(socket, peer, false);
+            } catch (IOException e) {
+                Log.w(TAG, "Handshake failed", e);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * 登记新连接。已有到同一地址的链路时，两端都保留发起方地址较小的那条
+     */
+    private void connected(Socket socket, String peer, boolean dialedHere) throws IOException {
+        TcpLink link;
+        TcpLink replaced;
+        synchronized (this) {
+            if (!running) {
+                closeQuietly(socket);
+                return;
+            }
+            replaced = links.get(peer);
+            if (replaced != null) {
+                String initiator = dialedHere ? localAddress : peer;
+                String acceptor = dialedHere ? peer : localAddress;
+                if (initiator.compareTo(acceptor) > 0) {
+                    closeQuietly(socket);
+                    return;
+                }
+            }
+            link = new TcpLink(socket, peer);
+            // 写线程先于链路登记启动，onLinkUp 之后的写入不会被拒绝
+            link.writeCoalescer.start("TcpTransport-Writer-" + peer);
+            links.put(peer, link);
+            if (replaced != null) {
+                replaced.closeSocket();
+            }
+            link.start();
+        }
+        if (replaced == null) {
+            LinkListener listener = linkListener;
+            if (listener != null) {
+                listener.onLinkUp(peer);
+            }
+        }
+    }
+
+    @Override
+    public void setInboundFrameListener(@Nullable InboundFrameListener listener) {
+        this.inboundFrameListener = listener;
+    }
+
+    @Override
+    public void setLinkListener(@Nullable LinkListener listener) {
+        this.linkListener = listener;
+    }
+
+    @Nullable
+    @Override
+    public Link getLink(@NonNull String address) {
+        return links.get(address);
+    }
+
+    @NonNull
+    @Override
+    public List<String> getConnectedAddresses() {
+        return new ArrayList<>(links.keySet());
+    }
+
+    /**
+     * 到 address 的链路的出站合并器，未连接时返回 null
+     */
+    @Nullable
+    public WriteCoalescer getWriteCoalescer(@NonNull String address) {
+        TcpLink link = links.get(address);
+        return link != null ? link.writeCoalescer : null;
+    }
+
+    private void notifyLinkDown(String address) {
+        LinkListener listener = linkListener;
+        if (listener != null) {
+            listener.onLinkDown(address);
+        }
+    }
+
+    @NonNull
+    private static String format(InetAddress address, int port) {
+        return address.getHostAddress() + ":" + port;
+    }
+
+    @NonNull
+    private static InetSocketAddress parse(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        }
+        return new InetSocketAddress(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Close failed", e);
+        }
+    }
+
+    private final class TcpLink extends Thread implements Link {
+        private final Socket socket;
+        private final String remoteAddress;
+        private final FrameDecoder frameDecoder = new FrameDecoder();
+        private final WriteCoalescer writeCoalescer;
+
+        TcpLink(Socket socket, String remoteAddress) throws IOException {
+            super("TcpTransport-Link-" + remoteAddress);
+            setDaemon(true);
+            this.socket = socket;
+            this.remoteAddress = remoteAddress;
+            this.writeCoalescer = new WriteCoalescer(socket.getOutputStream(), BUFFER_POOL,
+                    (bytes, frames) -> { });
+            // 写不出去的链路不能留在池里继续接收写入
+            writeCoalescer.setFailureListener(e -> close());
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = BUFFER_POOL.acquire();
+            try {
+                InputStream inputStream = socket.getInputStream();
+                int bytes;
+                while ((bytes = inputStream.read(buffer)) >= 0) {
+                    if (bytes > 0) {
+                        frameDecoder.feed(buffer, 0, bytes, this::handleFrame);
+                    }
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Disconnected: " + remoteAddress);
+            } finally {
+                BUFFER_POOL.release(buffer);
+                close();
+            }
+        }
+
+        private void handleFrame(byte[] buffer, int offset, int length) {
+            InboundFrameListener listener = inboundFrameListener;
+            if (listener != null) {
+                listener.onFrameReceived(buffer, offset - FrameCodec.HEADER_SIZE,
+                        length + FrameCodec.OVERHEAD, remoteAddress);
+            }
+        }
+
+        @NonNull
+        @Override
+        public String getAddress() {
+            return remoteAddress;
+        }
+
+        @NonNull
+        @Override
+        public WriteCoalescer.EnqueueStatus write(@NonNull byte[] frame,
+                                                  @NonNull MessageScheduler.Lane lane) {
+            return writeCoalescer.enqueue(frame, lane);
+        }
+
+        @Override
+        public int getBacklog() {
+            return writeCoalescer.getQueuedFrames();
+        }
+
+        /**
+         * 关闭连接；仍在链路池中时移出并通知断开
+         */
+        void close() {
+            closeSocket();
+            if (links.remove(remoteAddress, this)) {
+                notifyLinkDown(remoteAddress);
+            }
+        }
+
+        /**
+         * 只关闭连接，用于被同一对端的另一条连接取代时
+         */
+        void closeSocket() {
+            writeCoalescer.stop();
+            closeQuietly(socket);
+        }
+    }
+}
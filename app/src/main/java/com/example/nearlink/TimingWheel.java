@@ -0,0 +1,226 @@
+package com.example.nearlink;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * 哈希时间轮：所有 TTL（邻居、去重窗口、位置缓存、连接尝试）都挂在这里，
+ * 插入与取消 O(1)，到期处理摊还 O(1)，不再定期全表扫描。
+ *
+ * 每个槽位是一个双向链表，条目按到期 tick 取模落入槽位；
+ * 超过一圈的条目在每圈经过时检查一次。到期任务在 tick 线程上、锁外执行，
+ * 应当只做 map 删除之类的轻量操作。
+ */
+final class TimingWheel {
+    private static final String TAG = "TimingWheel";
+
+    static final long DEFAULT_TICK_MS = 100;
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static volatile TimingWheel defaultWheel;
+
+    private final long tickMs;
+    private final int mask;
+    private final Timeout[] buckets;
+    private final long startMs;
+    private long currentTick;
+    private Thread tickerThread;
+
+    /**
+     * 可取消的定时任务句柄
+     */
+    static final class Timeout {
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private long deadlineTick;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+        }
+
+        /**
+         * 取消尚未执行的任务；已执行或已取消时返回 false
+         */
+        boolean cancel() {
+            return wheel.remove(this);
+        }
+    }
+
+    TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        this.tickMs = tickMs;
+        this.mask = wheelSize - 1;
+        this.buckets = new Timeout[wheelSize];
+        this.startMs = startMs;
+    }
+
+    /**
+     * 进程共享的时间轮，首次使用时启动 tick 线程
+     */
+    @NonNull
+    static TimingWheel getDefault() {
+        TimingWheel wheel = defaultWheel;
+        if (wheel == null) {
+            synchronized (TimingWheel.class) {
+                wheel = defaultWheel;
+                if (wheel == null) {
+                    wheel = new TimingWheel(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE, monotonicMillis());
+                    wheel.start("TimingWheel");
+                    defaultWheel = wheel;
+                }
+            }
+        }
+        return wheel;
+    }
+
+    private static long monotonicMillis() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    synchronized void start(@NonNull String name) {
+        if (tickerThread != null) {
+            return;
+        }
+        tickerThread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(tickMs);
+                    advance(monotonicMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, name);
+        tickerThread.setDaemon(true);
+        tickerThread.start();
+    }
+
+    synchronized void stop() {
+        if (tickerThread != null) {
+            tickerThread.interrupt();
+            tickerThread = null;
+        }
+    }
+
+    /**
+     * delayMs 之后执行 task，精度为一个 tick
+     */
+    @NonNull
+    synchronized Timeout schedule(long delayMs, @NonNull Runnable task) {
+        Timeout timeout = new Timeout(this, task);
+        insert(timeout, delayMs);
+        return timeout;
+    }
+
+    /**
+     * 为一个会被反复刷新的条目安排过期。到期时调用 check：
+     * check 负责原子地判断并移除已过期的条目，返回 <= 0；
+     * 若条目在期间被刷新，则返回剩余毫秒数，任务按剩余时间重新挂入时间轮。
+     * 刷新条目因此只需更新它自己的时间戳，不必取消再重新调度。
+     */
+    void scheduleExpiry(long delayMs, @NonNull LongSupplier check) {
+        schedule(delayMs, new Runnable() {
+            @Override
+            public void run() {
+                long remaining = check.getAsLong();
+                if (remaining > 0) {
+                    schedule(remaining, this);
+                }
+            }
+        });
+    }
+
+    /**
+     * 推进到 nowMs，执行所有已到期的任务
+     */
+    void advance(long nowMs) {
+        List<Timeout> expired = null;
+        synchronized (this) {
+            long targetTick = (nowMs - startMs) / tickMs;
+            long ticks = Math.min(targetTick - currentTick, buckets.length);
+            for (long i = 1; i <= ticks; i++) {
+                int index = (int) ((currentTick + i) & mask);
+                Timeout timeout = buckets[index];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.deadlineTick <= targetTick) {
+                        unlink(timeout);
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(timeout);
+                    }
+                    timeout = next;
+                }
+            }
+            if (targetTick > currentTick) {
+                currentTick = targetTick;
+            }
+        }
+
+        if (expired != null) {
+            for (Timeout timeout : expired) {
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    Log.e(TAG, "Error in expiry task", e);
+                }
+            }
+        }
+    }
+
+    synchronized int size() {
+        int size = 0;
+        for (Timeout head : buckets) {
+            for (Timeout timeout = head; timeout != null; timeout = timeout.next) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private void insert(Timeout timeout, long delayMs) {
+        long ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        timeout.deadlineTick = currentTick + ticks;
+        int index = (int) (timeout.deadlineTick & mask);
+        timeout.bucket = index;
+        timeout.prev = null;
+        timeout.next = buckets[index];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[index] = timeout;
+    }
+
+    private synchronized boolean remove(Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.nearlink;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * mesh 核心与底层链路之间的接口：到邻居的点对点链路池。
+ *
+ * <ul>
+ *   <li>{@link BluetoothCommunicationService}：RFCOMM，地址是蓝牙 MAC 地址</li>
+ *   <li>{@link LoopbackTransport}：同一进程内的节点直接交换帧，用于在一个 JVM 中运行大量节点</li>
+ *   <li>{@link TcpTransport}：本机 TCP，经过真实的套接字、出站合并与帧解码</li>
+ * </ul>
+ * 链路上传输的是 {@link FrameCodec} 帧，接收方按帧回调，不会收到半个帧。
+ */
+public interface Transport {
+
+    /**
+     * 收到的完整帧（含 {@link FrameCodec} 头部与校验）。
+     * buffer 可能是链路复用的解码缓冲区，只在回调期间有效，需要保留时由调用方复制；
+     * 回调不能阻塞。
+     */
+    interface InboundFrameListener {
+        void onFrameReceived(@NonNull byte[] buffer, int frameOffset, int frameLength,
+                             @NonNull String sourceAddress);
+    }
+
+    /**
+     * 单条链路的建立与断开，在建立 / 断开链路的线程上回调
+     */
+    interface LinkListener {
+        void onLinkUp(@NonNull String address);
+
+        /**
+         * 链路断开、被淘汰，或连接尝试失败
+         */
+        void onLinkDown(@NonNull String address);
+    }
+
+    /**
+     * 开始接受连接
+     */
+    void start();
+
+    /**
+     * 断开所有链路并停止接受连接
+     */
+    void stop();
+
+    /**
+     * 异步建立到 address 的链路，结果通过 {@link LinkListener} 通知；已连接或正在连接时忽略
+     */
+    void connect(@NonNull String address);
+
+    void setInboundFrameListener(@Nullable InboundFrameListener listener);
+
+    void setLinkListener(@Nullable LinkListener listener);
+
+    /**
+     * 到 address 的链路，未连接时返回 null
+     */
+    @Nullable
+    Link getLink(@NonNull String address);
+
+    /**
+     * 当前所有链路的远端地址
+     */
+    @NonNull
+    List<String> getConnectedAddresses();
+
+    default boolean isConnectedTo(@NonNull String address) {
+        return getLink(address) != null;
+    }
+
+    /**
+     * 按帧的类别写往 address；没有到该地址的链路时返回 {@link WriteCoalescer.EnqueueStatus#CLOSED}
+     */
+    @NonNull
+    default WriteCoalescer.EnqueueStatus write(@NonNull String address, @NonNull byte[] frame,
+                                               @NonNull MessageScheduler.Lane lane) {
+        Link link = getLink(address);
+        return link != null ? link.write(frame, lane) : WriteCoalescer.EnqueueStatus.CLOSED;
+    }
+
+    /**
+     * 只写往 address；没有到该地址的链路时返回 false。
+     * urgent 为 true 的帧按聊天帧立即刷新，其余按位置帧合并
+     */
+    default boolean write(@NonNull String address, @NonNull byte[] frame, boolean urgent) {
+        return write(address, frame,
+                urgent ? MessageScheduler.Lane.CHAT : MessageScheduler.Lane.LOCATION)
+                != WriteCoalescer.EnqueueStatus.CLOSED;
+    }
+}
@@ -0,0 +1,527 @@
+package com.example.nearlink;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单条链路的出站批处理：在一个时间窗口内或达到字节预算前到达的帧
+ * 合并到一个池化的暂存缓冲区，用一次 {@link OutputStream#write} 写出。
+ *
+ * 窗口在 [minWindow, maxWindow] 之间自适应：批次只有一帧时说明流量稀疏，
+ * 等待只会增加延迟，窗口减半；批次合并了多帧时逐步放大窗口。
+ * 紧急帧与聊天帧会立即触发刷新：入队在同一把锁下唤醒写线程，
+ * 写线程取到这样的帧就结束等待，不必等完整个窗口。
+ * 写出失败时写线程停止，并通过 {@link FailureListener} 通知链路关闭。
+ *
+ * 出站队列有界，按帧的类别（{@link MessageScheduler.Lane}）处理队列满的情况：
+ * <ul>
+ *   <li>URGENT：总是入队，可以超出容量</li>
+ *   <li>LOCATION：丢弃队列中最旧的位置帧；队列中没有位置帧时丢弃新帧。从不阻塞</li>
+ *   <li>CHAT：先尝试丢弃最旧的位置帧，否则阻塞调用方至多 chatBlockTimeout，
+ *       以此把链路的拥塞反压给上游</li>
+ * </ul>
+ */
+public class WriteCoalescer {
+    private static final String TAG = "WriteCoalescer";
+
+    public static final long DEFAULT_MIN_WINDOW_MS = 5;
+    public static final long DEFAULT_MAX_WINDOW_MS = 20;
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final long DEFAULT_CHAT_BLOCK_TIMEOUT_MS = 100;
+
+    public enum EnqueueStatus {
+        /** 已入队 */
+        QUEUED,
+        /** 已入队，为此丢弃了队列中最旧的位置帧 */
+        QUEUED_DROPPED_OLDEST,
+        /** 队列满，新帧被丢弃 */
+        DROPPED,
+        /** 等待队列空位超时，新帧未入队 */
+        TIMED_OUT,
+        /** 链路已关闭 */
+        CLOSED;
+
+        public boolean isQueued() {
+            return this == QUEUED || this == QUEUED_DROPPED_OLDEST;
+        }
+    }
+
+    public interface FlushListener {
+        void onFlushed(int bytes, int frames);
+    }
+
+    public interface FailureListener {
+        /**
+         * 在写线程上调用；此后的入队都返回 CLOSED，链路应在这里关闭
+         */
+        void onWriteFailed(@NonNull IOException e);
+    }
+
+    private static final class Entry {
+        final byte[] frame;
+        final MessageScheduler.Lane lane;
+        final long enqueuedNanos;
+
+        Entry(byte[] frame, MessageScheduler.Lane lane, long enqueuedNanos) {
+            this.frame = frame;
+            this.lane = lane;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private final OutputStream outputStream;
+    private final BufferPool bufferPool;
+    private final FlushListener flushListener;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private Thread writerThread;
+    private volatile FailureListener failureListener;
+
+    private volatile long minWindowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_WINDOW_MS);
+    private volatile long maxWindowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_WINDOW_MS);
+    private volatile int byteBudget;
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private volatile long chatBlockTimeoutNanos =
+            TimeUnit.MILLISECONDS.toNanos(DEFAULT_CHAT_BLOCK_TIMEOUT_MS);
+    private long windowNanos = maxWindowNanos;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong urgentFlushes = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong timedOutFrames = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    // 每批帧数分布：1, 2-3, 4-7, 8+
+    private final AtomicLong[] batchSizeHistogram = {
+            new AtomicLong(), new AtomicLong(), new AtomicLong(), new AtomicLong()
+    };
+
+    public WriteCoalescer(@NonNull OutputStream outputStream, @NonNull BufferPool bufferPool,
+                          @NonNull FlushListener flushListener) {
+        this.outputStream = outputStream;
+        this.bufferPool = bufferPool;
+        this.flushListener = flushListener;
+        this.byteBudget = bufferPool.getBufferSize();
+    }
+
+    /**
+     * 设置合并窗口与每批的字节预算（不超过池缓冲区大小）
+     */
+    public void configure(long minWindowMs, long maxWindowMs, int byteBudget) {
+        this.minWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minWindowMs));
+        this.maxWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(minWindowMs, maxWindowMs));
+        this.byteBudget = Math.max(1, Math.min(byteBudget, bufferPool.getBufferSize()));
+    }
+
+    public void setFailureListener(@Nullable FailureListener listener) {
+        this.failureListener = listener;
+    }
+
+    /**
+     * 出站队列容量（帧数）与聊天帧等待空位的最长时间
+     */
+    public void configureQueue(int capacity, long chatBlockTimeoutMs) {
+        this.queueCapacity = Math.max(1, capacity);
+        this.chatBlockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, chatBlockTimeoutMs));
+    }
+
+    public synchronized void start(@NonNull String name) {
+        if (running.getAndSet(true)) {
+            return;
+        }
+        writerThread = new Thread(this::runWriter, name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public synchronized void stop() {
+        running.set(false);
+        if (writerThread != null) {
+            writerThread.interrupt();
+            writerThread = null;
+        }
+        lock.lock();
+        try {
+            pending.clear();
+            // 唤醒阻塞中的生产者，让它们看到 CLOSED
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按原有语义入队：urgent 为 true 的帧按聊天处理并立即刷新，其余按位置帧合并
+     */
+    @NonNull
+    public EnqueueStatus enqueue(@NonNull byte[] frame, boolean urgent) {
+        return enqueue(frame, urgent ? MessageScheduler.Lane.CHAT : MessageScheduler.Lane.LOCATION);
+    }
+
+    /**
+     * 入队一帧。只有 CHAT 帧会在队列满时阻塞，且至多 chatBlockTimeout
+     */
+    @NonNull
+    public EnqueueStatus enqueue(@NonNull byte[] frame, @NonNull MessageScheduler.Lane lane) {
+        if (!running.get()) {
+            return EnqueueStatus.CLOSED;
+        }
+        EnqueueStatus status;
+        lock.lock();
+        try {
+            status = offerLocked(new Entry(frame, lane, System.nanoTime()));
+        } finally {
+            lock.unlock();
+        }
+
+        switch (status) {
+            case DROPPED:
+                droppedFrames.incrementAndGet();
+                break;
+            case TIMED_OUT:
+                timedOutFrames.incrementAndGet();
+                break;
+            case QUEUED_DROPPED_OLDEST:
+                droppedFrames.incrementAndGet();
+                break;
+            default:
+                break;
+        }
+        return status;
+    }
+
+    private EnqueueStatus offerLocked(Entry entry) {
+        EnqueueStatus status = EnqueueStatus.QUEUED;
+        if (entry.lane != MessageScheduler.Lane.URGENT && pending.size() >= queueCapacity) {
+            if (removeOldestLocation()) {
+                status = EnqueueStatus.QUEUED_DROPPED_OLDEST;
+            } else if (entry.lane == MessageScheduler.Lane.LOCATION) {
+                return EnqueueStatus.DROPPED;
+            } else {
+                long start = System.nanoTime();
+                long remaining = chatBlockTimeoutNanos;
+                try {
+                    while (pending.size() >= queueCapacity && running.get() && remaining > 0) {
+                        remaining = notFull.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    blockedNanos.addAndGet(System.nanoTime() - start);
+                }
+                if (!running.get()) {
+                    return EnqueueStatus.CLOSED;
+                }
+                if (pending.size() >= queueCapacity) {
+                    return EnqueueStatus.TIMED_OUT;
+                }
+            }
+        }
+        pending.offer(entry);
+        int depth = pending.size();
+        if (depth > maxQueueDepth.get()) {
+            maxQueueDepth.set(depth);
+        }
+        // 在窗口内等待的写线程也会被唤醒，取到紧急帧或聊天帧时立即刷新
+        notEmpty.signal();
+        return status;
+    }
+
+    private boolean removeOldestLocation() {
+        Iterator<Entry> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().lane == MessageScheduler.Lane.LOCATION) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---- 写线程一侧 ----
+
+    private Entry take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending.isEmpty()) {
+                notEmpty.await();
+            }
+            return removeFirstLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry poll(long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (pending.isEmpty()) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return removeFirstLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 队首的帧能放进剩余的 room 字节时取出，否则返回 null
+     */
+    private Entry pollIfFits(int room) {
+        lock.lock();
+        try {
+            Entry first = pending.peek();
+            return first != null && first.frame.length <= room ? removeFirstLocked() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry removeFirstLocked() {
+        Entry entry = pending.poll();
+        notFull.signal();
+        return entry;
+    }
+
+    private void runWriter() {
+        byte[] staging = bufferPool.acquire();
+        try {
+            while (running.get()) {
+                Entry first = take();
+                writeBatch(first, staging);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Log.e(TAG, "Exception during write", e);
+            running.set(false);
+            lock.lock();
+            try {
+                pending.clear();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            FailureListener listener = failureListener;
+            if (listener != null) {
+                listener.onWriteFailed(e);
+            }
+        } finally {
+            bufferPool.release(staging);
+        }
+    }
+
+    private void writeBatch(Entry first, byte[] staging) throws IOException, InterruptedException {
+        int budget = byteBudget;
+        if (first.frame.length >= budget) {
+            // 大帧不经过暂存缓冲区
+            flush(first.frame, first.frame.length, 1);
+            recordLatency(1, first.enqueuedNanos, first.enqueuedNanos);
+            return;
+        }
+
+        System.arraycopy(first.frame, 0, staging, 0, first.frame.length);
+        int used = first.frame.length;
+        int count = 1;
+        long oldest = first.enqueuedNanos;
+        long enqueuedSum = first.enqueuedNanos;
+        long deadline = System.nanoTime() + windowNanos;
+        boolean flushNow = isFlushTrigger(first);
+
+        while (!flushNow) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            Entry next = poll(remaining);
+            if (next == null) {
+                break;
+            }
+            if (used + next.frame.length > budget) {
+                flush(staging, used, count);
+                recordLatency(count, oldest, enqueuedSum);
+                if (next.frame.length >= budget) {
+                    flush(next.frame, next.frame.length, 1);
+                    recordLatency(1, next.enqueuedNanos, next.enqueuedNanos);
+                    used = 0;
+                    count = 0;
+                    flushNow = isFlushTrigger(next);
+                    break;
+                }
+                used = 0;
+                count = 0;
+                oldest = next.enqueuedNanos;
+                enqueuedSum = 0;
+            }
+            System.arraycopy(next.frame, 0, staging, used, next.frame.length);
+            used += next.frame.length;
+            count++;
+            enqueuedSum += next.enqueuedNanos;
+            flushNow = isFlushTrigger(next);
+        }
+
+        if (flushNow) {
+            urgentFlushes.incrementAndGet();
+            // 已经到达的帧一并带上
+            Entry next;
+            while ((next = pollIfFits(budget - used)) != null) {
+                if (count == 0) {
+                    oldest = next.enqueuedNanos;
+                }
+                System.arraycopy(next.frame, 0, staging, used, next.frame.length);
+                used += next.frame.length;
+                count++;
+                enqueuedSum += next.enqueuedNanos;
+            }
+        }
+
+        if (count > 0) {
+            flush(staging, used, count);
+            recordLatency(count, oldest, enqueuedSum);
+        }
+        adaptWindow(count);
+    }
+
+    private static boolean isFlushTrigger(Entry entry) {
+        return entry.lane != MessageScheduler.Lane.LOCATION;
+    }
+
+    /**
+     * 记录一批帧从入队到写出的排队延迟
+     */
+    private void recordLatency(int count, long oldestEnqueuedNanos, long enqueuedSum) {
+        long now = System.nanoTime();
+        latencyNanos.addAndGet(count * now - enqueuedSum);
+        long worst = now - oldestEnqueuedNanos;
+        long previous;
+        while (worst > (previous = maxLatencyNanos.get())
+                && !maxLatencyNanos.compareAndSet(previous, worst)) {
+            // retry
+        }
+    }
+
+    private void flush(byte[] buffer, int length, int frameCount) throws IOException {
+        outputStream.write(buffer, 0, length);
+        outputStream.flush();
+
+        batches.incrementAndGet();
+        frames.addAndGet(frameCount);
+        bytes.addAndGet(length);
+        int bucket = frameCount <= 1 ? 0 : frameCount <= 3 ? 1 : frameCount <= 7 ? 2 : 3;
+        batchSizeHistogram[bucket].incrementAndGet();
+        flushListener.onFlushed(length, frameCount);
+    }
+
+    private void adaptWindow(int lastBatchFrames) {
+        if (lastBatchFrames <= 1) {
+            windowNanos = Math.max(minWindowNanos, windowNanos / 2);
+        } else {
+            windowNanos = Math.min(maxWindowNanos, windowNanos + minWindowNanos);
+        }
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    public long getByteCount() {
+        return bytes.get();
+    }
+
+    public long getUrgentFlushCount() {
+        return urgentFlushes.get();
+    }
+
+    public int getQueuedFrames() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 出站队列的最大深度（高水位）
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * 因队列满而丢弃的帧（包括为新帧让位的旧位置帧）
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * 聊天帧等待队列空位超时的次数
+     */
+    public long getTimedOutFrameCount() {
+        return timedOutFrames.get();
+    }
+
+    /**
+     * 生产者因反压累计阻塞的时间（毫秒）
+     */
+    public long getBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+    }
+
+    /**
+     * 已写出的帧从入队到写出的平均排队延迟（毫秒）
+     */
+    public double getAverageLatencyMillis() {
+        long frameCount = frames.get();
+        return frameCount == 0 ? 0 : latencyNanos.get() / 1e6 / frameCount;
+    }
+
+    public long getMaxLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    /**
+     * 每批帧数分布：[1, 2-3, 4-7, 8+]
+     */
+    @NonNull
+    public long[] getBatchSizeHistogram() {
+        long[] histogram = new long[batchSizeHistogram.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = batchSizeHistogram[i].get();
+        }
+        return histogram;
+    }
+
+    public double getAverageFramesPerBatch() {
+        long batchCount = batches.get();
+        return batchCount == 0 ? 0 : (double) frames.get() / batchCount;
+    }
+}
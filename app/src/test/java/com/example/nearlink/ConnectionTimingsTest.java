@@ -0,0 +1,22 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConnectionTimingsTest {
+
+    @Test
+    public void sdpEstimateIsDifferenceOfConnectPaths() {
+        ConnectionTimings timings = new ConnectionTimings();
+        timings.record(ConnectionTimings.Stage.SDP_AND_CONNECT, 1500);
+        timings.record(ConnectionTimings.Stage.SDP_AND_CONNECT, 2500);
+        assertEquals(0, timings.getEstimatedSdpMillis(), 0);
+
+        timings.record(ConnectionTimings.Stage.CONNECT, 800);
+        assertEquals(2000, timings.getAverageMillis(ConnectionTimings.Stage.SDP_AND_CONNECT), 1e-9);
+        assertEquals(2500, timings.getMaxMillis(ConnectionTimings.Stage.SDP_AND_CONNECT));
+        assertEquals(1200, timings.getEstimatedSdpMillis(), 1e-9);
+        assertEquals(0, timings.getCount(ConnectionTimings.Stage.HANDSHAKE));
+    }
+}
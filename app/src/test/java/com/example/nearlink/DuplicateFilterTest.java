@@ -0,0 +1,74 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DuplicateFilterTest {
+    private final MeshId origin = MeshId.random();
+    private final TimingWheel wheel = new TimingWheel(100, 64, 0);
+
+    private DuplicateFilter newFilter() {
+        return new DuplicateFilter(wheel, 1000);
+    }
+
+    @Test
+    public void rejectsRepeatsWithinWindow() {
+        DuplicateFilter filter = newFilter();
+        assertTrue(filter.markSeen(origin, 10, 0));
+        assertTrue(filter.markSeen(origin, 12, 0));
+        assertTrue(filter.markSeen(origin, 11, 0));
+        assertFalse(filter.markSeen(origin, 10, 0));
+        assertFalse(filter.markSeen(origin, 12, 0));
+        assertTrue(filter.isDuplicate(origin, 11));
+        assertFalse(filter.isDuplicate(origin, 13));
+        assertFalse(filter.isDuplicate(MeshId.random(), 10));
+    }
+
+    @Test
+    public void sequencesOlderThanWindowAreDuplicates() {
+        DuplicateFilter filter = newFilter();
+        assertTrue(filter.markSeen(origin, 1000, 0));
+        assertTrue(filter.markSeen(origin, 1000 - DuplicateFilter.WINDOW_SIZE + 1, 0));
+        assertFalse(filter.markSeen(origin, 1000 - DuplicateFilter.WINDOW_SIZE, 0));
+    }
+
+    @Test
+    public void wrapsAroundAndForgets() {
+        DuplicateFilter filter = newFilter();
+        assertTrue(filter.markSeen(origin, Integer.MAX_VALUE, 0));
+        assertTrue(filter.markSeen(origin, Integer.MIN_VALUE, 0));
+        assertFalse(filter.markSeen(origin, Integer.MAX_VALUE, 0));
+
+        filter.forget(origin, Integer.MAX_VALUE);
+        assertTrue(filter.markSeen(origin, Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void idleOriginsExpire() {
+        DuplicateFilter filter = newFilter();
+        filter.markSeen(origin, 1, 0);
+        filter.markSeen(MeshId.random(), 1, System.currentTimeMillis());
+        wheel.advance(1000);
+        assertEquals(1, filter.getOriginCount());
+        // 仍然活跃的发送者按剩余时间重新挂入时间轮
+        assertEquals(1, wheel.size());
+        assertFalse(filter.isDuplicate(origin, 1));
+    }
+
+    @Test
+    public void retransmittedIsTrackedSeparatelyFromSeen() {
+        DuplicateFilter filter = newFilter();
+        filter.markSeen(origin, 5, 0);
+        assertFalse(filter.isRetransmitted(origin, 5));
+        assertTrue(filter.markRetransmitted(origin, 5));
+        assertFalse(filter.markRetransmitted(origin, 5));
+        assertTrue(filter.isRetransmitted(origin, 5));
+
+        // 窗口前移后标记跟着移动
+        filter.markSeen(origin, 8, 0);
+        assertTrue(filter.isRetransmitted(origin, 5));
+        assertFalse(filter.isRetransmitted(origin, 8));
+        assertTrue(filter.isRetransmitted(origin, 8 - DuplicateFilter.WINDOW_SIZE));
+    }
+}
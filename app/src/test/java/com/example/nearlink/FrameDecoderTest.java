@@ -0,0 +1,139 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameDecoderTest {
+    private final List<byte[]> frames = new ArrayList<>();
+    private final FrameDecoder.FrameListener collector =
+            (buffer, offset, length) -> frames.add(Arrays.copyOfRange(buffer, offset, offset + length));
+
+    private static byte[] payload(int size, int seed) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (seed + i * 31);
+        }
+        return payload;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void multipleFramesInOneRead() {
+        byte[] a = payload(10, 1);
+        byte[] b = payload(3000, 2);
+        byte[] stream = concat(FrameCodec.encode(a, 0, a.length), FrameCodec.encode(b, 0, b.length));
+
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.feed(stream, 0, stream.length, collector);
+
+        assertEquals(2, frames.size());
+        assertArrayEquals(a, frames.get(0));
+        assertArrayEquals(b, frames.get(1));
+    }
+
+    @Test
+    public void frameSplitAcrossReads() {
+        byte[] a = payload(5000, 3);
+        byte[] stream = FrameCodec.encode(a, 0, a.length);
+
+        FrameDecoder decoder = new FrameDecoder();
+        for (int i = 0; i < stream.length; i++) {
+            decoder.feed(stream, i, 1, collector);
+            assertEquals(i == stream.length - 1 ? 1 : 0, frames.size());
+        }
+        assertArrayEquals(a, frames.get(0));
+    }
+
+    @Test
+    public void resynchronizesAfterGarbageAndCorruption() {
+        byte[] a = payload(20, 4);
+        byte[] b = payload(40, 5);
+        byte[] c = payload(60, 6);
+        byte[] corrupted = FrameCodec.encode(b, 0, b.length);
+        corrupted[FrameCodec.HEADER_SIZE + 7] ^= 0x10;
+        byte[] badLength = FrameCodec.encode(c, 0, c.length);
+        badLength[2] = (byte) 0xFF;
+
+        byte[] stream = concat(
+                new byte[]{1, 2, 'N', 3},
+                FrameCodec.encode(a, 0, a.length),
+                corrupted,
+                badLength,
+                FrameCodec.encode(c, 0, c.length));
+
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.feed(stream, 0, stream.length, collector);
+
+        assertEquals(2, frames.size());
+        assertArrayEquals(a, frames.get(0));
+        assertArrayEquals(c, frames.get(1));
+        assertEquals(1, decoder.getChecksumErrors());
+    }
+
+    @Test
+    public void encodedMessageRoundTrip() throws Exception {
+        Message message = new Message("frame me", MeshId.random(), null);
+        byte[] frame = FrameCodec.encodeMessage(message);
+
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.feed(frame, 0, frame.length, collector);
+
+        assertEquals(1, frames.size());
+        assertEquals(message.getSequence(), MessageCodec.decode(frames.get(0)).getSequence());
+    }
+
+    @Test
+    public void relayPatchesHopCountWithoutReencoding() throws Exception {
+        Message original = new Message("relay", MeshId.random(), null);
+        byte[] sent = original.getFrame();
+        assertSame(sent, original.getFrame());
+
+        FrameDecoder decoder = new FrameDecoder();
+        List<Message> received = new ArrayList<>();
+        decoder.feed(sent, 0, sent.length,
+                (buffer, offset, length) -> {
+                    try {
+                        received.add(FrameCodec.decodeMessage(buffer, offset, length));
+                    } catch (java.io.IOException e) {
+                        throw new AssertionError(e);
+                    }
+                });
+
+        Message relayed = received.get(0);
+        byte[] frame = relayed.getFrame();
+        relayed.incrementHopCount();
+        assertSame(frame, relayed.getFrame());
+
+        frames.clear();
+        decoder.feed(frame, 0, frame.length, collector);
+        assertEquals(1, frames.size());
+        assertEquals(1, MessageCodec.decode(frames.get(0)).getHopCount());
+    }
+
+    @Test
+    public void undoneHopIncrementRestoresFrame() throws Exception {
+        Message message = new Message("relay", MeshId.random(), null);
+        MeshFrame frame = MeshFrame.parse(message.getFrame().clone(), "AA:BB");
+        byte[] before = frame.getFrame().clone();
+
+        frame.incrementHopCount();
+        assertEquals(1, frame.getHopCount());
+        frame.decrementHopCount();
+
+        assertEquals(0, frame.getHopCount());
+        assertArrayEquals(before, frame.getFrame());
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GeoRouterTest {
+    private static final GeoPoint TARGET = point(10, 0);
+
+    /**
+     * 东京附近的平面网格，一格约 10 米
+     */
+    private static GeoPoint point(double east, double north) {
+        return new GeoPoint(350000000 + (int) (north * 1000), 1390000000 + (int) (east * 1000));
+    }
+
+    private static GeoRouter.Neighbour neighbour(String address, double east, double north) {
+        return new GeoRouter.Neighbour(address, point(east, north));
+    }
+
+    @Test
+    public void greedyPicksNeighbourClosestToTarget() {
+        GeoRouter.Decision decision = GeoRouter.route(point(0, 0), TARGET,
+                GeoRouter.MODE_GREEDY, null, null,
+                Arrays.asList(neighbour("A", 3, 0), neighbour("B", 2, 2), neighbour("C", -1, 0)));
+        assertEquals("A", decision.nextHop);
+        assertEquals(GeoRouter.MODE_GREEDY, decision.mode);
+        assertNull(decision.entry);
+    }
+
+    @Test
+    public void voidEntersPerimeterModeWithRightHandRule() {
+        GeoPoint self = point(0, 0);
+        GeoRouter.Decision decision = GeoRouter.route(self, TARGET, GeoRouter.MODE_GREEDY,
+                null, null, Arrays.asList(neighbour("A", -2, 2), neighbour("B", -2, -2)));
+        assertEquals("A", decision.nextHop);
+        assertEquals(GeoRouter.MODE_PERIMETER, decision.mode);
+        assertEquals(self, decision.entry);
+    }
+
+    @Test
+    public void perimeterContinuesCounterClockwiseFromIncomingEdge() {
+        GeoRouter.Neighbour previous = neighbour("O", 0, 0);
+        GeoRouter.Decision decision = GeoRouter.route(point(-2, 2), TARGET,
+                GeoRouter.MODE_PERIMETER, point(0, 0), previous,
+                Arrays.asList(previous, neighbour("C", -1, 5)));
+        assertEquals("C", decision.nextHop);
+        assertEquals(GeoRouter.MODE_PERIMETER, decision.mode);
+    }
+
+    @Test
+    public void perimeterReturnsToGreedyOnceCloserThanEntry() {
+        GeoRouter.Decision decision = GeoRouter.route(point(5, 5), TARGET,
+                GeoRouter.MODE_PERIMETER, point(0, 0), neighbour("C", 3, 6),
+                Arrays.asList(neighbour("C", 3, 6), neighbour("D", 8, 1)));
+        assertEquals("D", decision.nextHop);
+        assertEquals(GeoRouter.MODE_GREEDY, decision.mode);
+    }
+
+    @Test
+    public void tourBackToEntryMeansArrived() {
+        GeoPoint self = point(0, 0);
+        List<GeoRouter.Neighbour> neighbours = Collections.singletonList(neighbour("B", -2, -2));
+        assertSame(GeoRouter.ARRIVED, GeoRouter.route(self, TARGET, GeoRouter.MODE_PERIMETER,
+                self, neighbours.get(0), neighbours));
+        assertNull(GeoRouter.route(self, TARGET, GeoRouter.MODE_GREEDY, null, null,
+                Collections.<GeoRouter.Neighbour>emptyList()));
+    }
+
+    @Test
+    public void entryMatchesWithinToleranceAfterMoving() {
+        // 进入周边模式之后本节点移动了约 3 米
+        GeoPoint entry = point(0, 0);
+        GeoRouter.Neighbour previous = neighbour("B", -2, -2);
+        assertSame(GeoRouter.ARRIVED, GeoRouter.route(point(0, 0.3), TARGET,
+                GeoRouter.MODE_PERIMETER, entry, previous, Collections.singletonList(previous)));
+
+        // 进入点旁边的邻居不算回到进入点：进入点的节点本身更近
+        GeoRouter.Neighbour entryNode = neighbour("E", 0, 0);
+        GeoRouter.Decision decision = GeoRouter.route(point(-0.5, 0), TARGET,
+                GeoRouter.MODE_PERIMETER, entry, previous, Arrays.asList(previous, entryNode));
+        assertNotSame(GeoRouter.ARRIVED, decision);
+        assertNotNull(decision.nextHop);
+
+        // 超出容差的节点照常绕行
+        assertNotSame(GeoRouter.ARRIVED, GeoRouter.route(point(-1.5, 0), TARGET,
+                GeoRouter.MODE_PERIMETER, entry, previous, Collections.singletonList(previous)));
+    }
+
+    @Test
+    public void gabrielGraphDropsEdgesWithWitness() {
+        GeoRouter.Neighbour far = neighbour("V", 4, 0);
+        GeoRouter.Neighbour witness = neighbour("W", 2, 0.5);
+        List<GeoRouter.Neighbour> planar = GeoRouter.planarize(point(0, 0),
+                Arrays.asList(far, witness));
+        assertEquals(Collections.singletonList(witness), planar);
+    }
+
+    @Test
+    public void geoSectionRoundTripsAndIsRewrittenInPlace() throws Exception {
+        Message message = new Message("here?", MeshId.random(), null);
+        message.setGeoTarget(TARGET);
+        byte[] encoded = MessageCodec.encode(message);
+        assertEquals(MessageCodec.encodedLength(message), encoded.length);
+        assertEquals(TARGET, MessageCodec.decode(encoded).getGeoTarget());
+
+        byte[] bytes = message.getFrame();
+        MeshFrame frame = MeshFrame.parse(bytes, "AA:BB");
+        assertEquals(TARGET, frame.getGeoTarget());
+        assertEquals(GeoRouter.MODE_GREEDY, frame.getGeoMode());
+        assertFalse(MeshFrame.isPerimeterMode(bytes, 0, bytes.length));
+
+        frame.setGeoState(GeoRouter.MODE_PERIMETER, point(1, 1));
+        assertTrue(MeshFrame.isPerimeterMode(bytes, 0, bytes.length));
+        assertEquals(point(1, 1), frame.getGeoEntry());
+        assertEquals("here?", MessageCodec.decode(bytes, FrameCodec.HEADER_SIZE,
+                bytes.length - FrameCodec.OVERHEAD).getContent());
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GossipRelayPolicyTest {
+    private final TimingWheel wheel = new TimingWheel(10, 64, 0);
+    private final GossipRelayPolicy policy = new GossipRelayPolicy(wheel, new Random(1));
+    private final List<MeshFrame> forwarded = new ArrayList<>();
+    private final List<MeshFrame> deferred = new ArrayList<>();
+
+    private static MeshFrame receivedFrame(int hopCount) throws Exception {
+        Message message = new Message("gossip", MeshId.random(), null);
+        byte[] frame = message.getFrame().clone();
+        frame[FrameCodec.HEADER_SIZE + MessageCodec.OFFSET_HOP_COUNT] = (byte) hopCount;
+        return MeshFrame.parse(frame, "AA:BB");
+    }
+
+    @Test
+    public void adaptiveProbabilityFallsWithDensity() {
+        assertEquals(1.0, policy.getForwardProbability(3), 0);
+        assertEquals(0.5, policy.getForwardProbability(8), 1e-9);
+        assertEquals(GossipRelayPolicy.MIN_ADAPTIVE_PROBABILITY,
+                policy.getForwardProbability(100), 0);
+    }
+
+    @Test
+    public void firstHopAndLocalFramesAreForwardedImmediately() throws Exception {
+        policy.submit(receivedFrame(0), 50, forwarded::add, deferred::add);
+        policy.submit(MeshFrame.of(new Message("local", MeshId.random(), null)), 50,
+                forwarded::add, deferred::add);
+        assertEquals(2, forwarded.size());
+        assertTrue(deferred.isEmpty());
+    }
+
+    @Test
+    public void duplicatesHeardDuringBackoffSuppressRelay() throws Exception {
+        policy.setSuppression(2, 100);
+        MeshFrame frame = receivedFrame(3);
+        policy.submit(frame, 2, forwarded::add, deferred::add);
+        assertEquals(1, policy.getPendingCount());
+
+        policy.onDuplicateHeard(frame.getSenderId(), frame.getSequence());
+        policy.onDuplicateHeard(frame.getSenderId(), frame.getSequence());
+        wheel.advance(200);
+
+        assertTrue(deferred.isEmpty());
+        assertEquals(1, policy.getSuppressedCount());
+        assertEquals(0, policy.getPendingCount());
+    }
+
+    @Test
+    public void sparseNeighbourhoodRelaysAfterBackoff() throws Exception {
+        MeshFrame frame = receivedFrame(3);
+        policy.submit(frame, 2, forwarded::add, deferred::add);
+        wheel.advance(1000);
+        // 退避后的决定只交给 deferredForwarder，不在时间轮线程上直接转发
+        assertTrue(forwarded.isEmpty());
+        assertEquals(1, deferred.size());
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HopLimitPolicyTest {
+    @Test
+    public void defaultsToMaxHopsWithoutObservations() {
+        assertEquals(Message.MAX_HOPS,
+                HopLimitPolicy.hopLimitFor(MessageScheduler.Lane.CHAT, 0, false));
+    }
+
+    @Test
+    public void marginDependsOnMessageClass() {
+        assertEquals(3 + HopLimitPolicy.URGENT_MARGIN,
+                HopLimitPolicy.hopLimitFor(MessageScheduler.Lane.URGENT, 3, false));
+        assertEquals(3 + HopLimitPolicy.CHAT_MARGIN,
+                HopLimitPolicy.hopLimitFor(MessageScheduler.Lane.CHAT, 3, false));
+        assertEquals(3 + HopLimitPolicy.LOCATION_MARGIN,
+                HopLimitPolicy.hopLimitFor(MessageScheduler.Lane.LOCATION, 3, false));
+        assertEquals(6 + HopLimitPolicy.CHAT_MARGIN,
+                HopLimitPolicy.hopLimitFor(MessageScheduler.Lane.CHAT, 3, true));
+    }
+
+    @Test
+    public void clampedToBounds() {
+        assertEquals(HopLimitPolicy.MIN_HOP_LIMIT,
+                HopLimitPolicy.hopLimitFor(MessageScheduler.Lane.LOCATION, 1, false));
+        assertEquals(HopLimitPolicy.MAX_HOP_LIMIT,
+                HopLimitPolicy.hopLimitFor(MessageScheduler.Lane.URGENT, 40, false));
+    }
+
+    @Test
+    public void radiusComesFromRoutingTable() {
+        RoutingTable table = new RoutingTable(new TimingWheel(100, 64, 0), 60000);
+        assertEquals(0, table.getMaxHops());
+        table.learn(MeshId.random(), "A", 1, 0);
+        table.learn(MeshId.random(), "B", 4, 0);
+        assertEquals(4, table.getMaxHops());
+    }
+
+    @Test
+    public void setHopLimitRewritesEncodedFrame() throws Exception {
+        Message message = new Message("hi", MeshId.random(), null);
+        byte[] frame = message.getFrame();
+        message.setHopLimit(5);
+        Message decoded = MessageCodec.decode(frame, FrameCodec.HEADER_SIZE,
+                frame.length - FrameCodec.OVERHEAD);
+        assertEquals(5, decoded.getHopLimit());
+    }
+}
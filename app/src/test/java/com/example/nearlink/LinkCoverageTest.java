@@ -0,0 +1,74 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LinkCoverageTest {
+    private final MeshId origin = MeshId.random();
+    private final TimingWheel wheel = new TimingWheel(100, 64, 0);
+
+    @Test
+    public void skipsLinksThatAlreadyHaveTheMessage() {
+        LinkCoverage coverage = new LinkCoverage(wheel, 1000);
+        coverage.assignLink("A");
+        coverage.assignLink("B");
+        coverage.assignLink("C");
+        coverage.markReceivedFrom(origin, 7, "A");
+        coverage.markReceivedFrom(origin, 7, "B");
+
+        assertFalse(coverage.markRelayedTo(origin, 7, "A"));
+        assertFalse(coverage.markRelayedTo(origin, 7, "B"));
+        assertTrue(coverage.markRelayedTo(origin, 7, "C"));
+        assertFalse(coverage.markRelayedTo(origin, 7, "C"));
+        assertTrue(coverage.markRelayedTo(origin, 8, "A"));
+        assertEquals(3, coverage.coverageOf(origin, 7));
+    }
+
+    @Test
+    public void masksExpireAndIndicesAreQuarantined() {
+        LinkCoverage coverage = new LinkCoverage(wheel, 1000);
+        int index = coverage.assignLink("A");
+        coverage.markReceivedFrom(origin, 1, "A");
+        coverage.releaseLink("A");
+
+        assertEquals(-1, coverage.indexOf("A"));
+        assertNotEquals(index, coverage.assignLink("B"));
+        wheel.advance(1100);
+        assertEquals(0, coverage.size());
+        assertEquals(index, coverage.assignLink("C"));
+    }
+
+    @Test
+    public void unlinkedAddressesTakeNoIndex() {
+        LinkCoverage coverage = new LinkCoverage(wheel, 1000);
+        // 只被发现的设备：不分配编号，也不占用掩码里的位
+        assertTrue(coverage.markRelayedTo(origin, 1, "discovered"));
+        assertEquals(-1, coverage.indexOf("discovered"));
+        assertEquals(0, coverage.coverageOf(origin, 1));
+    }
+
+    @Test
+    public void untrackedLinksWhenIndicesRunOut() {
+        LinkCoverage coverage = new LinkCoverage(wheel, 1000);
+        for (int i = 0; i < LinkCoverage.MAX_LINKS; i++) {
+            assertEquals(i, coverage.assignLink("link" + i));
+        }
+        // 编号用尽：新链路不跟踪，每次都照常转发
+        assertEquals(-1, coverage.assignLink("extra"));
+        coverage.markReceivedFrom(origin, 1, "extra");
+        assertTrue(coverage.markRelayedTo(origin, 1, "extra"));
+        assertTrue(coverage.markRelayedTo(origin, 1, "extra"));
+        // 已跟踪的链路不受影响
+        assertTrue(coverage.markRelayedTo(origin, 1, "link0"));
+        assertFalse(coverage.markRelayedTo(origin, 1, "link0"));
+
+        // 断开的链路隔离期过后归还编号，重新建立的链路可以再分配
+        coverage.releaseLink("link5");
+        coverage.releaseLink("extra");
+        wheel.advance(1100);
+        assertEquals(5, coverage.assignLink("extra"));
+        assertTrue(coverage.markRelayedTo(origin, 2, "extra"));
+        assertFalse(coverage.markRelayedTo(origin, 2, "extra"));
+    }
+}
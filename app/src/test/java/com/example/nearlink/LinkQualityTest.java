@@ -0,0 +1,31 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LinkQualityTest {
+    @Test
+    public void busyLinkOutscoresIdleLink() {
+        LinkQuality busy = new LinkQuality(0);
+        LinkQuality idle = new LinkQuality(0);
+        for (long t = 0; t < 10000; t += 500) {
+            busy.onFrameReceived(t);
+        }
+        idle.onFrameReceived(0);
+        assertTrue(busy.score(10000, 0) > idle.score(10000, 0));
+        assertEquals(0, new LinkQuality(0).score(10000, 0), 0);
+    }
+
+    @Test
+    public void scoreDecaysWhileIdleAndWithBacklog() {
+        LinkQuality quality = new LinkQuality(0);
+        for (long t = 0; t < 5000; t += 100) {
+            quality.onFrameReceived(t);
+        }
+        double fresh = quality.score(5000, 0);
+        assertTrue(quality.score(5000 + LinkQuality.RATE_TIME_CONSTANT_MS, 0) < fresh / 2);
+        assertEquals(fresh / 2, quality.score(5000, LinkQuality.BACKLOG_HALVING_FRAMES), 1e-9);
+        assertEquals(5000, quality.getAge(5000));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LoopbackTransportTest {
+
+    private static final class Recorder implements Transport.LinkListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onLinkUp(String address) {
+            events.add("up " + address);
+        }
+
+        @Override
+        public void onLinkDown(String address) {
+            events.add("down " + address);
+        }
+    }
+
+    @Test
+    public void connectDeliversFramesBothWays() {
+        LoopbackTransport.Network network = new LoopbackTransport.Network();
+        LoopbackTransport a = network.createTransport("A");
+        LoopbackTransport b = network.createTransport("B");
+        Recorder aEvents = new Recorder();
+        Recorder bEvents = new Recorder();
+        a.setLinkListener(aEvents);
+        b.setLinkListener(bEvents);
+        List<String> received = new ArrayList<>();
+        b.setInboundFrameListener((buffer, offset, length, source) ->
+                received.add(source + Arrays.toString(Arrays.copyOfRange(buffer, offset, offset + length))));
+        a.start();
+        b.start();
+
+        a.connect("B");
+        assertEquals(Arrays.asList("up B"), aEvents.events);
+        assertEquals(Arrays.asList("up A"), bEvents.events);
+        assertTrue(b.isConnectedTo("A"));
+
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED,
+                a.write("B", new byte[]{1, 2}, MessageScheduler.Lane.CHAT));
+        assertEquals(Arrays.asList("A[1, 2]"), received);
+        assertEquals(1, a.getFramesSent());
+
+        // 重复连接被忽略
+        b.connect("A");
+        assertEquals(1, aEvents.events.size());
+    }
+
+    @Test
+    public void disconnectNotifiesBothEnds() {
+        LoopbackTransport.Network network = new LoopbackTransport.Network();
+        LoopbackTransport a = network.createTransport("A");
+        LoopbackTransport b = network.createTransport("B");
+        Recorder bEvents = new Recorder();
+        b.setLinkListener(bEvents);
+        a.start();
+        b.start();
+        a.connect("B");
+        Link link = a.getLink("B");
+        assertNotNull(link);
+
+        a.disconnect("B");
+        assertEquals(Arrays.asList("up A", "down A"), bEvents.events);
+        assertEquals(0, b.getConnectedAddresses().size());
+        assertEquals(WriteCoalescer.EnqueueStatus.CLOSED,
+                link.write(new byte[]{1}, MessageScheduler.Lane.CHAT));
+        assertFalse(a.write("B", new byte[]{1}, true));
+    }
+
+    @Test
+    public void connectToUnknownOrStoppedPeerFails() {
+        LoopbackTransport.Network network = new LoopbackTransport.Network();
+        LoopbackTransport a = network.createTransport("A");
+        network.createTransport("B");
+        Recorder aEvents = new Recorder();
+        a.setLinkListener(aEvents);
+        a.start();
+
+        a.connect("B");
+        a.connect("C");
+        assertEquals(Arrays.asList("down B", "down C"), aEvents.events);
+        assertEquals(2, network.size());
+    }
+}
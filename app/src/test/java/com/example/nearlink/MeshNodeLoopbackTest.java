@@ -0,0 +1,233 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多个 {@link MeshNode} 经 {@link LoopbackTransport} 互连，端到端检查泛洪、单播与去重
+ */
+public class MeshNodeLoopbackTest {
+    private static final long TIMEOUT_MS = 5000;
+    // 大于 gossip 的最大退避，晚到的副本在此期间都会出现
+    private static final long SETTLE_MS = 500;
+
+    private final LoopbackTransport.Network network = new LoopbackTransport.Network();
+    private final List<Node> nodes = new ArrayList<>();
+
+    private static final class Node {
+        final LoopbackTransport transport;
+        final MeshNode meshNode;
+        final List<Message> received = new ArrayList<>();
+
+        Node(LoopbackTransport transport, MeshId nodeId) {
+            this.transport = transport;
+            this.meshNode = new MeshNode(nodeId, transport);
+            meshNode.setMessageListener(message -> {
+                // 本地发送的消息也会回调，只记录别人发来的
+                if (!meshNode.getNodeId().equals(message.getSenderId())) {
+                    synchronized (received) {
+                        received.add(message);
+                    }
+                }
+            });
+            meshNode.start();
+        }
+
+        int receivedCount(String content) {
+            synchronized (received) {
+                int count = 0;
+                for (Message message : received) {
+                    if (content.equals(message.getContent())) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        }
+    }
+
+    private Node node(String address) {
+        return node(address, MeshId.random());
+    }
+
+    private Node node(String address, MeshId nodeId) {
+        Node node = new Node(network.createTransport(address), nodeId);
+        nodes.add(node);
+        return node;
+    }
+
+    private static void link(Node a, Node b) {
+        a.transport.connect(b.transport.getAddress());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void closeAll() {
+        for (Node node : nodes) {
+            node.meshNode.close();
+        }
+    }
+
+    @Test
+    public void broadcastFloodsAlongLine() throws Exception {
+        try {
+            Node[] line = new Node[5];
+            for (int i = 0; i < line.length; i++) {
+                line[i] = node("N" + i);
+                if (i > 0) {
+                    link(line[i], line[i - 1]);
+                }
+            }
+
+            Node sender = line[0];
+            assertTrue(sender.meshNode.broadcastMessage(
+                    new Message("flood", sender.meshNode.getNodeId(), null)));
+
+            await(() -> line[line.length - 1].receivedCount("flood") > 0);
+            Thread.sleep(SETTLE_MS);
+            for (int i = 1; i < line.length; i++) {
+                assertEquals("N" + i, 1, line[i].receivedCount("flood"));
+            }
+            assertEquals(0, sender.receivedCount("flood"));
+        } finally {
+            closeAll();
+        }
+    }
+
+    @Test
+    public void copiesArrivingOverSeveralPathsAreDeliveredOnce() throws Exception {
+        try {
+            // A 到 D 有两条路径：A-B-D 与 A-C-D，另有 B-C 构成三角形
+            Node a = node("A");
+            Node b = node("B");
+            Node c = node("C");
+            Node d = node("D");
+            link(a, b);
+            link(a, c);
+            link(b, c);
+            link(b, d);
+            link(c, d);
+
+            assertTrue(a.meshNode.broadcastMessage(
+                    new Message("once", a.meshNode.getNodeId(), null)));
+
+            await(() -> d.receivedCount("once") > 0);
+            Thread.sleep(SETTLE_MS);
+            assertEquals(1, b.receivedCount("once"));
+            assertEquals(1, c.receivedCount("once"));
+            assertEquals(1, d.receivedCount("once"));
+            assertEquals(0, a.receivedCount("once"));
+        } finally {
+            closeAll();
+        }
+    }
+
+    @Test
+    public void directMessageFollowsLearnedRoute() throws Exception {
+        try {
+            Node[] line = new Node[4];
+            for (int i = 0; i < line.length; i++) {
+                line[i] = node("N" + i);
+                if (i > 0) {
+                    link(line[i], line[i - 1]);
+                }
+            }
+            Node source = line[0];
+            Node destination = line[line.length - 1];
+
+            // 终点先广播一次，沿途节点学到回到终点的反向路由
+            assertTrue(destination.meshNode.broadcastMessage(
+                    new Message("hello", destination.meshNode.getNodeId(), null)));
+            await(() -> source.receivedCount("hello") > 0);
+            assertTrue(source.meshNode.getRouteCount() > 0);
+
+            assertTrue(source.meshNode.sendDirectMessage(destination.meshNode.getNodeId(), "dm"));
+            await(() -> destination.receivedCount("dm") > 0);
+            Thread.sleep(SETTLE_MS);
+
+            assertEquals(1, destination.receivedCount("dm"));
+            for (int i = 1; i < line.length - 1; i++) {
+                // 中间节点只转发，不投递，并且走单播而不是泛洪
+                assertEquals(0, line[i].receivedCount("dm"));
+                assertEquals(1, line[i].meshNode.getUnicastForwardedCount());
+            }
+        } finally {
+            closeAll();
+        }
+    }
+
+    @Test
+    public void instancesSharingNodeIdDoNotCollide() throws Exception {
+        try {
+            // 应用的各个画面用同一个 nodeId 各自创建 MeshNode
+            MeshId shared = MeshId.random();
+            Node first = node("S1", shared);
+            Node second = node("S2", shared);
+            Node peer = node("P");
+            link(first, peer);
+            link(second, peer);
+
+            assertTrue(first.meshNode.broadcastMessage(new Message("one", shared, null)));
+            assertTrue(second.meshNode.broadcastMessage(new Message("two", shared, null)));
+
+            await(() -> peer.receivedCount("one") > 0 && peer.receivedCount("two") > 0);
+            assertEquals(1, peer.receivedCount("one"));
+            assertEquals(1, peer.receivedCount("two"));
+        } finally {
+            closeAll();
+        }
+    }
+
+    @Test
+    public void broadcastsUseLiveLinksOnly() throws Exception {
+        try {
+            Node a = node("A");
+            Node b = node("B");
+            link(a, b);
+            // 已发现但没有链路的设备不会为广播排队或被拨号
+            a.meshNode.handleNewDevice(new BluetoothService.DeviceInfo("X", "x",
+                    System.currentTimeMillis()));
+
+            assertTrue(a.meshNode.broadcastMessage(
+                    new Message("live", a.meshNode.getNodeId(), null)));
+            await(() -> b.receivedCount("live") > 0);
+            assertEquals(0, a.meshNode.getPendingFrameCount("X"));
+        } finally {
+            closeAll();
+        }
+    }
+
+    @Test
+    public void directMessageRedialsUnlinkedNextHop() throws Exception {
+        try {
+            Node a = node("A");
+            Node b = node("B");
+            Node c = node("C");
+            link(a, b);
+            link(b, c);
+            assertTrue(c.meshNode.broadcastMessage(
+                    new Message("route", c.meshNode.getNodeId(), null)));
+            await(() -> a.receivedCount("route") > 0);
+
+            // 链路被淘汰后路由仍在：单播帧排队并重新拨号给下一跳
+            a.transport.disconnect("B");
+            assertTrue(a.meshNode.sendDirectMessage(c.meshNode.getNodeId(), "redial"));
+            await(() -> c.receivedCount("redial") > 0);
+            assertTrue(a.transport.isConnectedTo("B"));
+            assertEquals(0, a.meshNode.getPendingFrameCount("B"));
+        } finally {
+            closeAll();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.StreamCorruptedException;
+
+import static org.junit.Assert.*;
+
+public class MessageCodecTest {
+    private static final MeshId SENDER = MeshId.random();
+
+    @Test
+    public void chatMessage_roundTrip() throws Exception {
+        Message message = new Message("こんにちは mesh 👋", SENDER, null);
+
+        byte[] encoded = MessageCodec.encode(message);
+        assertEquals(MessageCodec.encodedLength(message), encoded.length);
+
+        Message decoded = MessageCodec.decode(encoded);
+        assertFalse(decoded instanceof LocationMessage);
+        assertEquals(message.getSequence(), decoded.getSequence());
+        assertEquals(SENDER, decoded.getSenderId());
+        assertEquals(message.getContent(), decoded.getContent());
+        assertEquals(message.getTimestamp(), decoded.getTimestamp());
+        assertEquals(0, decoded.getHopCount());
+        assertFalse(decoded.hasSenderLocation());
+    }
+
+    @Test
+    public void assignedSequence_patchesEncodedFrame() throws Exception {
+        Message message = new Message("seq", SENDER, null);
+        assertFalse(message.hasSequence());
+        byte[] frame = message.getFrame();
+
+        message.assignSequence(1234);
+        assertSame(frame, message.getFrame());
+        MeshFrame parsed = MeshFrame.parse(frame.clone(), "AA:BB");
+        assertEquals(1234, parsed.getSequence());
+        assertEquals(1234, parsed.getMessage().getSequence());
+    }
+
+    @Test
+    public void directMessage_carriesDestination() throws Exception {
+        MeshId destination = MeshId.random();
+        Message message = new Message("dm", SENDER, destination, null);
+
+        byte[] encoded = MessageCodec.encode(message);
+        assertEquals(MessageCodec.encodedLength(message), encoded.length);
+        Message decoded = MessageCodec.decode(encoded);
+        assertEquals(destination, decoded.getDestinationId());
+        assertEquals("dm", decoded.getContent());
+
+        MeshFrame frame = MeshFrame.parse(message.getFrame(), "AA:BB");
+        assertEquals(destination, frame.getDestinationId());
+        assertNull(MeshFrame.parse(new Message("all", SENDER, null).getFrame(), "AA:BB")
+                .getDestinationId());
+    }
+
+    @Test
+    public void targetArea_roundTripsWithOtherExtensions() throws Exception {
+        MeshId destination = MeshId.random();
+        GeoPoint target = new GeoPoint(356812362, 1397671248);
+        GeoArea area = new GeoArea(new GeoPoint(356800000, 1397600000), 500);
+        Message message = new Message("alert", SENDER, destination, null);
+        message.setGeoTarget(target);
+        message.setTargetArea(area);
+
+        byte[] encoded = MessageCodec.encode(message);
+        assertEquals(MessageCodec.encodedLength(message), encoded.length);
+        Message decoded = MessageCodec.decode(encoded);
+        assertEquals(destination, decoded.getDestinationId());
+        assertEquals(target, decoded.getGeoTarget());
+        assertEquals(area, decoded.getTargetArea());
+        assertEquals("alert", decoded.getContent());
+
+        MeshFrame frame = MeshFrame.parse(message.getFrame(), "AA:BB");
+        assertEquals(area, frame.getTargetArea());
+        assertEquals(target, frame.getGeoTarget());
+    }
+
+    @Test
+    public void targetArea_distanceIsZeroInside() {
+        GeoArea area = new GeoArea(new GeoPoint(350000000, 1390000000), 500);
+        // 北约 1.1 km
+        GeoPoint outside = new GeoPoint(350100000, 1390000000);
+        assertTrue(area.contains(new GeoPoint(350010000, 1390000000)));
+        assertFalse(area.contains(outside));
+        assertEquals(0, area.distanceFrom(new GeoPoint(350010000, 1390000000)), 0);
+        assertEquals(612, area.distanceFrom(outside), 5);
+    }
+
+    @Test
+    public void chatMessage_keepsFixedPointLocation() throws Exception {
+        Message message = new Message(SENDER, 42, "hi", true,
+                356812362, 1397671248, System.currentTimeMillis(), 3, 10);
+
+        Message decoded = MessageCodec.decode(MessageCodec.encode(message));
+        assertTrue(decoded.hasSenderLocation());
+        assertEquals(356812362, decoded.getSenderLatitudeE7());
+        assertEquals(1397671248, decoded.getSenderLongitudeE7());
+        assertEquals(3, decoded.getHopCount());
+        assertEquals(10, decoded.getHopLimit());
+    }
+
+    @Test
+    public void locationMessage_roundTrip() throws Exception {
+        LocationMessage message = new LocationMessage(SENDER, 42, 7,
+                -338688000, 1512093000, 125, 1700000000000L, 1, 10);
+
+        byte[] encoded = MessageCodec.encode(message);
+        Message decoded = MessageCodec.decode(encoded);
+
+        assertTrue(decoded instanceof LocationMessage);
+        LocationMessage location = (LocationMessage) decoded;
+        assertEquals(SENDER, location.getUserId());
+        assertEquals(-338688000, location.getLatitudeE7());
+        assertEquals(1512093000, location.getLongitudeE7());
+        assertEquals(125, location.getAccuracyDm());
+        assertEquals(7, location.getKeyframeSeq());
+        assertFalse(location.isDelta());
+        assertEquals(1700000000000L, location.getUpdateTime());
+        assertTrue(encoded.length < 64);
+    }
+
+    @Test
+    public void locationDelta_isSmallerThanKeyframe() throws Exception {
+        LocationMessage keyframe = new LocationMessage(SENDER, 42, 7,
+                356812362, 1397671248, 50, 1700000000000L, 0, 10);
+        LocationMessage delta = new LocationMessage(SENDER, 42, 7,
+                -85, 120, 1000, 0, 10);
+
+        byte[] encoded = MessageCodec.encode(delta);
+        LocationMessage decoded = (LocationMessage) MessageCodec.decode(encoded);
+
+        assertTrue(decoded.isDelta());
+        assertFalse(decoded.isResolved());
+        assertEquals(7, decoded.getKeyframeSeq());
+        assertEquals(-85, decoded.getDeltaLatitudeE7());
+        assertEquals(120, decoded.getDeltaLongitudeE7());
+        assertEquals(1000, decoded.getKeyframeOffsetMs());
+        // 头部没有时间戳：25 字节头部 + 关键帧序号 + 三个短 varint
+        assertEquals(MessageCodec.DELTA_HEADER_SIZE + 1 + 2 + 2 + 2, encoded.length);
+        assertTrue(encoded.length < MessageCodec.encode(keyframe).length);
+    }
+
+    @Test
+    public void locationDelta_keepsAccuracy() throws Exception {
+        LocationCache cache = new LocationCache(new TimingWheel(100, 64, 0));
+        LocationMessage keyframe = new LocationMessage(SENDER, 42, 7,
+                356812362, 1397671248, 50, 1700000000000L, 0, 10);
+        LocationMessage sameAccuracy = new LocationMessage(SENDER, 43, 7,
+                -85, 120, 1000, 0, 10);
+        LocationMessage newAccuracy = new LocationMessage(SENDER, 44, 7,
+                -90, 130, 2000, 0, 10);
+        newAccuracy.setDeltaAccuracyDm(120);
+
+        byte[] unchanged = MessageCodec.encode(sameAccuracy);
+        byte[] changed = MessageCodec.encode(newAccuracy);
+        assertEquals(MessageCodec.encodedLength(newAccuracy), changed.length);
+        assertTrue(unchanged.length < changed.length);
+
+        assertTrue(cache.applyLocationMessage(
+                (LocationMessage) MessageCodec.decode(MessageCodec.encode(keyframe))));
+        LocationMessage decoded = (LocationMessage) MessageCodec.decode(unchanged);
+        assertTrue(cache.applyLocationMessage(decoded));
+        // 没有携带精度的增量沿用关键帧的精度，时间为关键帧时间加偏移
+        assertEquals(50, decoded.getAccuracyDm());
+        assertEquals(1700000001000L, decoded.getUpdateTime());
+
+        decoded = (LocationMessage) MessageCodec.decode(changed);
+        assertTrue(cache.applyLocationMessage(decoded));
+        assertEquals(120, decoded.getAccuracyDm());
+    }
+
+    @Test
+    public void longChatMessage_isCompressed() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("今どこにいますか？駅の出口で待っています。Where are you now? ");
+        }
+        Message message = new Message(text.toString(), SENDER, null);
+
+        byte[] encoded = MessageCodec.encode(message);
+        assertTrue((encoded[MessageCodec.OFFSET_FLAGS] & MessageCodec.FLAG_COMPRESSED) != 0);
+        assertTrue(encoded.length < MessageCodec.utf8Length(text.toString()) / 4);
+        assertEquals(text.toString(), MessageCodec.decode(encoded).getContent());
+    }
+
+    @Test
+    public void compressedMessage_withLoneSurrogate_decodes() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("壊れた絵文字 \uD83D のあとも続きます。");
+        }
+        Message message = new Message(text.toString(), SENDER, null);
+
+        byte[] encoded = MessageCodec.encode(message);
+        assertTrue((encoded[MessageCodec.OFFSET_FLAGS] & MessageCodec.FLAG_COMPRESSED) != 0);
+        assertEquals(text.toString().replace('\uD83D', '\uFFFD'),
+                MessageCodec.decode(encoded).getContent());
+    }
+
+    @Test
+    public void shortChatMessage_isNotCompressed() throws Exception {
+        byte[] encoded = MessageCodec.encode(new Message("OK", SENDER, null));
+        assertEquals(0, encoded[MessageCodec.OFFSET_FLAGS] & MessageCodec.FLAG_COMPRESSED);
+    }
+
+    @Test
+    public void truncatedInput_throwsEof() throws Exception {
+        byte[] encoded = MessageCodec.encode(new Message("truncated", SENDER, null));
+        for (int len = 0; len < encoded.length; len++) {
+            try {
+                MessageCodec.decode(encoded, 0, len);
+                fail("decode should fail for length " + len);
+            } catch (EOFException expected) {
+                // 数据不完整
+            }
+        }
+    }
+
+    @Test
+    public void unknownVersion_throwsCorrupted() throws Exception {
+        byte[] encoded = MessageCodec.encode(new Message("v", SENDER, null));
+        encoded[MessageCodec.OFFSET_VERSION] = 99;
+        try {
+            MessageCodec.decode(encoded);
+            fail("decode should reject unknown version");
+        } catch (StreamCorruptedException expected) {
+            // 版本不支持
+        }
+    }
+
+    @Test
+    public void varint_roundTrip() throws Exception {
+        byte[] buffer = new byte[10];
+        long[] values = {0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE};
+        for (long value : values) {
+            int end = MessageCodec.writeVarint(buffer, 0, value);
+            assertEquals(MessageCodec.varintLength(value), end);
+            assertEquals(value, MessageCodec.readVarint(buffer, 0, end));
+        }
+        assertEquals(-5, MessageCodec.zigZagDecode(MessageCodec.zigZagEncode(-5)));
+    }
+
+    @Test
+    public void meshId_stringRoundTrip() {
+        MeshId id = MeshId.random();
+        assertEquals(id, MeshId.fromString(id.toString()));
+        assertEquals(id.hashCode(), MeshId.fromString(id.toString()).hashCode());
+        assertEquals(id.toString().substring(0, 8), id.toShortString());
+        assertNull(MeshId.fromString("not-an-id"));
+
+        byte[] buffer = new byte[MeshId.SIZE];
+        assertEquals(MeshId.SIZE, id.write(buffer, 0));
+        assertEquals(id, MeshId.read(buffer, 0));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MessageSchedulerTest {
+    private final MeshId sender = MeshId.random();
+
+    private MeshFrame keyframe(int sequence) {
+        return MeshFrame.of(new LocationMessage(sender, sequence, 1, 350000000, 1390000000,
+                -1, 1700000000000L, 0, 10));
+    }
+
+    private MeshFrame delta(int sequence) {
+        return MeshFrame.of(new LocationMessage(sender, sequence, 1, 100, -100, 1000, 0, 10));
+    }
+
+    @Test
+    public void urgentFirstThenChatAndLocationAlternate() throws Exception {
+        MessageScheduler scheduler = new MessageScheduler();
+        MeshFrame chat1 = MeshFrame.of(new Message("a", sender, null));
+        MeshFrame chat2 = MeshFrame.of(new Message("b", sender, null));
+        MeshFrame position = keyframe(10);
+        MeshFrame urgent = MeshFrame.of(new Message("help", sender, null, true));
+
+        assertTrue(scheduler.offer(chat1));
+        assertTrue(scheduler.offer(chat2));
+        assertTrue(scheduler.offer(position));
+        assertTrue(scheduler.offer(urgent));
+        assertEquals(1, scheduler.getDepth(MessageScheduler.Lane.URGENT));
+
+        assertSame(urgent, scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(chat1, scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(position, scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(chat2, scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertNull(scheduler.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void newerDeltaReplacesPendingDeltaButKeepsKeyframe() throws Exception {
+        MessageScheduler scheduler = new MessageScheduler();
+        MeshFrame keyframe = keyframe(10);
+        MeshFrame delta1 = delta(20);
+        MeshFrame delta2 = delta(30);
+        assertTrue(delta1.isLocationDelta());
+
+        scheduler.offer(keyframe);
+        scheduler.offer(delta1);
+        scheduler.offer(delta2);
+        // 晚到的旧位置被忽略
+        scheduler.offer(delta(15));
+        assertEquals(2, scheduler.getDepth(MessageScheduler.Lane.LOCATION));
+        assertEquals(2, scheduler.getCoalesced());
+
+        assertSame(keyframe, scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(delta2, scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void lateKeyframeIsKeptAheadOfItsDelta() throws Exception {
+        MessageScheduler scheduler = new MessageScheduler();
+        MeshFrame delta = delta(20);
+        MeshFrame keyframe = keyframe(10);
+
+        // 增量帧先到，它依赖的关键帧经其他路径晚到
+        assertTrue(scheduler.offer(delta));
+        assertTrue(scheduler.offer(keyframe));
+        assertEquals(2, scheduler.getDepth(MessageScheduler.Lane.LOCATION));
+        assertEquals(0, scheduler.getCoalesced());
+
+        assertSame(keyframe, scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertSame(delta, scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void fullChatLaneRejects() {
+        MessageScheduler scheduler = new MessageScheduler(1, 1, 1);
+        assertTrue(scheduler.offer(MeshFrame.of(new Message("a", sender, null))));
+        assertFalse(scheduler.offer(MeshFrame.of(new Message("b", sender, null))));
+        assertEquals(1, scheduler.getDropped(MessageScheduler.Lane.CHAT));
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MprSelectorTest {
+    private final MeshId self = MeshId.random();
+    private final MeshId a = MeshId.random();
+    private final MeshId b = MeshId.random();
+    private final MeshId c = MeshId.random();
+    private final MeshId x = MeshId.random();
+    private final MeshId y = MeshId.random();
+    private final MeshId z = MeshId.random();
+    private final MprSelector selector = new MprSelector(self, new TimingWheel(100, 64, 0), 15000);
+
+    private static HelloMessage hello(MeshId from, Set<MeshId> relays, MeshId... neighbours) {
+        return new HelloMessage(from, 0, Arrays.asList(neighbours), relays);
+    }
+
+    @Test
+    public void selectsMinimalCoveringRelays() {
+        selector.onHello(hello(a, Collections.emptySet(), self, x, y), "A");
+        selector.onHello(hello(b, Collections.emptySet(), self, y), "B");
+        selector.onHello(hello(c, Collections.emptySet(), self, z), "C");
+
+        assertEquals(3, selector.getTwoHopCount());
+        assertEquals(new HashSet<>(Arrays.asList(a, c)), selector.getRelays());
+    }
+
+    @Test
+    public void asymmetricNeighboursAreNotSelected() {
+        selector.onHello(hello(a, Collections.emptySet(), x), "A");
+        assertTrue(selector.getRelays().isEmpty());
+        assertEquals(Collections.singletonList(a), selector.getNeighbourIds());
+    }
+
+    @Test
+    public void relaysOnlyForNeighboursThatSelectedUs() {
+        selector.onHello(hello(a, Collections.singleton(self), self), "A");
+        selector.onHello(hello(b, Collections.emptySet(), self), "B");
+
+        assertEquals(MprSelector.Decision.RELAY, selector.decide("A"));
+        assertEquals(MprSelector.Decision.SKIP, selector.decide("B"));
+        assertEquals(MprSelector.Decision.UNKNOWN, selector.decide("Q"));
+    }
+
+    @Test
+    public void helloRoundTrip() throws Exception {
+        HelloMessage hello = hello(a, Collections.singleton(x), x, y);
+        Message decoded = MessageCodec.decode(MessageCodec.encode(hello));
+
+        assertTrue(decoded instanceof HelloMessage);
+        assertEquals(1, decoded.getHopLimit());
+        assertEquals(Arrays.asList(x, y), ((HelloMessage) decoded).getNeighbours());
+        assertEquals(Collections.singleton(x), ((HelloMessage) decoded).getRelays());
+    }
+}
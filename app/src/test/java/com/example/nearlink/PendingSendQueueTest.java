@@ -0,0 +1,49 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PendingSendQueueTest {
+    private final TimingWheel wheel = new TimingWheel(100, 64, 0);
+
+    @Test
+    public void firstFrameRequestsConnectionAndDrainKeepsOrder() {
+        PendingSendQueue queue = new PendingSendQueue(wheel, 4, 1000);
+        assertTrue(queue.offer("A", new byte[]{1}, MessageScheduler.Lane.LOCATION));
+        assertFalse(queue.offer("A", new byte[]{2}, MessageScheduler.Lane.CHAT));
+        assertTrue(queue.offer("B", new byte[]{3}, MessageScheduler.Lane.LOCATION));
+
+        List<PendingSendQueue.PendingFrame> drained = queue.drain("A");
+        assertEquals(2, drained.size());
+        assertEquals(1, drained.get(0).frame[0]);
+        assertEquals(MessageScheduler.Lane.CHAT, drained.get(1).lane);
+        assertEquals(0, queue.size("A"));
+        assertEquals(1, queue.getNeighbourCount());
+    }
+
+    @Test
+    public void boundedPerNeighbourDropsOldest() {
+        PendingSendQueue queue = new PendingSendQueue(wheel, 2, 1000);
+        queue.offer("A", new byte[]{1}, MessageScheduler.Lane.LOCATION);
+        queue.offer("A", new byte[]{2}, MessageScheduler.Lane.LOCATION);
+        queue.offer("A", new byte[]{3}, MessageScheduler.Lane.LOCATION);
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(2, queue.drain("A").get(0).frame[0]);
+    }
+
+    @Test
+    public void discardedOnFailureAndExpiredWithoutLink() {
+        PendingSendQueue queue = new PendingSendQueue(wheel, 4, 1000);
+        queue.offer("A", new byte[]{1}, MessageScheduler.Lane.LOCATION);
+        assertEquals(1, queue.discard("A"));
+        assertTrue(queue.offer("A", new byte[]{2}, MessageScheduler.Lane.LOCATION));
+
+        queue.offer("B", new byte[]{3}, MessageScheduler.Lane.LOCATION);
+        wheel.advance(1100);
+        assertEquals(0, queue.getNeighbourCount());
+        assertEquals(3, queue.getDroppedCount());
+    }
+}
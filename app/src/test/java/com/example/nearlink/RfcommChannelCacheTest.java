@@ -0,0 +1,37 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RfcommChannelCacheTest {
+    private static final String DEVICE = "00:11:22:33:44:AA";
+
+    private final TimingWheel wheel = new TimingWheel(100, 64, 0);
+
+    @Test
+    public void remembersValidChannelsOnly() {
+        RfcommChannelCache cache = new RfcommChannelCache(wheel, 60000);
+        assertEquals(RfcommChannelCache.NO_CHANNEL, cache.get(DEVICE));
+
+        cache.put(DEVICE, 0, System.currentTimeMillis());
+        cache.put(DEVICE, 31, System.currentTimeMillis());
+        assertEquals(0, cache.size());
+
+        cache.put(DEVICE, 5, System.currentTimeMillis());
+        assertEquals(5, cache.get(DEVICE));
+        cache.invalidate(DEVICE);
+        assertEquals(RfcommChannelCache.NO_CHANNEL, cache.get(DEVICE));
+    }
+
+    @Test
+    public void staleEntriesExpire() {
+        RfcommChannelCache cache = new RfcommChannelCache(wheel, 1000);
+        cache.put(DEVICE, 3, System.currentTimeMillis() - 2000);
+        cache.put("00:11:22:33:44:BB", 4, System.currentTimeMillis() + 60000);
+
+        wheel.advance(1100);
+        assertEquals(RfcommChannelCache.NO_CHANNEL, cache.get(DEVICE));
+        assertEquals(4, cache.get("00:11:22:33:44:BB"));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RoutingTableTest {
+    private static final String LINK_A = "00:11:22:33:44:AA";
+    private static final String LINK_B = "00:11:22:33:44:BB";
+
+    private final MeshId destination = MeshId.random();
+    private final TimingWheel wheel = new TimingWheel(100, 64, 0);
+
+    @Test
+    public void prefersShorterRoutes() {
+        RoutingTable table = new RoutingTable(wheel, 60000);
+        assertNull(table.nextHop(destination));
+
+        assertTrue(table.learn(destination, LINK_A, 3, 0));
+        assertFalse(table.learn(destination, LINK_B, 4, 1000));
+        assertEquals(LINK_A, table.nextHop(destination));
+
+        assertTrue(table.learn(destination, LINK_B, 2, 2000));
+        assertEquals(LINK_B, table.nextHop(destination));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void sameNextHopRefreshesAndStaleRouteIsReplaced() {
+        RoutingTable table = new RoutingTable(wheel, 60000);
+        table.learn(destination, LINK_A, 1, 0);
+        assertTrue(table.learn(destination, LINK_A, 5, 1000));
+        assertEquals(5, table.getRoute(destination).hops);
+
+        // 30 秒未确认后，更长的替代路由也会被接受
+        assertTrue(table.learn(destination, LINK_B, 6, 31000));
+        assertEquals(LINK_B, table.nextHop(destination));
+    }
+
+    @Test
+    public void invalidateOnlyRemovesMatchingNextHop() {
+        RoutingTable table = new RoutingTable(wheel, 60000);
+        table.learn(destination, LINK_A, 1, 0);
+        table.invalidate(destination, LINK_B);
+        assertEquals(LINK_A, table.nextHop(destination));
+        table.invalidate(destination, LINK_A);
+        assertNull(table.nextHop(destination));
+    }
+}
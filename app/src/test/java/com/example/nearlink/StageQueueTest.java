@@ -0,0 +1,53 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StageQueueTest {
+    @Test
+    public void dropNewestKeepsQueuedItems() {
+        StageQueue<String> queue = new StageQueue<>(2, StageQueue.OverflowPolicy.DROP_NEWEST);
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertFalse(queue.offer("c"));
+        assertEquals(1, queue.getDropped());
+        assertEquals("a", queue.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals("b", queue.poll(0, TimeUnit.MILLISECONDS));
+        assertNull(queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void dropOldestAdmitsNewItems() {
+        StageQueue<String> queue = new StageQueue<>(2, StageQueue.OverflowPolicy.DROP_OLDEST);
+        queue.offer("a");
+        queue.offer("b");
+        assertTrue(queue.offer("c"));
+        assertEquals(2, queue.size());
+        assertEquals("b", queue.poll(0, TimeUnit.MILLISECONDS));
+        assertEquals("c", queue.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void consumerWakesOnOffer() throws Exception {
+        StageQueue<String> queue = new StageQueue<>(4, StageQueue.OverflowPolicy.DROP_NEWEST);
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            queue.offer("x");
+        });
+        producer.start();
+        long start = System.nanoTime();
+        String item = queue.poll(5, TimeUnit.SECONDS);
+        while (item == null && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            item = queue.poll(5, TimeUnit.SECONDS);
+        }
+        assertEquals("x", item);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        producer.join();
+    }
+}
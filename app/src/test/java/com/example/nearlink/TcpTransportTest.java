@@ -0,0 +1,80 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TcpTransportTest {
+
+    @Test
+    public void framesCrossLocalSocketWithListenAddressAsSource() throws Exception {
+        TcpTransport a = new TcpTransport(0);
+        TcpTransport b = new TcpTransport(0);
+        LinkedBlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        String[] source = new String[1];
+        b.setInboundFrameListener((buffer, offset, length, sourceAddress) -> {
+            source[0] = sourceAddress;
+            received.add(Arrays.copyOfRange(buffer, offset, offset + length));
+        });
+        CountDownLatch up = new CountDownLatch(2);
+        Transport.LinkListener counter = new Transport.LinkListener() {
+            @Override
+            public void onLinkUp(String address) {
+                up.countDown();
+            }
+
+            @Override
+            public void onLinkDown(String address) {
+            }
+        };
+        a.setLinkListener(counter);
+        b.setLinkListener(counter);
+        a.start();
+        b.start();
+        try {
+            a.connect(b.getAddress());
+            assertTrue(up.await(5, TimeUnit.SECONDS));
+            assertTrue(b.isConnectedTo(a.getAddress()));
+
+            byte[] payload = {1, 2, 3};
+            byte[] frame = FrameCodec.encode(payload, 0, payload.length);
+            assertTrue(a.write(b.getAddress(), frame, MessageScheduler.Lane.URGENT).isQueued());
+
+            byte[] delivered = received.poll(5, TimeUnit.SECONDS);
+            assertArrayEquals(frame, delivered);
+            assertEquals(a.getAddress(), source[0]);
+        } finally {
+            a.stop();
+            b.stop();
+        }
+    }
+
+    @Test
+    public void failedConnectReportsLinkDown() throws Exception {
+        TcpTransport a = new TcpTransport(0);
+        CountDownLatch down = new CountDownLatch(1);
+        a.setLinkListener(new Transport.LinkListener() {
+            @Override
+            public void onLinkUp(String address) {
+            }
+
+            @Override
+            public void onLinkDown(String address) {
+                down.countDown();
+            }
+        });
+        a.start();
+        try {
+            a.connect("127.0.0.1:1");
+            assertTrue(down.await(5, TimeUnit.SECONDS));
+            assertEquals(0, a.getConnectedAddresses().size());
+        } finally {
+            a.stop();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+    private final TimingWheel wheel = new TimingWheel(10, 8, 0);
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    public void firesAtDeadline() {
+        wheel.schedule(25, () -> fired.add("a"));
+        wheel.schedule(10, () -> fired.add("b"));
+
+        wheel.advance(19);
+        assertEquals(1, fired.size());
+        assertEquals("b", fired.get(0));
+        wheel.advance(29);
+        assertEquals(1, fired.size());
+        wheel.advance(30);
+        assertEquals(2, fired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void handlesDelaysLongerThanOneRotation() {
+        wheel.schedule(200, () -> fired.add("late"));
+        wheel.advance(100);
+        assertTrue(fired.isEmpty());
+        wheel.advance(199);
+        assertTrue(fired.isEmpty());
+        wheel.advance(200);
+        assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotFire() {
+        TimingWheel.Timeout timeout = wheel.schedule(10, () -> fired.add("x"));
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        wheel.advance(100);
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    public void expiryRearmsWhileEntryIsRefreshed() {
+        long[] remaining = {30, 0};
+        int[] checks = {0};
+        wheel.scheduleExpiry(20, () -> remaining[checks[0]++]);
+
+        wheel.advance(20);
+        assertEquals(1, checks[0]);
+        assertEquals(1, wheel.size());
+        wheel.advance(50);
+        assertEquals(2, checks[0]);
+        assertEquals(0, wheel.size());
+    }
+}
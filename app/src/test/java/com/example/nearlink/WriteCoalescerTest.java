@@ -0,0 +1,176 @@
+package com.example.nearlink;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WriteCoalescerTest {
+
+    /**
+     * 第一次写入阻塞到 release 为止，模拟写不动的链路
+     */
+    private static final class StalledStream extends OutputStream {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public synchronized void write(int b) {
+            written.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            synchronized (this) {
+                written.write(b, off, len);
+            }
+        }
+
+        synchronized byte[] toByteArray() {
+            return written.toByteArray();
+        }
+    }
+
+    @Test
+    public void fullQueuePoliciesPerLane() throws Exception {
+        StalledStream stream = new StalledStream();
+        WriteCoalescer coalescer = new WriteCoalescer(stream, new BufferPool(64, 2),
+                (bytes, frames) -> { });
+        coalescer.configureQueue(2, 30);
+        coalescer.start("test");
+
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED,
+                coalescer.enqueue(new byte[]{0}, MessageScheduler.Lane.CHAT));
+        assertTrue(stream.entered.await(1, TimeUnit.SECONDS));
+
+        MessageScheduler.Lane location = MessageScheduler.Lane.LOCATION;
+        MessageScheduler.Lane chat = MessageScheduler.Lane.CHAT;
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED, coalescer.enqueue(new byte[]{1}, location));
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED, coalescer.enqueue(new byte[]{2}, location));
+        // 满：位置帧挤掉最旧的位置帧，聊天帧也先挤位置帧
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED_DROPPED_OLDEST,
+                coalescer.enqueue(new byte[]{3}, location));
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED_DROPPED_OLDEST,
+                coalescer.enqueue(new byte[]{4}, chat));
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED_DROPPED_OLDEST,
+                coalescer.enqueue(new byte[]{5}, chat));
+        // 队列里只剩聊天帧
+        assertEquals(WriteCoalescer.EnqueueStatus.DROPPED, coalescer.enqueue(new byte[]{6}, location));
+        long start = System.nanoTime();
+        assertEquals(WriteCoalescer.EnqueueStatus.TIMED_OUT, coalescer.enqueue(new byte[]{7}, chat));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(25));
+        // 紧急帧总是接受
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED,
+                coalescer.enqueue(new byte[]{8}, MessageScheduler.Lane.URGENT));
+
+        assertEquals(3, coalescer.getQueuedFrames());
+        assertEquals(3, coalescer.getMaxQueueDepth());
+        assertEquals(4, coalescer.getDroppedFrameCount());
+        assertEquals(1, coalescer.getTimedOutFrameCount());
+
+        stream.release.countDown();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (coalescer.getFrameCount() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertArrayEquals(new byte[]{0, 4, 5, 8}, stream.toByteArray());
+        assertTrue(coalescer.getMaxLatencyMillis() >= 25);
+
+        coalescer.stop();
+        assertEquals(WriteCoalescer.EnqueueStatus.CLOSED, coalescer.enqueue(new byte[]{9}, chat));
+    }
+
+    @Test
+    public void blockedChatProceedsWhenWriterDrains() throws Exception {
+        StalledStream stream = new StalledStream();
+        WriteCoalescer coalescer = new WriteCoalescer(stream, new BufferPool(64, 2),
+                (bytes, frames) -> { });
+        coalescer.configureQueue(1, 1000);
+        coalescer.start("test");
+
+        coalescer.enqueue(new byte[]{0}, MessageScheduler.Lane.CHAT);
+        assertTrue(stream.entered.await(1, TimeUnit.SECONDS));
+        coalescer.enqueue(new byte[]{1}, MessageScheduler.Lane.CHAT);
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ignored) {
+            }
+            stream.release.countDown();
+        }).start();
+        assertEquals(WriteCoalescer.EnqueueStatus.QUEUED,
+                coalescer.enqueue(new byte[]{2}, MessageScheduler.Lane.CHAT));
+        assertTrue(coalescer.getBlockedMillis() >= 10);
+        coalescer.stop();
+    }
+
+    @Test
+    public void chatFrameCutsTheWindowShort() throws Exception {
+        CountDownLatch firstBatch = new CountDownLatch(1);
+        CountDownLatch secondBatch = new CountDownLatch(2);
+        OutputStream stream = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                firstBatch.countDown();
+                secondBatch.countDown();
+            }
+        };
+        WriteCoalescer coalescer = new WriteCoalescer(stream, new BufferPool(64, 2),
+                (bytes, frames) -> { });
+        coalescer.configure(2000, 2000, 64);
+        coalescer.start("test");
+        try {
+            // 合并了两帧的批次把窗口放大到 2 秒
+            coalescer.enqueue(new byte[]{0}, MessageScheduler.Lane.LOCATION);
+            coalescer.enqueue(new byte[]{1}, MessageScheduler.Lane.LOCATION);
+            assertTrue(firstBatch.await(1, TimeUnit.SECONDS));
+
+            // 写线程拿到位置帧后在窗口内等待，聊天帧到达时立即刷新
+            coalescer.enqueue(new byte[]{2}, MessageScheduler.Lane.LOCATION);
+            Thread.sleep(20);
+            coalescer.enqueue(new byte[]{3}, MessageScheduler.Lane.CHAT);
+            assertTrue(secondBatch.await(1, TimeUnit.SECONDS));
+            assertEquals(1, coalescer.getUrgentFlushCount());
+        } finally {
+            coalescer.stop();
+        }
+    }
+
+    @Test
+    public void writeFailureReportsAndCloses() throws Exception {
+        OutputStream stream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken pipe");
+            }
+        };
+        CountDownLatch failed = new CountDownLatch(1);
+        WriteCoalescer coalescer = new WriteCoalescer(stream, new BufferPool(64, 2),
+                (bytes, frames) -> { });
+        coalescer.setFailureListener(e -> failed.countDown());
+        coalescer.start("test");
+
+        coalescer.enqueue(new byte[]{0}, MessageScheduler.Lane.CHAT);
+        assertTrue(failed.await(1, TimeUnit.SECONDS));
+        assertEquals(WriteCoalescer.EnqueueStatus.CLOSED,
+                coalescer.enqueue(new byte[]{1}, MessageScheduler.Lane.CHAT));
+        coalescer.stop();
+    }
+}